@@ -0,0 +1,131 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import contactBook.ChangeEvent;
+import contactBook.ChangeFeed;
+import contactBook.ChangeSubscription;
+import contactBook.ContactBook;
+import contactBook.ContactBookClass;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the subscriptions to a ChangeFeed, which the golden files cannot show, since they read the
+ * feed from the same thread that changes the book: reading in batches, resuming from a sequence number,
+ * rejecting the changes that are gone, and the book waiting for a subscription that is a whole ring behind.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ChangeFeedTests {
+    // Slots of the ring of the feed
+    private static final int CAPACITY = 4;
+    // Time to wait for another thread, in milliseconds
+    private static final long WAIT = 10_000;
+
+    private ContactBook book;
+    private ChangeFeed feed;
+
+    @Before
+    public void setup() {
+        book = new ContactBookClass();
+        feed = new ChangeFeed(CAPACITY);
+        book.addListener(feed);
+    }
+
+    @Test public void readsInBatches() {
+        ChangeSubscription subscription = feed.subscribe(0);
+        book.addContact("Ana", 911111111, "ana@fct.pt");
+        book.setPhone("Ana", 922222222);
+        book.setEmail("Ana", "ana@campus.fct.pt");
+        List<ChangeEvent> first = subscription.poll(2);
+        assertEquals(2, first.size());
+        assertEquals(1, first.get(0).getSequence());
+        assertEquals(ChangeEvent.Type.ADDED, first.get(0).getType());
+        assertEquals(ChangeEvent.Type.PHONE_CHANGED, first.get(1).getType());
+        assertEquals(922222222, first.get(1).getPhone());
+        List<ChangeEvent> second = subscription.poll(2);
+        assertEquals(1, second.size());
+        assertEquals(ChangeEvent.Type.EMAIL_CHANGED, second.get(0).getType());
+        assertEquals("ana@campus.fct.pt", second.get(0).getEmail());
+        assertTrue(subscription.poll(2).isEmpty());
+        assertEquals(3, subscription.getSequence());
+        subscription.close();
+    }
+
+    @Test public void resumesFromASequenceNumber() {
+        book.addContact("Ana", 911111111, "ana@fct.pt");
+        book.addContact("Rui", 933333333, "rui@fct.pt");
+        book.deleteContact("Ana");
+        ChangeSubscription subscription = feed.subscribe(2);
+        List<ChangeEvent> changes = subscription.poll(10);
+        assertEquals(1, changes.size());
+        assertEquals(3, changes.get(0).getSequence());
+        assertEquals(ChangeEvent.Type.REMOVED, changes.get(0).getType());
+        assertEquals("Ana", changes.get(0).getName());
+        subscription.close();
+    }
+
+    @Test public void rejectsChangesNoLongerKept() {
+        for (int i=0; i<CAPACITY + 2; i++)
+            book.addContact("Contact " + i, i, "c" + i + "@fct.pt");
+        assertEquals(3, feed.getOldestSequence());
+        try {
+            feed.subscribe(1);
+            fail("Changes 2 to 6 are not all kept");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertNull(feed.read(1, 10));
+        ChangeSubscription subscription = feed.subscribe(2);
+        assertEquals(CAPACITY, subscription.poll(10).size());
+        subscription.close();
+    }
+
+    @Test public void rejectsChangesNotPublished() {
+        book.addContact("Ana", 911111111, "ana@fct.pt");
+        try {
+            feed.subscribe(10);
+            fail("Change 10 was not published");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test public void bookWaitsForTheSlowestSubscription() throws InterruptedException {
+        ChangeSubscription slow = feed.subscribe(0);
+        ChangeSubscription fast = feed.subscribe(0);
+        Thread writer = new Thread(() -> {
+            for (int i=0; i<CAPACITY + 2; i++)
+                book.addContact("Contact " + i, i, "c" + i + "@fct.pt");
+        });
+        // A failed test must not keep the tests from ending
+        writer.setDaemon(true);
+        writer.start();
+        int read = 0;
+        List<ChangeEvent> batch;
+        while (read < CAPACITY && !(batch = fast.take(10, WAIT)).isEmpty())
+            read += batch.size();
+        assertEquals(CAPACITY, read);
+        long deadline = System.currentTimeMillis() + WAIT;
+        while (writer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        // The ring is full, and the slow subscription did not read the oldest change yet
+        assertEquals(Thread.State.WAITING, writer.getState());
+        assertEquals(CAPACITY, feed.getSequence());
+        assertEquals(1, slow.poll(1).size());
+        assertEquals(1, fast.take(10, WAIT).size());
+        assertEquals(CAPACITY + 1, feed.getSequence());
+        // Closing the slow subscription lets the book go on
+        slow.close();
+        writer.join(WAIT);
+        assertFalse(writer.isAlive());
+        assertEquals(CAPACITY + 2, feed.getSequence());
+        fast.close();
+    }
+}
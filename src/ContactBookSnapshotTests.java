@@ -0,0 +1,100 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import contactBook.ArrayStorage;
+import contactBook.Contact;
+import contactBook.ContactBook;
+import contactBook.ContactBookClass;
+import contactBook.ContactBookSnapshot;
+import contactBook.ContactStorage;
+import contactBook.OffHeapStorage;
+import contactBook.TieredStorage;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of saving a ContactBook to a ContactBookSnapshot and loading it back into every storage engine,
+ * which the golden files cannot show, since a snapshot is only loaded when the program starts: the
+ * loaded book must have the same contacts, in the same order, and go on working as the saved one.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ContactBookSnapshotTests {
+    private Path file;
+    private ContactBook book;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("contacts", ".snap");
+        file.toFile().deleteOnExit();
+        book = new ContactBookClass();
+        book.addContact("Ana", 911111111, "ana@fct.pt");
+        book.addContact("João Lima", 922222222, "jav.lima@campus.fct.unl.pt");
+        book.addContact("Rui", 933333333, "rui@fct.pt");
+        book.addContact("Zé", 922222222, "ze@fct.pt");
+        book.deleteContact("Rui");
+        book.setEmail("Ana", "ana@campus.fct.pt");
+    }
+
+    @Test public void loadsIntoArrayStorage() throws IOException {
+        roundTrip(new ArrayStorage());
+    }
+
+    @Test public void loadsIntoOffHeapStorage() throws IOException {
+        roundTrip(new OffHeapStorage());
+    }
+
+    @Test public void loadsIntoTieredStorage() throws IOException {
+        // No cache, so every contact is read back from the file of the storage
+        roundTrip(new TieredStorage(0, file.getParent()));
+    }
+
+    @Test public void loadsAnEmptyBook() throws IOException {
+        ContactBookSnapshot.write(new ContactBookClass(), file);
+        ContactBook loaded = ContactBookSnapshot.load(file, new OffHeapStorage());
+        assertEquals(0, loaded.getNumberOfContacts());
+        loaded.addContact("Ana", 911111111, "ana@fct.pt");
+        assertEquals(911111111, loaded.getPhone("Ana"));
+    }
+
+    /**
+     * Saves the book of the test, loads it into the given storage, and checks that the loaded book has
+     * the same contacts and goes on working.
+     * @param storage - the empty storage engine of the loaded book.
+     * @throws IOException if the snapshot cannot be written or read.
+     */
+    private void roundTrip(ContactStorage storage) throws IOException {
+        ContactBookSnapshot.write(book, file);
+        ContactBook loaded = ContactBookSnapshot.load(file, storage);
+        assertEquals(book.getNumberOfContacts(), loaded.getNumberOfContacts());
+        Iterator<Contact> saved = book.iterator(), read = loaded.iterator();
+        while (saved.hasNext()) {
+            Contact expected = saved.next(), actual = read.next();
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getPhone(), actual.getPhone());
+            assertEquals(expected.getEmail(), actual.getEmail());
+        }
+        assertFalse(read.hasNext());
+        assertEquals("Ana", loaded.findName(911111111));
+        assertTrue(loaded.hasEqualPhones());
+        assertFalse(loaded.hasContact("Rui"));
+
+        loaded.setEmail("João Lima", "joao@fct.pt");
+        loaded.setPhone("Zé", 944444444);
+        loaded.deleteContact("Ana");
+        loaded.addContact("Rui", 933333333, "rui@fct.pt");
+        assertEquals("joao@fct.pt", loaded.getEmail("João Lima"));
+        assertEquals("Zé", loaded.findName(944444444));
+        assertFalse(loaded.hasEqualPhones());
+        assertNull(loaded.findName(911111111));
+        assertEquals(3, loaded.getNumberOfContacts());
+    }
+}
@@ -1,7 +1,41 @@
+import commandIO.CommandReader;
+import commandIO.CommandServer;
+import commandIO.ResponseWriter;
+import contactBook.ArrayStorage;
+import contactBook.BulkImporter;
+import contactBook.ChangeEvent;
+import contactBook.ChangeFeed;
+import contactBook.ConcurrentContactBook;
+import contactBook.ContactBatch;
 import contactBook.Contact;
 import contactBook.ContactBook;
+import contactBook.ContactBookClass;
+import contactBook.ContactBookSnapshot;
+import contactBook.ContactBookStatistics;
+import contactBook.ContactStorage;
+import contactBook.OffHeapStorage;
+import contactBook.ShardedContactBook;
+import contactBook.SyncPolicy;
+import contactBook.TieredStorage;
+import contactBook.WriteAheadLog;
+import statistics.CommandStatistics;
+import statistics.Histogram;
 
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * It's the Main class of our application. It handles all the interactions with the user.
@@ -20,8 +54,26 @@ public class Main {
     public static final String LIST_CONTACTS  = "LC";
     public static final String GET_NAME = "GN";
     public static final String EQUAL_PHONES = "EP";
+    public static final String PREFIX_SEARCH = "PS";
+    public static final String GET_NAME_BY_EMAIL = "EN";
+    public static final String DOMAIN_COUNT = "DC";
+    public static final String IMPORT = "IM";
+    public static final String STATS = "STATS";
+    public static final String LIST_PAGE = "LP";
+    public static final String SORTED_LIST = "SL";
+    public static final String RANK = "RK";
+    public static final String RANGE = "RG";
+    public static final String SIMILAR_NAMES = "SN";
+    public static final String CHANGES = "CH";
+    public static final String BEGIN = "BEGIN";
+    public static final String COMMIT = "COMMIT";
     public static final String QUIT           = "Q";
 
+    // All the commands, as recognised by the CommandReader
+    private static final String[] COMMANDS = {ADD_CONTACT, REMOVE_CONTACT, GET_PHONE, GET_EMAIL, SET_PHONE,
+            SET_EMAIL, LIST_CONTACTS, GET_NAME, EQUAL_PHONES, PREFIX_SEARCH, GET_NAME_BY_EMAIL, DOMAIN_COUNT,
+            IMPORT, STATS, LIST_PAGE, SORTED_LIST, RANK, RANGE, SIMILAR_NAMES, CHANGES, BEGIN, COMMIT, QUIT};
+
     // Constants that define the all the possible output messages
     public static final String CONTACT_EXISTS = "contactBook.Contact already exists.";
     public static final String NAME_NOT_EXIST = "contactBook.Contact does not exist.";
@@ -32,196 +84,976 @@ public class Main {
     public static final String PHONE_NUMBER_DOESNT_EXIST = "Phone number does not exist.";
     public static final String EQUAL_PHONE_NUMBERS = "There are contacts that share phone numbers.";
     public static final String ALL_DIFFERENT_PHONE_NUMBERS = "All contacts have different phone numbers.";
+    public static final String NO_CONTACTS_FOUND = "No contacts found.";
+    public static final String EMAIL_DOESNT_EXIST = "Email does not exist.";
+    public static final String IMPORT_ADDED = "Contacts added: ";
+    public static final String IMPORT_EXISTING = "Contacts that already existed: ";
+    public static final String IMPORT_INVALID = "Invalid records: ";
+    public static final String FILE_ERROR = "Cannot read the file.";
     public static final String QUIT_MSG = "Goodbye!";
     public static final String COMMAND_ERROR = "Unknown command.";
+    public static final String LISTENING = "Listening on port ";
+    public static final String STATS_AT = "Statistics at ";
+    public static final String NEXT_PAGE = "Next page: ";
+    public static final String BATCH_DISCARDED = "Batch discarded.";
+    public static final String CHANGES_DISABLED = "Change feed disabled.";
+    public static final String CHANGES_LOST = "Changes lost.";
+    public static final String LAST_CHANGE = "Last change: ";
+
+    // Program arguments: the snapshot and log files that keep the contacts between runs, and the log sync policy
+    private static final String SNAPSHOT_OPTION = "-snapshot";
+    private static final String WAL_OPTION = "-wal";
+    private static final String SYNC_OPTION = "-sync";
+    private static final String DEFAULT_SYNC = "group:256:10";
+    // Program argument that chooses the storage engine of the contacts
+    private static final String STORAGE_OPTION = "-storage";
+    private static final String OFF_HEAP_STORAGE = "offheap";
+    private static final String TIERED_STORAGE = "tiered";
+    // Program arguments of the tiered storage: the megabytes of its cache, and the directory of its file
+    private static final String CACHE_OPTION = "-cache";
+    private static final String DEFAULT_CACHE = "64";
+    private static final String TIER_DIRECTORY_OPTION = "-tierDir";
+    // Program argument that partitions the contacts into the given number of shards
+    private static final String SHARDS_OPTION = "-shards";
+    // Program argument that serves the contacts on a local port instead of the standard input
+    private static final String SERVER_OPTION = "-server";
+    // Program arguments to write the statistics to a file every given number of seconds
+    private static final String STATS_OPTION = "-stats";
+    private static final String STATS_PERIOD_OPTION = "-statsPeriod";
+    private static final String DEFAULT_STATS_PERIOD = "60";
+    // Number of changes kept by the change feed, which only exists if given
+    private static final String CHANGES_OPTION = "-changes";
 
     /**
      * The main method of our application, allows the user to interact with
      * the program by line commands.
+     * With "-wal file", the contacts are recovered from the log in the given
+     * file and every change is logged to it; "-sync op|none|group:ops:millis"
+     * chooses when the log is forced to the disk. With "-snapshot file", the
+     * contacts are first loaded from the given snapshot, and saved to it at the end
+     * (which empties the log). "-storage offheap" keeps the contacts off the
+     * Java heap. "-storage tiered" keeps them in a temporary file, in the
+     * directory given by "-tierDir directory" (the system one by default), with
+     * the ones used most cached in "-cache megabytes" of the heap (64 by default,
+     * split among the shards). "-shards n" partitions the contacts into n > 0
+     * shards, whose whole-book commands (LC, DC, PS) run in parallel. With
+     * "-server port", the contacts are served to any number of local clients
+     * that connect to the given port, each with its own commands,
+     * until the program is stopped (then they are saved to the snapshot).
+     * With "-stats file", the statistics shown by the STATS command are also
+     * appended to the given file every "-statsPeriod seconds" (60 by default),
+     * and when the program ends. With "-changes n", the last n changes (at least)
+     * are kept in a change feed, which the CH command reads.
      * @param args - possible outside arguments given to the program
      */
     public static void main(String[] args) {
-        Scanner in = new Scanner(System.in);
-        ContactBook cBook = new ContactBook();
-        String comm = getCommand(in);
+        int shards = positiveOption(args, SHARDS_OPTION);
+        ContactBook cBook = loadSnapshot(args);
+        if (shards > 0)
+            cBook = shard(args, shards, cBook);
+        WriteAheadLog log = openLog(args, cBook);
+        ChangeFeed changes = openFeed(args, cBook);
+        CommandStatistics stats = new CommandStatistics(COMMANDS);
+        String port = option(args, SERVER_OPTION);
+        if (port != null) {
+            serve(args, Integer.parseInt(port), new ConcurrentContactBook(cBook), log, changes, stats);
+            return;
+        }
+        ScheduledExecutorService dumps = startStatisticsDumps(args, cBook, stats);
+        try {
+            runCommands(new CommandReader(System.in), new ResponseWriter(System.out), cBook, changes, stats);
+        } finally {
+            // Also when the input ends without the quit command
+            stopStatisticsDumps(args, cBook, stats, dumps);
+            saveSnapshot(args, cBook, log);
+            closeLog(log);
+        }
+    }
+
+    /**
+     * Answers the commands of one user, until the quit command, recording the
+     * time every command takes.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     * @param changes - the change feed of the cBook, or null if there is none.
+     * @param stats - the statistics of the commands.
+     */
+    private static void runCommands(CommandReader in, ResponseWriter out, ContactBook cBook, ChangeFeed changes,
+                                    CommandStatistics stats) {
+        String comm = getCommand(in, out);
 
         while (!comm.equals(QUIT)){
-            switch (comm) {
-                case ADD_CONTACT 	-> addContact(in,cBook);
-                case REMOVE_CONTACT -> deleteContact(in,cBook);
-                case GET_PHONE		-> getPhone(in,cBook);
-                case GET_EMAIL 		-> getEmail(in,cBook);
-                case SET_PHONE		-> setPhone(in,cBook);
-                case SET_EMAIL		-> setEmail(in,cBook);
-                case LIST_CONTACTS	-> listAllContacts(cBook);
-                case GET_NAME 		-> getName(in, cBook);
-                case EQUAL_PHONES -> checkEqualPhones(cBook);
-                default ->	System.out.println(COMMAND_ERROR);
+            long start = System.nanoTime();
+            String next = null;
+            if (comm.equals(BEGIN))
+                next = runBatch(in,out,cBook);
+            else switch (comm) {
+                case ADD_CONTACT 	-> addContact(in,out,cBook);
+                case REMOVE_CONTACT -> deleteContact(in,out,cBook);
+                case GET_PHONE		-> getPhone(in,out,cBook);
+                case GET_EMAIL 		-> getEmail(in,out,cBook);
+                case SET_PHONE		-> setPhone(in,out,cBook);
+                case SET_EMAIL		-> setEmail(in,out,cBook);
+                case LIST_CONTACTS	-> listAllContacts(out,cBook);
+                case GET_NAME 		-> getName(in,out,cBook);
+                case EQUAL_PHONES -> checkEqualPhones(out,cBook);
+                case PREFIX_SEARCH -> searchByPrefix(in,out,cBook);
+                case GET_NAME_BY_EMAIL -> getNameByEmail(in,out,cBook);
+                case DOMAIN_COUNT -> countDomain(in,out,cBook);
+                case IMPORT -> importContacts(in,out,cBook);
+                case STATS -> printStatistics(out,cBook,stats);
+                case LIST_PAGE -> listPage(in,out,cBook);
+                case SORTED_LIST -> listSorted(in,out,cBook);
+                case RANK -> getRank(in,out,cBook);
+                case RANGE -> listRange(in,out,cBook);
+                case SIMILAR_NAMES -> searchSimilar(in,out,cBook);
+                case CHANGES -> listChanges(in,out,changes);
+                default ->	out.println(COMMAND_ERROR);
             }
-            System.out.println();
-            comm = getCommand(in);
+            if (!comm.equals(BEGIN))
+                out.println();
+            stats.record(comm, System.nanoTime() - start);
+            comm = next != null ? next : getCommand(in, out);
         }
-        System.out.println(QUIT_MSG);
-        System.out.println();
-        in.close();
+        out.println(QUIT_MSG);
+        out.println();
+        out.flush();
     }
 
     /**
-     * Gets the line command from the user and convert it to uppercase to
-     * later possibly match one of the possible commands of the app.
-     * @param in - the Scanner object used get the user input.
-     * @return the user input in uppercase.
+     * Serves the cBook to the clients that connect to the given local port, until
+     * the program is stopped, answering every client as the main method answers
+     * the user. When stopped, the cBook is saved and the log closed.
+     * @param args - the program arguments.
+     * @param port - the port, or 0 for any free one.
+     * @param cBook - the ContactBook object instance used by the app, safe to share.
+     * @param log - the log, or null if there is none.
+     * @param changes - the change feed of the cBook, or null if there is none.
+     * @param stats - the statistics of the commands.
      */
-    private static String getCommand(Scanner in) {
-        String input;
+    private static void serve(String[] args, int port, ContactBook cBook, WriteAheadLog log, ChangeFeed changes,
+                              CommandStatistics stats) {
+        try {
+            CommandServer server = new CommandServer(port, (in, out) -> runCommands(in, out, cBook, changes, stats));
+            ScheduledExecutorService dumps = startStatisticsDumps(args, cBook, stats);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                stopStatisticsDumps(args, cBook, stats, dumps);
+                saveSnapshot(args, cBook, log);
+                closeLog(log);
+            }));
+            System.out.println(LISTENING + server.getPort());
+            server.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        input = in.nextLine().toUpperCase();
-        return input;
+    /**
+     * Loads the cBook from the snapshot given in the program arguments, if it exists,
+     * using the storage engine given in the program arguments.
+     * @param args - the program arguments.
+     * @return the loaded cBook, or a new empty one.
+     */
+    private static ContactBook loadSnapshot(String[] args) {
+        String file = option(args, SNAPSHOT_OPTION);
+        ContactStorage storage = newStorage(args);
+        try {
+            if (file != null && Files.exists(Path.of(file)))
+                return ContactBookSnapshot.load(Path.of(file), storage);
+            return new ContactBookClass(storage);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates a storage engine of the kind given in the program arguments.
+     * @param args - the program arguments.
+     * @return a new, empty storage engine.
+     */
+    private static ContactStorage newStorage(String[] args) {
+        String storage = option(args, STORAGE_OPTION);
+        if (OFF_HEAP_STORAGE.equals(storage))
+            return new OffHeapStorage();
+        if (!TIERED_STORAGE.equals(storage))
+            return new ArrayStorage();
+        String cache = option(args, CACHE_OPTION);
+        String shards = option(args, SHARDS_OPTION);
+        long bytes = Long.parseLong(cache == null ? DEFAULT_CACHE : cache) << 20;
+        if (shards != null)
+            bytes /= Integer.parseInt(shards);
+        String directory = option(args, TIER_DIRECTORY_OPTION);
+        try {
+            if (directory == null)
+                directory = System.getProperty("java.io.tmpdir");
+            return new TieredStorage(bytes, Path.of(directory));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Moves the contacts of the given cBook to a new book with the given number of
+     * shards, each one with a storage engine of the kind given in the program arguments.
+     * @param args - the program arguments.
+     * @param shards - the number of shards.
+     * @param cBook - the loaded cBook.
+     * @return the sharded cBook, with the same contacts in the same order.
+     */
+    private static ContactBook shard(String[] args, int shards, ContactBook cBook) {
+        ShardedContactBook sharded = new ShardedContactBook(shards, () -> newStorage(args), ForkJoinPool.commonPool());
+        sharded.ensureCapacity(cBook.getNumberOfContacts());
+        for (Contact c : cBook)
+            sharded.addContact(c.getName(), c.getPhone(), c.getEmail());
+        return sharded;
+    }
+
+    /**
+     * Saves the cBook to the snapshot given in the program arguments, if any, and
+     * then empties the log, whose changes are all in the snapshot.
+     * @param args - the program arguments.
+     * @param cBook - the ContactBook object instance used by the app.
+     * @param log - the log, or null if there is none.
+     */
+    private static void saveSnapshot(String[] args, ContactBook cBook, WriteAheadLog log) {
+        String file = option(args, SNAPSHOT_OPTION);
+        if (file == null)
+            return;
+        try {
+            // The snapshot has the changes of the log, so they are not replayed over it if we stop now
+            long generation = log != null ? log.getGeneration() : WriteAheadLog.NO_GENERATION;
+            ContactBookSnapshot.write(cBook, Path.of(file), generation);
+            if (log != null)
+                log.reset();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the value given to an option in the program arguments.
+     * @param args - the program arguments.
+     * @param option - the option name.
+     * @return the argument after the option, or null if the option is not given.
+     */
+    private static String option(String[] args, String option) {
+        for (int i = 0; i + 1 < args.length; i++)
+            if (args[i].equals(option))
+                return args[i+1];
+        return null;
+    }
+
+    /**
+     * Returns the positive number given to an option in the program arguments.
+     * @param args - the program arguments.
+     * @param option - the option name.
+     * @return the number after the option, or 0 if the option is not given.
+     * @throws IllegalArgumentException if the argument after the option is not a positive number.
+     */
+    private static int positiveOption(String[] args, String option) {
+        String value = option(args, option);
+        if (value == null)
+            return 0;
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0)
+                return number;
+        } catch (NumberFormatException e) {
+            // Reported below, as any other value that is not positive
+        }
+        throw new IllegalArgumentException("Option " + option + " must be a positive number: " + value);
+    }
+
+    /**
+     * Opens the log given in the program arguments, if any, recovers the cBook
+     * from it and registers it to log the following changes. The changes the
+     * loaded snapshot already has are not replayed.
+     * @param args - the program arguments.
+     * @param cBook - the ContactBook object instance used by the app, empty or loaded from the snapshot.
+     * @return the opened log, or null if no log was asked for.
+     */
+    private static WriteAheadLog openLog(String[] args, ContactBook cBook) {
+        String file = option(args, WAL_OPTION);
+        if (file == null)
+            return null;
+        String sync = option(args, SYNC_OPTION);
+        try {
+            WriteAheadLog log = new WriteAheadLog(Path.of(file), SyncPolicy.parse(sync != null ? sync : DEFAULT_SYNC));
+            String snapshot = option(args, SNAPSHOT_OPTION);
+            long covered = WriteAheadLog.NO_GENERATION;
+            if (snapshot != null && Files.exists(Path.of(snapshot)))
+                covered = ContactBookSnapshot.getLogGeneration(Path.of(snapshot));
+            log.replay(cBook, covered);
+            cBook.addListener(log);
+            return log;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Starts publishing the changes of the cBook in a feed, if the program
+     * arguments give the number of changes it keeps. The feed starts after the
+     * changes replayed from the log, so its first change is the first one made
+     * by the users.
+     * @param args - the program arguments.
+     * @param cBook - the ContactBook object instance used by the app.
+     * @return the change feed, or null if there is none.
+     */
+    private static ChangeFeed openFeed(String[] args, ContactBook cBook) {
+        int capacity = positiveOption(args, CHANGES_OPTION);
+        if (capacity == 0)
+            return null;
+        if (capacity > ChangeFeed.MAX_CAPACITY)
+            throw new IllegalArgumentException("Option " + CHANGES_OPTION + " must be at most "
+                    + ChangeFeed.MAX_CAPACITY + ": " + capacity);
+        ChangeFeed changes = new ChangeFeed(capacity);
+        cBook.addListener(changes);
+        return changes;
+    }
+
+    /**
+     * Forces the log to the disk and closes it.
+     * @param log - the log, or null if there is none.
+     */
+    private static void closeLog(WriteAheadLog log) {
+        if (log == null)
+            return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Starts appending the statistics to the file given in the program arguments, if any,
+     * every period given in the program arguments.
+     * @param args - the program arguments.
+     * @param cBook - the ContactBook object instance used by the app.
+     * @param stats - the statistics of the commands.
+     * @return the thread that appends the statistics, or null if no file was asked for.
+     */
+    private static ScheduledExecutorService startStatisticsDumps(String[] args, ContactBook cBook,
+                                                                 CommandStatistics stats) {
+        String file = option(args, STATS_OPTION);
+        if (file == null)
+            return null;
+        String period = option(args, STATS_PERIOD_OPTION);
+        long seconds = Long.parseLong(period != null ? period : DEFAULT_STATS_PERIOD);
+        ScheduledExecutorService dumps = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "statistics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumps.scheduleAtFixedRate(() -> dumpStatistics(Path.of(file), cBook, stats), seconds, seconds,
+                TimeUnit.SECONDS);
+        return dumps;
+    }
+
+    /**
+     * Stops appending the statistics to the file, and appends them one last time.
+     * @param args - the program arguments.
+     * @param cBook - the ContactBook object instance used by the app.
+     * @param stats - the statistics of the commands.
+     * @param dumps - the thread that appends the statistics, or null if there is none.
+     */
+    private static void stopStatisticsDumps(String[] args, ContactBook cBook, CommandStatistics stats,
+                                            ScheduledExecutorService dumps) {
+        if (dumps == null)
+            return;
+        dumps.shutdownNow();
+        dumpStatistics(Path.of(option(args, STATS_OPTION)), cBook, stats);
+    }
+
+    /**
+     * Appends the statistics to the given file, after the time they were taken at.
+     * A dump that cannot be written is skipped; the next one tries again.
+     * @param file - the statistics file.
+     * @param cBook - the ContactBook object instance used by the app.
+     * @param stats - the statistics of the commands.
+     */
+    private static void dumpStatistics(Path file, ContactBook cBook, CommandStatistics stats) {
+        try (OutputStream stream = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            ResponseWriter out = new ResponseWriter(stream);
+            out.print(STATS_AT);
+            out.println(Instant.now().toString());
+            printStatistics(out, cBook, stats);
+            out.println();
+            out.flush();
+        } catch (IOException | UncheckedIOException e) {
+            // Nothing to do: the statistics are still being recorded
+        }
+    }
+
+    /**
+     * Gets the line command from the user and matches it, ignoring case,
+     * with one of the possible commands of the app. The responses are only
+     * written when the reader has no more buffered commands, so that an
+     * interactive user sees them before typing, while the commands of a
+     * file are answered in large blocks.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @return the matched command, or the user input in uppercase.
+     */
+    private static String getCommand(CommandReader in, ResponseWriter out) {
+        if (!in.hasBufferedInput())
+            out.flush();
+        return in.readCommand(COMMANDS);
     }
 
     /**
      * Asks for all the information necessary to create a contact and tries to
      * add it to the cBook. If this person already exists in the cBook, the
      * contact won't be added.
-     * @param in - the Scanner object used get the user input.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
      * @param cBook - the ContactBook object instance used by the app.
      */
-    private static void addContact(Scanner in, ContactBook cBook) {
+    private static void addContact(CommandReader in, ResponseWriter out, ContactBook cBook) {
         String name, email;
         int phone;
 
-        name = in.nextLine();
-        phone = in.nextInt(); in.nextLine();
-        email = in.nextLine();
-        if (!cBook.hasContact(name)) {
-            cBook.addContact(name, phone, email);
-            System.out.println(CONTACT_ADDED);
+        name = in.readLine();
+        phone = in.readInt();
+        email = in.readLine();
+        if (cBook.tryAddContact(name, phone, email)) {
+            out.println(CONTACT_ADDED);
         }
-        else System.out.println(CONTACT_EXISTS);
+        else out.println(CONTACT_EXISTS);
     }
 
     /**
      * Deletes the contact with the name given from the cBook, if the contact
      * exists in the cBook.
-     * @param in - the Scanner object used get the user input.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
      * @param cBook - the ContactBook object instance used by the app.
      */
-    private static void deleteContact(Scanner in, ContactBook cBook) {
+    private static void deleteContact(CommandReader in, ResponseWriter out, ContactBook cBook) {
         String name;
-        name = in.nextLine();
-        if (cBook.hasContact(name)) {
-            cBook.deleteContact(name);
-            System.out.println(CONTACT_REMOVED);
+        name = in.readLine();
+        if (cBook.tryDeleteContact(name)) {
+            out.println(CONTACT_REMOVED);
         }
-        else System.out.println(NAME_NOT_EXIST);
+        else out.println(NAME_NOT_EXIST);
     }
 
     /**
      * Gets the phone number of the contact with the given name. The contact
      * must exist in the cBook.
-     * @param in - the Scanner object used get the user input.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
      * @param cBook - the ContactBook object instance used by the app.
      */
-    private static void getPhone(Scanner in, ContactBook cBook) {
+    private static void getPhone(CommandReader in, ResponseWriter out, ContactBook cBook) {
         String name;
-        name = in.nextLine();
-        if (cBook.hasContact(name)) {
-            System.out.println(cBook.getPhone(name));
+        name = in.readLine();
+        Contact c = cBook.getContact(name);
+        if (c != null) {
+            out.println(c.getPhone());
         }
-        else System.out.println(NAME_NOT_EXIST);
+        else out.println(NAME_NOT_EXIST);
     }
 
     /**
      * Gets the email of the contact with the given name. The contact
      * must exist in the cBook.
-     * @param in - the Scanner object used get the user input.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
      * @param cBook - the ContactBook object instance used by the app.
      */
-    private static void getEmail(Scanner in, ContactBook cBook) {
+    private static void getEmail(CommandReader in, ResponseWriter out, ContactBook cBook) {
         String name;
-        name = in.nextLine();
-        if (cBook.hasContact(name)) {
-            System.out.println(cBook.getEmail(name));
+        name = in.readLine();
+        Contact c = cBook.getContact(name);
+        if (c != null) {
+            out.println(c.getEmail());
         }
-        else System.out.println(NAME_NOT_EXIST);
+        else out.println(NAME_NOT_EXIST);
     }
 
     /**
      * Updates the phone number of the contact with the given name. The contact
      * must exist in the cBook.
-     * @param in - the Scanner object used get the user input.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
      * @param cBook - the ContactBook object instance used by the app.
      */
-    private static void setPhone(Scanner in, ContactBook cBook) {
+    private static void setPhone(CommandReader in, ResponseWriter out, ContactBook cBook) {
         String name;
         int phone;
-        name = in.nextLine();
-        phone = in.nextInt(); in.nextLine();
-        if (cBook.hasContact(name)) {
-            cBook.setPhone(name,phone);
-            System.out.println(CONTACT_UPDATED);
+        name = in.readLine();
+        phone = in.readInt();
+        if (cBook.trySetPhone(name,phone)) {
+            out.println(CONTACT_UPDATED);
         }
-        else System.out.println(NAME_NOT_EXIST);
+        else out.println(NAME_NOT_EXIST);
     }
 
     /**
      * Updates the email of the person with the given name. The contact
      * must exist in the cBook.
-     * @param in - the Scanner object used get the user input.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
      * @param cBook - the ContactBook object instance used by the app.
      */
-    private static void setEmail(Scanner in, ContactBook cBook) {
+    private static void setEmail(CommandReader in, ResponseWriter out, ContactBook cBook) {
         String name;
         String email;
-        name = in.nextLine();
-        email = in.nextLine();
-        if (cBook.hasContact(name)) {
-            cBook.setEmail(name,email);
-            System.out.println(CONTACT_UPDATED);
+        name = in.readLine();
+        email = in.readLine();
+        if (cBook.trySetEmail(name,email)) {
+            out.println(CONTACT_UPDATED);
         }
-        else System.out.println(NAME_NOT_EXIST);
+        else out.println(NAME_NOT_EXIST);
+    }
+
+    /**
+     * Reads the changes (AC, RC, SP and SE commands) of a batch started by BEGIN until COMMIT,
+     * and then applies all of them to the cBook in a single step, answering every change in
+     * order, as its command alone would have been answered. If another command comes before
+     * COMMIT, nothing is applied, and that command is returned to be run as usual.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     * @return null if the batch was applied, or the command that discarded it.
+     */
+    private static String runBatch(CommandReader in, ResponseWriter out, ContactBook cBook) {
+        ContactBatch batch = new ContactBatch();
+        List<String> commands = new ArrayList<>();
+        String comm = in.readCommand(COMMANDS);
+        while (!comm.equals(COMMIT)) {
+            switch (comm) {
+                case ADD_CONTACT -> {
+                    String name = in.readLine();
+                    int phone = in.readInt();
+                    batch.addContact(name, phone, in.readLine());
+                }
+                case REMOVE_CONTACT -> batch.deleteContact(in.readLine());
+                case SET_PHONE -> {
+                    String name = in.readLine();
+                    batch.setPhone(name, in.readInt());
+                }
+                case SET_EMAIL -> {
+                    String name = in.readLine();
+                    batch.setEmail(name, in.readLine());
+                }
+                default -> {
+                    out.println(BATCH_DISCARDED);
+                    out.println();
+                    return comm;
+                }
+            }
+            commands.add(comm);
+            comm = in.readCommand(COMMANDS);
+        }
+        cBook.applyBatch(batch);
+        for (int i=0; i<batch.size(); i++) {
+            String command = commands.get(i);
+            if (batch.isApplied(i))
+                out.println(command.equals(ADD_CONTACT) ? CONTACT_ADDED
+                        : command.equals(REMOVE_CONTACT) ? CONTACT_REMOVED : CONTACT_UPDATED);
+            else
+                out.println(command.equals(ADD_CONTACT) ? CONTACT_EXISTS : NAME_NOT_EXIST);
+            out.println();
+        }
+        return null;
+    }
+
+    /**
+     * Lists, in alphabetical order, the first contacts whose name starts with the
+     * given prefix, up to the given number of contacts.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     */
+    private static void searchByPrefix(CommandReader in, ResponseWriter out, ContactBook cBook) {
+        String prefix;
+        int limit;
+        prefix = in.readLine();
+        limit = in.readInt();
+        List<Contact> found = cBook.getContactsByPrefix(prefix, Math.max(limit, 0));
+        if (!found.isEmpty()) {
+            for (Contact c : found)
+                printContact(out, c);
+        }
+        else out.println(NO_CONTACTS_FOUND);
+    }
+
+    /**
+     * Lists the contacts whose names are closest to the given one, which may be
+     * mistyped, up to the given number of contacts: the closest first, by the
+     * number of characters to insert, delete or replace to get one name from
+     * the other (two at most), and then in alphabetical order.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     */
+    private static void searchSimilar(CommandReader in, ResponseWriter out, ContactBook cBook) {
+        String name;
+        int limit;
+        name = in.readLine();
+        limit = in.readInt();
+        List<Contact> found = cBook.getSimilarContacts(name, Math.max(limit, 0));
+        if (!found.isEmpty()) {
+            for (Contact c : found)
+                printContact(out, c);
+        }
+        else out.println(NO_CONTACTS_FOUND);
+    }
+
+    /**
+     * Lists the changes made to the cBook after the one with the given sequence
+     * number (0 for all of them), up to the given number of changes, each one
+     * as its sequence number, the command that made it and its data, followed
+     * by the sequence number of the last change listed, to go on from there.
+     * The feed only keeps the last changes, so older ones may be lost, and then
+     * the contacts must be listed again.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param changes - the change feed of the cBook, or null if there is none.
+     */
+    private static void listChanges(CommandReader in, ResponseWriter out, ChangeFeed changes) {
+        long after;
+        int limit;
+        after = in.readLong();
+        limit = in.readInt();
+        if (changes == null) {
+            out.println(CHANGES_DISABLED);
+            return;
+        }
+        after = Math.max(after, 0);
+        List<ChangeEvent> found = changes.read(after, Math.max(limit, 0));
+        if (found == null) {
+            out.println(CHANGES_LOST);
+            return;
+        }
+        for (ChangeEvent change : found) {
+            out.print(change.getSequence());
+            out.print(" ");
+            switch (change.getType()) {
+                case ADDED -> out.print(ADD_CONTACT);
+                case REMOVED -> out.print(REMOVE_CONTACT);
+                case PHONE_CHANGED -> out.print(SET_PHONE);
+                default -> out.print(SET_EMAIL);
+            }
+            out.print(" ");
+            out.print(change.getName());
+            if (change.getEmail() != null) {
+                out.print("; ");
+                out.print(change.getEmail());
+            }
+            if (change.getType() == ChangeEvent.Type.ADDED || change.getType() == ChangeEvent.Type.PHONE_CHANGED) {
+                out.print("; ");
+                out.print(change.getPhone());
+            }
+            out.println();
+            after = change.getSequence();
+        }
+        out.print(LAST_CHANGE);
+        out.println(after);
     }
 
     /**
      * List all the contact from the cBook from the first contact added
      * to the most recent one added.
+     * @param out - the ResponseWriter object used to answer the user.
      * @param cBook - the ContactBook object instance used by the app.
      */
-    private static void listAllContacts(ContactBook cBook) {
+    private static void listAllContacts(ResponseWriter out, ContactBook cBook) {
         if (cBook.getNumberOfContacts() != 0) {
-            cBook.initializeIterator();
-            while( cBook.hasNext() ) {
-                Contact c = cBook.next();
-                System.out.println(c.getName() + "; " + c.getEmail() + "; " + c.getPhone());
-            }
+            for (Contact c : cBook)
+                printContact(out, c);
+        }
+        else out.println(BOOK_EMPTY);
+    }
+
+    /**
+     * Lists one page of the contacts of the cBook, in insertion order: up to the
+     * given number of contacts, from the one with the given cursor on (0 for the
+     * oldest one). If there are more contacts, the cursor of the next page is
+     * printed after them, so that the listing can go on from there later, even if
+     * the cBook changed in between.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     */
+    private static void listPage(CommandReader in, ResponseWriter out, ContactBook cBook) {
+        long cursor;
+        int limit;
+        cursor = in.readLong();
+        limit = in.readInt();
+        if (cBook.getNumberOfContacts() == 0) {
+            out.println(BOOK_EMPTY);
+            return;
+        }
+        int[] listed = {0};
+        long next = cBook.listContacts(Math.max(cursor, 0), Math.max(limit, 0), c -> {
+            printContact(out, c);
+            listed[0]++;
+        });
+        if (listed[0] == 0 && next < 0)
+            out.println(NO_CONTACTS_FOUND);
+        else if (next >= 0) {
+            out.print(NEXT_PAGE);
+            out.println(next);
+        }
+    }
+
+    /**
+     * Lists the contacts in alphabetical order, from the given position on (1 for
+     * the first name), up to the given number of contacts.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     */
+    private static void listSorted(CommandReader in, ResponseWriter out, ContactBook cBook) {
+        int position;
+        int limit;
+        position = in.readInt();
+        limit = in.readInt();
+        if (cBook.getNumberOfContacts() == 0) {
+            out.println(BOOK_EMPTY);
+            return;
+        }
+        List<Contact> found = cBook.getContactsByRank(Math.max(position - 1, 0), Math.max(limit, 0));
+        if (!found.isEmpty()) {
+            for (Contact c : found)
+                printContact(out, c);
+        }
+        else out.println(NO_CONTACTS_FOUND);
+    }
+
+    /**
+     * Prints the position of the contact with the given name in the alphabetical
+     * order of the names (1 for the first name).
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     */
+    private static void getRank(CommandReader in, ResponseWriter out, ContactBook cBook) {
+        String name;
+        name = in.readLine();
+        if (cBook.hasContact(name)) {
+            out.println(cBook.getRank(name) + 1);
         }
-        else System.out.println(BOOK_EMPTY);
+        else out.println(NAME_NOT_EXIST);
+    }
+
+    /**
+     * Lists, in alphabetical order, the contacts whose names are between the two
+     * given names (both included), up to the given number of contacts.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     */
+    private static void listRange(CommandReader in, ResponseWriter out, ContactBook cBook) {
+        String from, to;
+        int limit;
+        from = in.readLine();
+        to = in.readLine();
+        limit = in.readInt();
+        List<Contact> found = cBook.getContactsBetween(from, to, Math.max(limit, 0));
+        if (!found.isEmpty()) {
+            for (Contact c : found)
+                printContact(out, c);
+        }
+        else out.println(NO_CONTACTS_FOUND);
+    }
+
+    /**
+     * Prints a contact in one line, as name; email; phone.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param c - the contact to print.
+     */
+    private static void printContact(ResponseWriter out, Contact c) {
+        out.print(c.getName());
+        out.print("; ");
+        out.print(c.getEmail());
+        out.print("; ");
+        out.println(c.getPhone());
     }
 
     /**
      * Prints the name of the contact with the given phone number.
      * In case there are many with the same phone number, the oldest contact
      * is the one printed.
-     * @param in - the Scanner object used get the user input.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
      * @param cBook - the ContactBook object instance used by the app.
      */
-    private static void getName(Scanner in, ContactBook cBook) {
+    private static void getName(CommandReader in, ResponseWriter out, ContactBook cBook) {
     	int number;
-    	number = in.nextInt(); in.nextLine();
-    	if (cBook.hasContact(number)) {
-    		System.out.println(cBook.getName(number));
+    	number = in.readInt();
+    	String name = cBook.findName(number);
+    	if (name != null) {
+    		out.println(name);
     	}
-    	else System.out.println(PHONE_NUMBER_DOESNT_EXIST);
+    	else out.println(PHONE_NUMBER_DOESNT_EXIST);
+    }
+
+    /**
+     * Prints the name of the contact with the given email.
+     * In case there are many with the same email, the oldest contact
+     * is the one printed.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     */
+    private static void getNameByEmail(CommandReader in, ResponseWriter out, ContactBook cBook) {
+        String email;
+        email = in.readLine();
+        Contact c = cBook.getContactByEmail(email);
+        if (c != null) {
+            out.println(c.getName());
+        }
+        else out.println(EMAIL_DOESNT_EXIST);
+    }
+
+    /**
+     * Prints the number of contacts whose email is in the given domain.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     */
+    private static void countDomain(CommandReader in, ResponseWriter out, ContactBook cBook) {
+        String domain;
+        domain = in.readLine();
+        out.println(cBook.countContactsInDomain(domain));
+    }
+
+    /**
+     * Adds all the contacts of the given CSV or command file to the cBook, as
+     * AC would add them one by one, and prints how many were added, how many
+     * already existed and how many records were invalid.
+     * @param in - the CommandReader object used get the user input.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     */
+    private static void importContacts(CommandReader in, ResponseWriter out, ContactBook cBook) {
+        String file;
+        file = in.readLine();
+        BulkImporter importer = new BulkImporter(cBook);
+        try {
+            Path path = Path.of(file);
+            importer.importFile(path, BulkImporter.Format.of(path), 0);
+        } catch (IOException | InvalidPathException e) {
+            out.println(FILE_ERROR);
+            return;
+        }
+        out.print(IMPORT_ADDED);
+        out.println(importer.getAdded());
+        out.print(IMPORT_EXISTING);
+        out.println(importer.getExisting());
+        out.print(IMPORT_INVALID);
+        out.println(importer.getInvalid());
+    }
+
+    /**
+     * Prints the statistics of the app: the number of contacts, the capacity and the
+     * resizes of the storage, the entries scanned by the lookups by name and by phone
+     * number, the hits, the misses and the use of the cache of the storage, if it has
+     * one, how many commands were answered per second, and the latencies of every
+     * command answered so far.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param cBook - the ContactBook object instance used by the app.
+     * @param stats - the statistics of the commands.
+     */
+    private static void printStatistics(ResponseWriter out, ContactBook cBook, CommandStatistics stats) {
+        ContactBookStatistics bookStats = cBook.getStatistics();
+        out.print("Contacts: ");
+        out.println(cBook.getNumberOfContacts());
+        out.print("Capacity: ");
+        out.println(bookStats.getCapacity());
+        out.print("Resizes: ");
+        out.println(bookStats.getResizes());
+        printProbes(out, "Name probes: ", bookStats.getNameProbes());
+        printProbes(out, "Phone probes: ", bookStats.getPhoneProbes());
+        if (bookStats.getCacheBytes() > 0)
+            printCache(out, bookStats);
+        long total = 0;
+        for (String command : stats.getCommands())
+            total += stats.getLatencies(command).getCount();
+        long millis = Math.max(1, stats.getElapsed() / 1_000_000);
+        out.print("Commands: ");
+        out.print(total);
+        out.print(" in ");
+        out.print(millis);
+        out.print(" ms, ");
+        out.print(total * 1000 / millis);
+        out.println(" per second");
+        for (String command : stats.getCommands()) {
+            Histogram latencies = stats.getLatencies(command);
+            if (latencies.getCount() == 0)
+                continue;
+            out.print(command);
+            out.print(": ");
+            out.print(latencies.getCount());
+            out.print(", mean ");
+            out.print(Math.round(latencies.getMean()));
+            out.print(" ns, p50 ");
+            out.print(latencies.getPercentile(50));
+            out.print(" ns, p99 ");
+            out.print(latencies.getPercentile(99));
+            out.print(" ns, p99.9 ");
+            out.print(latencies.getPercentile(99.9));
+            out.print(" ns, max ");
+            out.print(latencies.getMax());
+            out.println(" ns");
+        }
+    }
+
+    /**
+     * Prints the hits and the misses of the cache of the storage, and the megabytes it
+     * holds out of the most it may hold.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param bookStats - the statistics of the cBook.
+     */
+    private static void printCache(ResponseWriter out, ContactBookStatistics bookStats) {
+        long hits = bookStats.getCacheHits();
+        long misses = bookStats.getCacheMisses();
+        out.print("Cache: ");
+        out.print(hits);
+        out.print(" hits, ");
+        out.print(misses);
+        out.print(" misses, hit rate ");
+        out.print(String.format(Locale.ROOT, "%.2f", hits + misses == 0 ? 0.0 : 100.0 * hits / (hits + misses)));
+        out.print("%, ");
+        out.print(String.format(Locale.ROOT, "%.2f", bookStats.getCachedBytes() / (double) (1 << 20)));
+        out.print(" of ");
+        out.print(bookStats.getCacheBytes() >> 20);
+        out.println(" MB used");
+    }
+
+    /**
+     * Prints a histogram of the entries scanned by the lookups of an index.
+     * @param out - the ResponseWriter object used to answer the user.
+     * @param label - the name of the index.
+     * @param probes - the histogram of the entries scanned.
+     */
+    private static void printProbes(ResponseWriter out, String label, Histogram probes) {
+        out.print(label);
+        out.print(probes.getCount());
+        out.print(" lookups, mean ");
+        out.print(String.format(Locale.ROOT, "%.2f", probes.getMean()));
+        out.print(", p99 ");
+        out.print(probes.getPercentile(99));
+        out.print(", max ");
+        out.println(probes.getMax());
     }
 
     /**
      * Print if there are contacts with the same phone number in the cBook.
+     * @param out - the ResponseWriter object used to answer the user.
      * @param cBook - the ContactBook object instance used by the app.
      */
-    private static void checkEqualPhones(ContactBook cBook) {
+    private static void checkEqualPhones(ResponseWriter out, ContactBook cBook) {
         if(!cBook.hasEqualPhones())
-            System.out.println(ALL_DIFFERENT_PHONE_NUMBERS);
+            out.println(ALL_DIFFERENT_PHONE_NUMBERS);
         else
-            System.out.println(EQUAL_PHONE_NUMBERS);
+            out.println(EQUAL_PHONE_NUMBERS);
     }
 }
@@ -33,6 +33,53 @@ public class Tests {
     @Test public void test1() { test("1_in_base.txt","1_out_base.txt"); }
     @Test public void test2() { test("2_in_base_GN.txt","2_out_base_GN.txt"); }
     @Test public void test3() { test("3_in_base_EP.txt","3_out_base_EP.txt"); }
+    @Test public void test4() { test("4_in_base_PS.txt","4_out_base_PS.txt"); }
+    @Test public void test5() { test("5_in_base_EN.txt","5_out_base_EN.txt"); }
+    @Test public void test6() { test("6_in_base_IM.txt","6_out_base_IM.txt"); }
+    @Test public void test7() { test("7_in_base_LP.txt","7_out_base_LP.txt"); }
+    @Test public void test8() { test("8_in_base_SL.txt","8_out_base_SL.txt"); }
+    @Test public void test9() { test("9_in_base_BEGIN.txt","9_out_base_BEGIN.txt"); }
+    @Test public void test10() { test("10_in_base_SN.txt","10_out_base_SN.txt"); }
+    @Test public void test11() { test("11_in_base_CH.txt","11_out_base_CH.txt","-changes","4"); }
+
+    // The same tests with the contacts off the Java heap
+    @Test public void test1OffHeap() { test("1_in_base.txt","1_out_base.txt","-storage","offheap"); }
+    @Test public void test2OffHeap() { test("2_in_base_GN.txt","2_out_base_GN.txt","-storage","offheap"); }
+    @Test public void test3OffHeap() { test("3_in_base_EP.txt","3_out_base_EP.txt","-storage","offheap"); }
+    @Test public void test4OffHeap() { test("4_in_base_PS.txt","4_out_base_PS.txt","-storage","offheap"); }
+    @Test public void test5OffHeap() { test("5_in_base_EN.txt","5_out_base_EN.txt","-storage","offheap"); }
+    @Test public void test6OffHeap() { test("6_in_base_IM.txt","6_out_base_IM.txt","-storage","offheap"); }
+    @Test public void test7OffHeap() { test("7_in_base_LP.txt","7_out_base_LP.txt","-storage","offheap"); }
+    @Test public void test8OffHeap() { test("8_in_base_SL.txt","8_out_base_SL.txt","-storage","offheap"); }
+    @Test public void test9OffHeap() { test("9_in_base_BEGIN.txt","9_out_base_BEGIN.txt","-storage","offheap"); }
+    @Test public void test10OffHeap() { test("10_in_base_SN.txt","10_out_base_SN.txt","-storage","offheap"); }
+    @Test public void test11OffHeap() { test("11_in_base_CH.txt","11_out_base_CH.txt","-changes","4","-storage","offheap"); }
+
+    // The same tests with the contacts split among shards
+    @Test public void test1Sharded() { test("1_in_base.txt","1_out_base.txt","-shards","3"); }
+    @Test public void test2Sharded() { test("2_in_base_GN.txt","2_out_base_GN.txt","-shards","3"); }
+    @Test public void test3Sharded() { test("3_in_base_EP.txt","3_out_base_EP.txt","-shards","3"); }
+    @Test public void test4Sharded() { test("4_in_base_PS.txt","4_out_base_PS.txt","-shards","3"); }
+    @Test public void test5Sharded() { test("5_in_base_EN.txt","5_out_base_EN.txt","-shards","3"); }
+    @Test public void test6Sharded() { test("6_in_base_IM.txt","6_out_base_IM.txt","-shards","3"); }
+    @Test public void test7Sharded() { test("7_in_base_LP.txt","7_out_base_LP.txt","-shards","3"); }
+    @Test public void test8Sharded() { test("8_in_base_SL.txt","8_out_base_SL.txt","-shards","3"); }
+    @Test public void test9Sharded() { test("9_in_base_BEGIN.txt","9_out_base_BEGIN.txt","-shards","3"); }
+    @Test public void test10Sharded() { test("10_in_base_SN.txt","10_out_base_SN.txt","-shards","3"); }
+    @Test public void test11Sharded() { test("11_in_base_CH.txt","11_out_base_CH.txt","-changes","4","-shards","3"); }
+
+    // The same tests with the contacts in a file and no cache, so every contact is read from the file
+    @Test public void test1Tiered() { test("1_in_base.txt","1_out_base.txt","-storage","tiered","-cache","0"); }
+    @Test public void test2Tiered() { test("2_in_base_GN.txt","2_out_base_GN.txt","-storage","tiered","-cache","0"); }
+    @Test public void test3Tiered() { test("3_in_base_EP.txt","3_out_base_EP.txt","-storage","tiered","-cache","0"); }
+    @Test public void test4Tiered() { test("4_in_base_PS.txt","4_out_base_PS.txt","-storage","tiered","-cache","0"); }
+    @Test public void test5Tiered() { test("5_in_base_EN.txt","5_out_base_EN.txt","-storage","tiered","-cache","0"); }
+    @Test public void test6Tiered() { test("6_in_base_IM.txt","6_out_base_IM.txt","-storage","tiered","-cache","0"); }
+    @Test public void test7Tiered() { test("7_in_base_LP.txt","7_out_base_LP.txt","-storage","tiered","-cache","0"); }
+    @Test public void test8Tiered() { test("8_in_base_SL.txt","8_out_base_SL.txt","-storage","tiered","-cache","0"); }
+    @Test public void test9Tiered() { test("9_in_base_BEGIN.txt","9_out_base_BEGIN.txt","-storage","tiered","-cache","0"); }
+    @Test public void test10Tiered() { test("10_in_base_SN.txt","10_out_base_SN.txt","-storage","tiered","-cache","0"); }
+    @Test public void test11Tiered() { test("11_in_base_CH.txt","11_out_base_CH.txt","-changes","4","-storage","tiered","-cache","0"); }
 
 
     private static final File BASE = new File("tests");
@@ -46,11 +93,11 @@ public class Tests {
         System.setOut(new PrintStream(outContent));
     }
 
-    public void test(String intput, String output) {
-        test(new File(BASE, intput), new File(BASE, output));
+    public void test(String intput, String output, String... args) {
+        test(new File(BASE, intput), new File(BASE, output), args);
     }
 
-    public void test(File input, File output) {
+    public void test(File input, File output, String... args) {
         consoleStream.println("Testing!");
         consoleStream.println("Input: " + input.getAbsolutePath());
         consoleStream.println("Output: " + output.getAbsolutePath());
@@ -73,7 +120,7 @@ public class Tests {
             Locale.setDefault(Locale.US);
             System.setIn(new FileInputStream(input));
             Class<?> mainClass = Class.forName("Main");
-            mainClass.getMethod("main", String[].class).invoke(null, new Object[] { new String[0] });
+            mainClass.getMethod("main", String[].class).invoke(null, new Object[] { args });
         } catch (Exception e) {
             e.printStackTrace();
             fail("Erro no programa");
@@ -0,0 +1,137 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import contactBook.ContactBook;
+import contactBook.ContactBookClass;
+import contactBook.ContactBookSnapshot;
+import contactBook.SyncPolicy;
+import contactBook.WriteAheadLog;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the recovery of a ContactBook from its WriteAheadLog, which the golden files cannot show,
+ * since they always end with the quit command: a program that dies without closing the log, a record
+ * torn by a crash, and a program that dies after saving a snapshot but before resetting the log.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class WriteAheadLogTests {
+    private Path directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("wal");
+        directory.toFile().deleteOnExit();
+    }
+
+    @Test public void recoversWithoutForcing() throws IOException {
+        recoversAfterDying(SyncPolicy.none());
+    }
+
+    @Test public void recoversBeforeTheGroupCommit() throws IOException {
+        recoversAfterDying(SyncPolicy.groupCommit(100, 60_000));
+    }
+
+    @Test public void discardsATornRecord() throws IOException {
+        Path file = file("torn.log");
+        WriteAheadLog log = new WriteAheadLog(file, SyncPolicy.everyOperation());
+        ContactBook book = new ContactBookClass();
+        book.addListener(log);
+        book.addContact("Ana", 911111111, "ana@fct.pt");
+        book.addContact("Rui", 933333333, "rui@fct.pt");
+        log.close();
+        long size = Files.size(file);
+        // Half of a record, as a crash in the middle of a write leaves it
+        Files.write(file, new byte[] {0, 0, 0, 40, 1, 0, 0}, StandardOpenOption.APPEND);
+
+        ContactBook recovered = new ContactBookClass();
+        log = new WriteAheadLog(file, SyncPolicy.everyOperation());
+        assertEquals(2, log.replay(recovered));
+        assertEquals(size, Files.size(file));
+        recovered.addListener(log);
+        recovered.deleteContact("Ana");
+        log.close();
+
+        ContactBook again = new ContactBookClass();
+        log = new WriteAheadLog(file, SyncPolicy.everyOperation());
+        assertEquals(3, log.replay(again));
+        assertFalse(again.hasContact("Ana"));
+        assertTrue(again.hasContact("Rui"));
+        log.close();
+    }
+
+    @Test public void skipsTheChangesOfTheSnapshot() throws IOException {
+        Path logFile = file("book.log");
+        Path snapshotFile = file("book.snap");
+        WriteAheadLog log = new WriteAheadLog(logFile, SyncPolicy.everyOperation());
+        ContactBook book = new ContactBookClass();
+        book.addListener(log);
+        book.addContact("Ana", 911111111, "ana@fct.pt");
+        book.deleteContact("Ana");
+        book.addContact("Rui", 933333333, "rui@fct.pt");
+        // The program dies after saving the snapshot, before the log is reset
+        ContactBookSnapshot.write(book, snapshotFile, log.getGeneration());
+        log.close();
+
+        ContactBook loaded = ContactBookSnapshot.load(snapshotFile);
+        long covered = ContactBookSnapshot.getLogGeneration(snapshotFile);
+        log = new WriteAheadLog(logFile, SyncPolicy.everyOperation());
+        assertEquals(0, log.replay(loaded, covered));
+        assertEquals(covered + 1, log.getGeneration());
+        assertEquals(1, loaded.getNumberOfContacts());
+        loaded.addListener(log);
+        loaded.setPhone("Rui", 944444444);
+        log.close();
+
+        // The change made after the snapshot is replayed over it
+        ContactBook reloaded = ContactBookSnapshot.load(snapshotFile);
+        log = new WriteAheadLog(logFile, SyncPolicy.everyOperation());
+        assertEquals(1, log.replay(reloaded, ContactBookSnapshot.getLogGeneration(snapshotFile)));
+        assertEquals(944444444, reloaded.getPhone("Rui"));
+        assertFalse(reloaded.hasContact("Ana"));
+        log.close();
+    }
+
+    /**
+     * Makes changes to a book logged with the given policy, and recovers them from the log while it is
+     * still open, as if the program had died without closing it.
+     * @param policy - when the log is forced to the disk.
+     * @throws IOException if the log cannot be used.
+     */
+    private void recoversAfterDying(SyncPolicy policy) throws IOException {
+        Path file = file("dying.log");
+        WriteAheadLog log = new WriteAheadLog(file, policy);
+        ContactBook book = new ContactBookClass();
+        book.addListener(log);
+        book.addContact("Zed", 1, "z");
+        book.addContact("Ana", 911111111, "ana@fct.pt");
+        book.setEmail("Ana", "ana@campus.fct.pt");
+
+        ContactBook recovered = new ContactBookClass();
+        WriteAheadLog reopened = new WriteAheadLog(file, policy);
+        assertEquals(3, reopened.replay(recovered));
+        assertEquals(1, recovered.getPhone("Zed"));
+        assertEquals("ana@campus.fct.pt", recovered.getEmail("Ana"));
+        reopened.close();
+        log.close();
+    }
+
+    /**
+     * Returns a file in the temporary directory of the test, deleted when the tests end.
+     * @param name - the file name.
+     * @return the path of the file.
+     */
+    private Path file(String name) {
+        Path file = directory.resolve(name);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Minimal benchmark harness, so the benchmarks run with nothing but the JDK.
+ * A benchmark is a setup, which is not measured, and a body that runs a known number of operations
+ * on what the setup returned. The body is first run some times to let the JIT compile it (warmup),
+ * and then timed some more times; the mean time per operation and its standard deviation are printed
+ * in one tab separated line, so the results of two versions can be compared line by line.
+ * Every body returns a value that depends on all its work, which is kept, so no work is optimised away.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+final class Benchmark {
+    // Keeps the results of the bodies, so the JIT cannot drop their work
+    static volatile long sink;
+
+    private Benchmark() {
+    }
+
+    /**
+     * Prints the header of the result lines.
+     */
+    static void printHeader() {
+        System.out.println("benchmark\tparameters\tns/op\terror\tops/s");
+    }
+
+    /**
+     * Runs and times a benchmark, and prints its result line.
+     * @pre name != null && parameters != null && warmups >= 0 && iterations > 0 && operations > 0
+     * @param name - the name of the benchmark.
+     * @param parameters - the description of its parameters.
+     * @param warmups - the number of untimed runs.
+     * @param iterations - the number of timed runs.
+     * @param operations - the number of operations made by one run of the body.
+     * @param setup - prepares the state of every run, untimed.
+     * @param body - the timed operations, returning a value that depends on all of them.
+     * @param <S> - the type of the state of a run.
+     */
+    static <S> void run(String name, String parameters, int warmups, int iterations, long operations,
+                        Supplier<S> setup, ToLongFunction<S> body) {
+        for (int i=0; i<warmups; i++)
+            sink += body.applyAsLong(setup.get());
+        double[] times = new double[iterations];
+        for (int i=0; i<iterations; i++) {
+            S state = setup.get();
+            long start = System.nanoTime();
+            sink += body.applyAsLong(state);
+            times[i] = (double) (System.nanoTime() - start) / operations;
+        }
+        double mean = 0;
+        for (double time : times)
+            mean += time;
+        mean /= iterations;
+        double variance = 0;
+        for (double time : times)
+            variance += (time - mean) * (time - mean);
+        double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+        System.out.printf("%s\t%s\t%.1f\t%.1f\t%.0f%n", name, parameters, mean, error, 1e9 / mean);
+    }
+}
@@ -0,0 +1,228 @@
+package benchmark;
+
+import contactBook.ArrayStorage;
+import contactBook.Contact;
+import contactBook.ContactBook;
+import contactBook.ContactBookClass;
+import contactBook.ContactStorage;
+import contactBook.OffHeapStorage;
+import contactBook.ShardedContactBook;
+import contactBook.TieredStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks of every ContactBook operation, for every book size, key distribution and storage engine
+ * asked for, printing one line per benchmark (see Benchmark).
+ * Run it with "java -Xmx8g -cp classes benchmark.ContactBookBenchmarks", and optionally
+ * "-sizes 1000,100000", "-keys sequential,uniform,skewed", "-storage array,offheap,tiered",
+ * "-shards 0,8" (0 is a single ContactBookClass, any other number a ShardedContactBook),
+ * "-warmups 3" and "-iterations 5". A book of 10 million contacts needs a few GiB of heap.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ContactBookBenchmarks {
+    // Program arguments, and their default values
+    private static final String SIZES_OPTION = "-sizes";
+    private static final String DEFAULT_SIZES = "1000,10000,100000,1000000,10000000";
+    private static final String KEYS_OPTION = "-keys";
+    private static final String DEFAULT_KEYS = "sequential,uniform,skewed";
+    private static final String STORAGE_OPTION = "-storage";
+    private static final String DEFAULT_STORAGE = "array,offheap";
+    private static final String OFF_HEAP_STORAGE = "offheap";
+    private static final String TIERED_STORAGE = "tiered";
+    // Bytes of the cache of a tiered storage, split among the shards
+    private static final long TIERED_CACHE_BYTES = 64L << 20;
+    private static final String SHARDS_OPTION = "-shards";
+    private static final String DEFAULT_SHARDS = "0";
+    private static final String WARMUPS_OPTION = "-warmups";
+    private static final String DEFAULT_WARMUPS = "3";
+    private static final String ITERATIONS_OPTION = "-iterations";
+    private static final String DEFAULT_ITERATIONS = "5";
+
+    // Number of lookups made by one run of a lookup benchmark
+    private static final int LOOKUPS = 1 << 20;
+    // Similar name searches check many candidates each, so fewer of them are timed
+    private static final int SEARCHES = 1 << 10;
+    private static final int SIMILAR_LIMIT = 5;
+    private static final int FIRST_PHONE = 910000000;
+    private static final long SEED = 42;
+
+    /**
+     * Runs all the benchmarks.
+     * @param args - the options of the benchmarks.
+     */
+    public static void main(String[] args) {
+        int warmups = Integer.parseInt(option(args, WARMUPS_OPTION, DEFAULT_WARMUPS));
+        int iterations = Integer.parseInt(option(args, ITERATIONS_OPTION, DEFAULT_ITERATIONS));
+        Benchmark.printHeader();
+        for (String size : option(args, SIZES_OPTION, DEFAULT_SIZES).split(","))
+            for (String keys : option(args, KEYS_OPTION, DEFAULT_KEYS).split(","))
+                for (String storage : option(args, STORAGE_OPTION, DEFAULT_STORAGE).split(","))
+                    for (String shards : option(args, SHARDS_OPTION, DEFAULT_SHARDS).split(","))
+                        run(Integer.parseInt(size.trim()), KeyDistribution.parse(keys), storage.trim(),
+                                Integer.parseInt(shards.trim()), warmups, iterations);
+    }
+
+    /**
+     * Runs every benchmark for one size, key distribution, storage engine and number of shards.
+     * @param size - the number of contacts of the book.
+     * @param distribution - how the contacts and their phone numbers are chosen.
+     * @param storage - the name of the storage engine.
+     * @param shards - the number of shards, or 0 for a book without shards.
+     * @param warmups - the number of untimed runs of every benchmark.
+     * @param iterations - the number of timed runs of every benchmark.
+     */
+    private static void run(int size, KeyDistribution distribution, String storage, int shards, int warmups,
+                            int iterations) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        String[] names = new String[size];
+        int[] phones = new int[size];
+        String[] emails = new String[size];
+        for (int i=0; i<size; i++) {
+            names[i] = "Contact " + i;
+            phones[i] = FIRST_PHONE + distribution.next(random, size, i);
+            emails[i] = "contact" + i + "@campus.fct.unl.pt";
+        }
+        int[] keys = new int[LOOKUPS];
+        for (int i=0; i<LOOKUPS; i++)
+            keys[i] = distribution.next(random, size, i);
+        int[] deletions = distribution.distinct(random, size);
+        ContactBook full = fill(newBook(storage, shards), names, phones, emails);
+        String parameters = "size=" + size + " keys=" + distribution.name().toLowerCase() + " storage=" + storage +
+                " shards=" + shards;
+
+        Benchmark.run("addContact", parameters, warmups, iterations, size,
+                () -> newBook(storage, shards),
+                book -> fill(book, names, phones, emails).getNumberOfContacts());
+        Benchmark.run("hasContact(String)", parameters, warmups, iterations, LOOKUPS,
+                () -> full,
+                book -> {
+                    long found = 0;
+                    for (int key : keys)
+                        if (book.hasContact(names[key]))
+                            found++;
+                    return found;
+                });
+        Benchmark.run("hasContact(int)+getName", parameters, warmups, iterations, LOOKUPS,
+                () -> full,
+                book -> {
+                    long length = 0;
+                    for (int key : keys)
+                        if (book.hasContact(phones[key]))
+                            length += book.getName(phones[key]).length();
+                    return length;
+                });
+        Benchmark.run("getContact", parameters, warmups, iterations, LOOKUPS,
+                () -> full,
+                book -> {
+                    long phone = 0;
+                    for (int key : keys)
+                        phone += book.getContact(names[key]).getPhone();
+                    return phone;
+                });
+        Benchmark.run("getRank", parameters, warmups, iterations, LOOKUPS,
+                () -> full,
+                book -> {
+                    long rank = 0;
+                    for (int key : keys)
+                        rank += book.getRank(names[key]);
+                    return rank;
+                });
+        Benchmark.run("getSimilarContacts", parameters, warmups, iterations, SEARCHES,
+                () -> full,
+                book -> {
+                    long found = 0;
+                    for (int i=0; i<SEARCHES; i++)
+                        found += book.getSimilarContacts("Contat " + keys[i], SIMILAR_LIMIT).size();
+                    return found;
+                });
+        Benchmark.run("deleteContact", parameters, warmups, iterations, size,
+                () -> fill(newBook(storage, shards), names, phones, emails),
+                book -> {
+                    for (int key : deletions)
+                        book.deleteContact(names[key]);
+                    return book.getNumberOfContacts();
+                });
+        Benchmark.run("hasEqualPhones", parameters, warmups, iterations, LOOKUPS,
+                () -> full,
+                book -> {
+                    long shared = 0;
+                    for (int i=0; i<LOOKUPS; i++)
+                        if (book.hasEqualPhones())
+                            shared++;
+                    return shared;
+                });
+        Benchmark.run("iteration", parameters, warmups, iterations, size,
+                () -> full,
+                book -> {
+                    long phone = 0;
+                    for (Contact c : book)
+                        phone += c.getPhone();
+                    return phone;
+                });
+    }
+
+    /**
+     * Creates an empty book with the given storage engine and number of shards.
+     * @param storage - the name of the storage engine: "offheap", "tiered", or anything else for the default one.
+     * @param shards - the number of shards, or 0 for a book without shards.
+     * @return the new book.
+     */
+    private static ContactBook newBook(String storage, int shards) {
+        if (shards > 0)
+            return new ShardedContactBook(shards, () -> newStorage(storage, shards), ForkJoinPool.commonPool());
+        return new ContactBookClass(newStorage(storage, 1));
+    }
+
+    /**
+     * Creates an empty storage engine, of the given kind, for one of the given number of shards.
+     * @param storage - the name of the storage engine: "offheap", "tiered", or anything else for the default one.
+     * @param shards - the number of shards that share the cache of a tiered storage.
+     * @return the new storage engine.
+     */
+    private static ContactStorage newStorage(String storage, int shards) {
+        if (OFF_HEAP_STORAGE.equals(storage))
+            return new OffHeapStorage();
+        if (!TIERED_STORAGE.equals(storage))
+            return new ArrayStorage();
+        try {
+            return new TieredStorage(TIERED_CACHE_BYTES / shards, Path.of(System.getProperty("java.io.tmpdir")));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds all the given contacts to the book, in order.
+     * @param book - the book, without any of the contacts.
+     * @param names - the names of the contacts.
+     * @param phones - the phone numbers of the contacts.
+     * @param emails - the emails of the contacts.
+     * @return the book.
+     */
+    private static ContactBook fill(ContactBook book, String[] names, int[] phones, String[] emails) {
+        for (int i=0; i<names.length; i++)
+            book.addContact(names[i], phones[i], emails[i]);
+        return book;
+    }
+
+    /**
+     * Returns the value of the given option in the program arguments, or the default value.
+     * @param args - the program arguments.
+     * @param name - the name of the option.
+     * @param defaultValue - the value when the option is not given.
+     * @return the value of the option.
+     */
+    static String option(String[] args, String name, String defaultValue) {
+        for (int i=0; i<args.length-1; i++)
+            if (args[i].equals(name))
+                return args[i + 1];
+        return defaultValue;
+    }
+}
@@ -0,0 +1,72 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * How the benchmarks choose the contacts they use, among the contacts 0 to size - 1.
+ * The distribution of the phone numbers follows it too, so it also decides how many contacts share
+ * a phone number.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+enum KeyDistribution {
+    // Every contact in turn, from the oldest one (no phone numbers are shared)
+    SEQUENTIAL,
+    // Every contact equally likely
+    UNIFORM,
+    // A few hot contacts: the first 1% of them get about a fifth of the operations
+    SKEWED;
+
+    /**
+     * Chooses the key of the given operation.
+     * @pre size > 0 && operation >= 0
+     * @param random - the source of random numbers.
+     * @param size - the number of keys.
+     * @param operation - the number of the operation, counted from 0.
+     * @return a key from 0 to size - 1.
+     */
+    int next(SplittableRandom random, int size, int operation) {
+        return switch (this) {
+            case SEQUENTIAL -> operation % size;
+            case UNIFORM -> random.nextInt(size);
+            case SKEWED -> {
+                double u = random.nextDouble();
+                yield (int) (size * u * u * u);
+            }
+        };
+    }
+
+    /**
+     * Returns every key from 0 to size - 1 once, for the operations that need distinct keys:
+     * in order when sequential, and shuffled otherwise.
+     * @pre size > 0
+     * @param random - the source of random numbers.
+     * @param size - the number of keys.
+     * @return the keys, in the order to use them.
+     */
+    int[] distinct(SplittableRandom random, int size) {
+        int[] keys = new int[size];
+        for (int i=0; i<size; i++)
+            keys[i] = i;
+        if (this != SEQUENTIAL)
+            for (int i=size-1; i>0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = keys[i];
+                keys[i] = keys[j];
+                keys[j] = tmp;
+            }
+        return keys;
+    }
+
+    /**
+     * Returns the distribution with the given name, in any case.
+     * @pre name != null
+     * @param name - the name of the distribution.
+     * @return the distribution with the given name.
+     * @throws IllegalArgumentException if there is no distribution with the given name.
+     */
+    static KeyDistribution parse(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,141 @@
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * End to end throughput benchmark of the application: runs Main.main on a generated stream of
+ * commands, as given in System.in, discarding what it writes to System.out, and prints the time
+ * per command (see Benchmark).
+ * The stream adds the given number of contacts and then runs the given number of commands on them,
+ * about 50 reads (GP, GE and GN) for every change (AC, RC, SP or SE), with an EP now and then,
+ * choosing the contacts with the given key distribution.
+ * Run it with "java -cp classes benchmark.MainBenchmark", and optionally "-size 100000",
+ * "-commands 1000000", "-keys uniform", "-storage offheap", "-warmups 3" and "-iterations 5".
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class MainBenchmark {
+    // Program arguments, and their default values
+    private static final String SIZE_OPTION = "-size";
+    private static final String DEFAULT_SIZE = "100000";
+    private static final String COMMANDS_OPTION = "-commands";
+    private static final String DEFAULT_COMMANDS = "1000000";
+    private static final String KEYS_OPTION = "-keys";
+    private static final String DEFAULT_KEYS = "uniform";
+    private static final String STORAGE_OPTION = "-storage";
+    private static final String DEFAULT_STORAGE = "array";
+    private static final String WARMUPS_OPTION = "-warmups";
+    private static final String DEFAULT_WARMUPS = "3";
+    private static final String ITERATIONS_OPTION = "-iterations";
+    private static final String DEFAULT_ITERATIONS = "5";
+
+    // Out of READ_RATIO + 2 commands, one is a change and one is an EP
+    private static final int READ_RATIO = 50;
+    private static final int FIRST_PHONE = 910000000;
+    private static final long SEED = 42;
+
+    /**
+     * Runs the benchmark.
+     * @param args - the options of the benchmark.
+     * @throws ReflectiveOperationException if there is no Main class with a main method.
+     */
+    public static void main(String[] args) throws ReflectiveOperationException {
+        int size = Integer.parseInt(ContactBookBenchmarks.option(args, SIZE_OPTION, DEFAULT_SIZE));
+        int commands = Integer.parseInt(ContactBookBenchmarks.option(args, COMMANDS_OPTION, DEFAULT_COMMANDS));
+        KeyDistribution distribution = KeyDistribution.parse(ContactBookBenchmarks.option(args, KEYS_OPTION, DEFAULT_KEYS));
+        String storage = ContactBookBenchmarks.option(args, STORAGE_OPTION, DEFAULT_STORAGE);
+        int warmups = Integer.parseInt(ContactBookBenchmarks.option(args, WARMUPS_OPTION, DEFAULT_WARMUPS));
+        int iterations = Integer.parseInt(ContactBookBenchmarks.option(args, ITERATIONS_OPTION, DEFAULT_ITERATIONS));
+
+        // Main is in the unnamed package, so it can only be reached by reflection
+        Method main = Class.forName("Main").getMethod("main", String[].class);
+        String[] mainArgs = {STORAGE_OPTION, storage};
+        byte[] input = generate(size, commands, distribution);
+        String parameters = "size=" + size + " commands=" + commands + " keys=" + distribution.name().toLowerCase() +
+                " storage=" + storage;
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        Benchmark.printHeader();
+        Benchmark.run("Main", parameters, warmups, iterations, size + commands + 1L,
+                () -> new ByteArrayInputStream(input),
+                stream -> {
+                    CountingStream output = new CountingStream();
+                    System.setIn(stream);
+                    System.setOut(new PrintStream(output));
+                    try {
+                        main.invoke(null, (Object) mainArgs);
+                    } catch (IllegalAccessException | InvocationTargetException e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        System.out.flush();
+                        System.setIn(in);
+                        System.setOut(out);
+                    }
+                    return output.count;
+                });
+    }
+
+    /**
+     * Generates the commands of the benchmark, ending with Q.
+     * @param size - the number of contacts added first.
+     * @param commands - the number of commands after them.
+     * @param distribution - how the contacts of the commands are chosen.
+     * @return the commands, as the user would type them.
+     */
+    private static byte[] generate(int size, int commands, KeyDistribution distribution) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, false, StandardCharsets.UTF_8);
+        for (int i=0; i<size; i++)
+            out.print("AC\nContact " + i + "\n" + (FIRST_PHONE + i) + "\ncontact" + i + "@campus.fct.unl.pt\n");
+        int added = size;
+        for (int i=0; i<commands; i++) {
+            int key = distribution.next(random, size, i);
+            int kind = random.nextInt(READ_RATIO + 2);
+            if (kind == READ_RATIO)
+                out.print(switch (random.nextInt(4)) {
+                    case 0 -> "AC\nContact " + added++ + "\n" + (FIRST_PHONE + key) + "\nnew" + i + "@campus.fct.unl.pt\n";
+                    case 1 -> "RC\nContact " + key + "\n";
+                    case 2 -> "SP\nContact " + key + "\n" + (FIRST_PHONE + random.nextInt(size)) + "\n";
+                    default -> "SE\nContact " + key + "\nchanged" + i + "@campus.fct.unl.pt\n";
+                });
+            else if (kind == READ_RATIO + 1)
+                out.print("EP\n");
+            else
+                out.print(switch (kind % 3) {
+                    case 0 -> "GP\nContact " + key + "\n";
+                    case 1 -> "GE\nContact " + key + "\n";
+                    default -> "GN\n" + (FIRST_PHONE + key) + "\n";
+                });
+        }
+        out.print("Q\n");
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Output stream that only counts the bytes written to it.
+     */
+    private static class CountingStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reference implementation of the commands AC, RC, GP, GE, GN, SP, SE, LC, EP and Q of the application,
+ * which WorkloadReplay checks the application against. It keeps the contacts in the standard collections,
+ * in the plainest way that gives the right answers, and shares no code with the ContactBook: the
+ * contacts in insertion order in a LinkedHashMap, and the names of the contacts with every phone number
+ * by insertion number, so that the oldest one is the first.
+ * The messages are the ones of Main, read by reflection, and every other command is unknown.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+final class ReferenceModel {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    // The messages of Main
+    private final String contactExists;
+    private final String nameNotExist;
+    private final String contactAdded;
+    private final String contactRemoved;
+    private final String contactUpdated;
+    private final String bookEmpty;
+    private final String phoneNotExist;
+    private final String equalPhones;
+    private final String differentPhones;
+    private final String quit;
+    private final String unknownCommand;
+
+    // The contacts by name, in insertion order
+    private final Map<String, Entry> contacts;
+    // The names of the contacts with every phone number, by insertion number
+    private final Map<Integer, TreeMap<Long, String>> phones;
+    // Number of phone numbers shared by at least two contacts
+    private int sharedPhones;
+    private long nextSequence;
+
+    /**
+     * Data of a contact, besides its name.
+     */
+    private static class Entry {
+        private final long sequence;
+        private int phone;
+        private String email;
+
+        private Entry(long sequence, int phone, String email) {
+            this.sequence = sequence;
+            this.phone = phone;
+            this.email = email;
+        }
+    }
+
+    /**
+     * Creates an empty book, with the messages of Main.
+     * @throws ReflectiveOperationException if there is no Main class with the messages.
+     */
+    ReferenceModel() throws ReflectiveOperationException {
+        // Main is in the unnamed package, so it can only be reached by reflection
+        Class<?> main = Class.forName("Main");
+        contactExists = message(main, "CONTACT_EXISTS");
+        nameNotExist = message(main, "NAME_NOT_EXIST");
+        contactAdded = message(main, "CONTACT_ADDED");
+        contactRemoved = message(main, "CONTACT_REMOVED");
+        contactUpdated = message(main, "CONTACT_UPDATED");
+        bookEmpty = message(main, "BOOK_EMPTY");
+        phoneNotExist = message(main, "PHONE_NUMBER_DOESNT_EXIST");
+        equalPhones = message(main, "EQUAL_PHONE_NUMBERS");
+        differentPhones = message(main, "ALL_DIFFERENT_PHONE_NUMBERS");
+        quit = message(main, "QUIT_MSG");
+        unknownCommand = message(main, "COMMAND_ERROR");
+        contacts = new LinkedHashMap<>();
+        phones = new HashMap<>();
+        sharedPhones = 0;
+        nextSequence = 0;
+    }
+
+    /**
+     * Runs the commands of the given stream, until Q or its end, writing the answers Main would write.
+     * @pre in != null && out != null
+     * @param in - the commands, as the user would type them.
+     * @param out - where to write the answers.
+     * @return the number of commands run, including Q.
+     * @throws IOException if the commands cannot be read or the answers cannot be written.
+     */
+    long replay(BufferedReader in, Writer out) throws IOException {
+        long commands = 0;
+        String command;
+        while ((command = in.readLine()) != null) {
+            commands++;
+            switch (command.trim().toUpperCase()) {
+                case "AC" -> {
+                    String name = in.readLine();
+                    int phone = Integer.parseInt(in.readLine().trim());
+                    String email = in.readLine();
+                    if (contacts.containsKey(name))
+                        println(out, contactExists);
+                    else {
+                        Entry entry = new Entry(nextSequence++, phone, email);
+                        contacts.put(name, entry);
+                        addPhone(name, entry);
+                        println(out, contactAdded);
+                    }
+                }
+                case "RC" -> {
+                    Entry entry = contacts.remove(in.readLine());
+                    if (entry != null) {
+                        removePhone(entry);
+                        println(out, contactRemoved);
+                    }
+                    else println(out, nameNotExist);
+                }
+                case "GP" -> {
+                    Entry entry = contacts.get(in.readLine());
+                    println(out, entry != null ? Integer.toString(entry.phone) : nameNotExist);
+                }
+                case "GE" -> {
+                    Entry entry = contacts.get(in.readLine());
+                    println(out, entry != null ? entry.email : nameNotExist);
+                }
+                case "GN" -> {
+                    TreeMap<Long, String> names = phones.get(Integer.parseInt(in.readLine().trim()));
+                    println(out, names != null ? names.firstEntry().getValue() : phoneNotExist);
+                }
+                case "SP" -> {
+                    String name = in.readLine();
+                    int phone = Integer.parseInt(in.readLine().trim());
+                    Entry entry = contacts.get(name);
+                    if (entry != null) {
+                        removePhone(entry);
+                        entry.phone = phone;
+                        addPhone(name, entry);
+                        println(out, contactUpdated);
+                    }
+                    else println(out, nameNotExist);
+                }
+                case "SE" -> {
+                    Entry entry = contacts.get(in.readLine());
+                    String email = in.readLine();
+                    if (entry != null) {
+                        entry.email = email;
+                        println(out, contactUpdated);
+                    }
+                    else println(out, nameNotExist);
+                }
+                case "LC" -> {
+                    if (contacts.isEmpty())
+                        println(out, bookEmpty);
+                    for (Map.Entry<String, Entry> contact : contacts.entrySet())
+                        println(out, contact.getKey() + "; " + contact.getValue().email + "; " +
+                                contact.getValue().phone);
+                }
+                case "EP" -> println(out, sharedPhones > 0 ? equalPhones : differentPhones);
+                case "Q" -> {
+                    println(out, quit);
+                    println(out, "");
+                    return commands;
+                }
+                default -> println(out, unknownCommand);
+            }
+            println(out, "");
+        }
+        return commands;
+    }
+
+    private void addPhone(String name, Entry entry) {
+        TreeMap<Long, String> names = phones.computeIfAbsent(entry.phone, phone -> new TreeMap<>());
+        names.put(entry.sequence, name);
+        if (names.size() == 2)
+            sharedPhones++;
+    }
+
+    private void removePhone(Entry entry) {
+        TreeMap<Long, String> names = phones.get(entry.phone);
+        names.remove(entry.sequence);
+        if (names.size() == 1)
+            sharedPhones--;
+        else if (names.isEmpty())
+            phones.remove(entry.phone);
+    }
+
+    private static void println(Writer out, String line) throws IOException {
+        out.write(line);
+        out.write(LINE_SEPARATOR);
+    }
+
+    private static String message(Class<?> main, String name) throws ReflectiveOperationException {
+        return (String) main.getField(name).get(null);
+    }
+}
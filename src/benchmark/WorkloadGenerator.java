@@ -0,0 +1,195 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Generator of command streams for the application, as the user would type them, to replay them later
+ * with WorkloadReplay. The same options and seed always give the same stream, and the stream is written
+ * as it is generated, so it may have any number of commands (1e8 and more), whatever the memory.
+ * Every command is chosen with the weights of the mix, among AC, RC, GP, GN, SP, SE, LC and EP. The
+ * names of the contacts are chosen among the given number of names with one key distribution, and the
+ * phone numbers among the given number of phones with another one, so that few phones, or a skewed
+ * distribution of them, make many contacts share phone numbers (which is what GN and EP look at).
+ * AC may choose a name already in use, and RC, GP, SP and SE one that is not, as real users do.
+ * Run it with "java -cp classes benchmark.WorkloadGenerator", and optionally "-commands 1000000",
+ * "-seed 42", "-mix AC:20,RC:5,GP:30,GN:30,SP:5,SE:5,LC:0,EP:5", "-names 100000", "-keys uniform",
+ * "-phones 100000", "-phoneKeys uniform" and "-out workload.txt" (the standard output by default).
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class WorkloadGenerator {
+    // Program arguments, and their default values
+    private static final String COMMANDS_OPTION = "-commands";
+    private static final String DEFAULT_COMMANDS = "1000000";
+    private static final String SEED_OPTION = "-seed";
+    private static final String DEFAULT_SEED = "42";
+    private static final String MIX_OPTION = "-mix";
+    private static final String DEFAULT_MIX = "AC:20,RC:5,GP:30,GN:30,SP:5,SE:5,LC:0,EP:5";
+    private static final String NAMES_OPTION = "-names";
+    private static final String DEFAULT_NAMES = "100000";
+    private static final String KEYS_OPTION = "-keys";
+    private static final String DEFAULT_KEYS = "uniform";
+    private static final String PHONES_OPTION = "-phones";
+    private static final String DEFAULT_PHONES = "100000";
+    private static final String PHONE_KEYS_OPTION = "-phoneKeys";
+    private static final String DEFAULT_PHONE_KEYS = "uniform";
+    private static final String OUT_OPTION = "-out";
+
+    // The commands of the mix, in the order of their weights
+    private static final String[] COMMANDS = {"AC", "RC", "GP", "GN", "SP", "SE", "LC", "EP"};
+    private static final int FIRST_PHONE = 910000000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final long seed;
+    // Sum of the weights of the commands up to every one of them, in the order of COMMANDS
+    private final int[] weights;
+    private final int names;
+    private final KeyDistribution keys;
+    private final int phones;
+    private final KeyDistribution phoneKeys;
+
+    /**
+     * Creates a generator with the given parameters.
+     * @pre mix != null && names > 0 && keys != null && phones > 0 && phoneKeys != null
+     * @param seed - the seed of the random choices.
+     * @param mix - the weight of every command, as "AC:20,RC:5", where missing commands weigh 0.
+     * @param names - the number of distinct names.
+     * @param keys - how the names are chosen.
+     * @param phones - the number of distinct phone numbers.
+     * @param phoneKeys - how the phone numbers are chosen.
+     * @throws IllegalArgumentException if the mix has unknown commands, negative weights, or weighs 0.
+     */
+    WorkloadGenerator(long seed, String mix, int names, KeyDistribution keys, int phones,
+                      KeyDistribution phoneKeys) {
+        this.seed = seed;
+        this.weights = parseMix(mix);
+        this.names = names;
+        this.keys = keys;
+        this.phones = phones;
+        this.phoneKeys = phoneKeys;
+    }
+
+    /**
+     * Generates the stream.
+     * @param args - the options of the generator.
+     * @throws IOException if the stream cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        long commands = Long.parseLong(ContactBookBenchmarks.option(args, COMMANDS_OPTION, DEFAULT_COMMANDS));
+        WorkloadGenerator generator = new WorkloadGenerator(
+                Long.parseLong(ContactBookBenchmarks.option(args, SEED_OPTION, DEFAULT_SEED)),
+                ContactBookBenchmarks.option(args, MIX_OPTION, DEFAULT_MIX),
+                Integer.parseInt(ContactBookBenchmarks.option(args, NAMES_OPTION, DEFAULT_NAMES)),
+                KeyDistribution.parse(ContactBookBenchmarks.option(args, KEYS_OPTION, DEFAULT_KEYS)),
+                Integer.parseInt(ContactBookBenchmarks.option(args, PHONES_OPTION, DEFAULT_PHONES)),
+                KeyDistribution.parse(ContactBookBenchmarks.option(args, PHONE_KEYS_OPTION, DEFAULT_PHONE_KEYS)));
+        String file = ContactBookBenchmarks.option(args, OUT_OPTION, null);
+        if (file == null)
+            generator.generate(commands, System.out);
+        else try (OutputStream out = Files.newOutputStream(Path.of(file))) {
+            generator.generate(commands, out);
+        }
+    }
+
+    /**
+     * Writes the given number of commands, followed by Q, to the given stream, which is not closed.
+     * @pre commands >= 0 && out != null
+     * @param commands - the number of commands, not counting Q.
+     * @param out - where to write the commands.
+     * @throws IOException if the stream cannot be written.
+     */
+    void generate(long commands, OutputStream out) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        int total = weights[weights.length - 1];
+        for (long i=0; i<commands; i++) {
+            int command = commandOf(random.nextInt(total));
+            int operation = (int) (i % Integer.MAX_VALUE);
+            writer.write(COMMANDS[command]);
+            writer.write('\n');
+            switch (COMMANDS[command]) {
+                case "AC" -> {
+                    writeName(writer, keys.next(random, names, operation));
+                    writePhone(writer, phoneKeys.next(random, phones, operation));
+                    writer.write("contact");
+                    writer.write(Long.toString(i));
+                    writer.write("@campus.fct.unl.pt\n");
+                }
+                case "RC", "GP" -> writeName(writer, keys.next(random, names, operation));
+                case "GN" -> writePhone(writer, phoneKeys.next(random, phones, operation));
+                case "SP" -> {
+                    writeName(writer, keys.next(random, names, operation));
+                    writePhone(writer, phoneKeys.next(random, phones, operation));
+                }
+                case "SE" -> {
+                    writeName(writer, keys.next(random, names, operation));
+                    writer.write("changed");
+                    writer.write(Long.toString(i));
+                    writer.write("@campus.fct.unl.pt\n");
+                }
+                default -> {
+                }
+            }
+        }
+        writer.write("Q\n");
+        writer.flush();
+    }
+
+    /**
+     * Returns the command that the given random weight falls on.
+     * @param weight - a number from 0 to the total weight - 1.
+     * @return the position of the command in COMMANDS.
+     */
+    private int commandOf(int weight) {
+        int command = 0;
+        while (weights[command] <= weight)
+            command++;
+        return command;
+    }
+
+    private static void writeName(Writer writer, int key) throws IOException {
+        writer.write("Contact ");
+        writer.write(Integer.toString(key));
+        writer.write('\n');
+    }
+
+    private static void writePhone(Writer writer, int key) throws IOException {
+        writer.write(Integer.toString(FIRST_PHONE + key));
+        writer.write('\n');
+    }
+
+    /**
+     * Parses a mix of commands into the sums of their weights, in the order of COMMANDS.
+     * @param mix - the weight of every command, as "AC:20,RC:5".
+     * @return the sum of the weights up to every command.
+     * @throws IllegalArgumentException if the mix has unknown commands, negative weights, or weighs 0.
+     */
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[COMMANDS.length];
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int command = 0;
+            while (command < COMMANDS.length && !COMMANDS[command].equalsIgnoreCase(parts[0].trim()))
+                command++;
+            if (parts.length != 2 || command == COMMANDS.length)
+                throw new IllegalArgumentException("Unknown command in the mix: " + entry);
+            weights[command] = Integer.parseInt(parts[1].trim());
+            if (weights[command] < 0)
+                throw new IllegalArgumentException("Negative weight in the mix: " + entry);
+        }
+        for (int i=1; i<weights.length; i++)
+            weights[i] += weights[i - 1];
+        if (weights[weights.length - 1] == 0)
+            throw new IllegalArgumentException("The mix has no commands: " + mix);
+        return weights;
+    }
+}
@@ -0,0 +1,186 @@
+package benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Replays a command stream, as written by WorkloadGenerator, on the application and on the ReferenceModel,
+ * and checks that both give the same answers. Every run prints the commands it ran, the time they took,
+ * the commands per second, and the size and a digest of the answers. The answers are not kept, but only
+ * digested as they are written, so the stream may be as long as the disk allows; a digest is also kept
+ * every CHECKPOINT lines, so that a difference is located within a block of lines.
+ * Run it with "java -cp classes benchmark.WorkloadReplay -workload workload.txt", and optionally
+ * "-storage offheap", "-shards 8", and "-expected expected.txt" to write the answers of the reference
+ * too, to compare them with the ones of the application at the place of the difference.
+ * It ends with status 1 if the answers differ.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class WorkloadReplay {
+    // Program arguments, and their default values
+    private static final String WORKLOAD_OPTION = "-workload";
+    private static final String STORAGE_OPTION = "-storage";
+    private static final String DEFAULT_STORAGE = "array";
+    private static final String SHARDS_OPTION = "-shards";
+    private static final String EXPECTED_OPTION = "-expected";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Number of answer lines between two kept digests
+    private static final long CHECKPOINT = 1 << 16;
+
+    /**
+     * Runs the replay.
+     * @param args - the options of the replay.
+     * @throws IOException if the stream cannot be read or the answers of the reference cannot be written.
+     * @throws ReflectiveOperationException if there is no Main class with a main method.
+     */
+    public static void main(String[] args) throws IOException, ReflectiveOperationException {
+        String workload = ContactBookBenchmarks.option(args, WORKLOAD_OPTION, null);
+        if (workload == null)
+            throw new IllegalArgumentException("Missing option " + WORKLOAD_OPTION);
+        Path file = Path.of(workload);
+        String storage = ContactBookBenchmarks.option(args, STORAGE_OPTION, DEFAULT_STORAGE);
+        String shards = ContactBookBenchmarks.option(args, SHARDS_OPTION, null);
+        String expected = ContactBookBenchmarks.option(args, EXPECTED_OPTION, null);
+        String[] mainArgs = shards == null ? new String[] {STORAGE_OPTION, storage}
+                : new String[] {STORAGE_OPTION, storage, SHARDS_OPTION, shards};
+        String parameters = "storage=" + storage + (shards == null ? "" : " shards=" + shards);
+
+        System.out.println("run\tparameters\tcommands\ts\tops/s\tbytes\tdigest");
+        DigestStream reference = new DigestStream(expected == null ? null
+                : new BufferedOutputStream(Files.newOutputStream(Path.of(expected)), BUFFER_SIZE));
+        long start = System.nanoTime();
+        long commands;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Writer out = new OutputStreamWriter(reference, StandardCharsets.UTF_8);
+            commands = new ReferenceModel().replay(in, out);
+            out.close();
+        }
+        print("reference", "", commands, System.nanoTime() - start, reference);
+
+        DigestStream application = new DigestStream(null);
+        start = System.nanoTime();
+        runMain(file, mainArgs, application);
+        print("Main", parameters, commands, System.nanoTime() - start, application);
+
+        long line = reference.firstDifference(application);
+        if (line < 0)
+            System.out.println("Same answers.");
+        else {
+            System.out.println("Different answers, from line " + line + " to line " + (line + CHECKPOINT - 1) + ".");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs Main.main on the given stream, as given in System.in, with its answers going to the given stream.
+     * @param file - the command stream.
+     * @param mainArgs - the arguments of Main.
+     * @param output - where the answers go.
+     * @throws IOException if the stream cannot be read.
+     * @throws ReflectiveOperationException if there is no Main class with a main method.
+     */
+    private static void runMain(Path file, String[] mainArgs, OutputStream output)
+            throws IOException, ReflectiveOperationException {
+        // Main is in the unnamed package, so it can only be reached by reflection
+        Method main = Class.forName("Main").getMethod("main", String[].class);
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            System.setIn(stream);
+            System.setOut(new PrintStream(output));
+            main.invoke(null, (Object) mainArgs);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            System.out.flush();
+            System.setIn(in);
+            System.setOut(out);
+        }
+    }
+
+    private static void print(String run, String parameters, long commands, long nanos, DigestStream output) {
+        System.out.printf("%s\t%s\t%d\t%.3f\t%.0f\t%d\t%016x%n", run, parameters, commands, nanos / 1e9,
+                commands * 1e9 / nanos, output.bytes, output.digest);
+    }
+
+    /**
+     * Output stream that digests the bytes written to it (with 64 bit FNV-1a), keeping the digest every
+     * CHECKPOINT lines, and optionally copies them to another stream.
+     */
+    private static class DigestStream extends OutputStream {
+        private static final long OFFSET_BASIS = 0xCBF29CE484222325L;
+        private static final long PRIME = 0x100000001B3L;
+
+        private final OutputStream copy;
+        private long bytes;
+        private long lines;
+        private long digest;
+        // The digest at the end of every block of CHECKPOINT lines
+        private long[] checkpoints;
+        private int blocks;
+
+        private DigestStream(OutputStream copy) {
+            this.copy = copy;
+            bytes = 0;
+            lines = 0;
+            digest = OFFSET_BASIS;
+            checkpoints = new long[16];
+            blocks = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            digest = (digest ^ (b & 0xFF)) * PRIME;
+            bytes++;
+            if (b == '\n' && ++lines % CHECKPOINT == 0) {
+                if (blocks == checkpoints.length)
+                    checkpoints = Arrays.copyOf(checkpoints, 2*blocks);
+                checkpoints[blocks++] = digest;
+            }
+            if (copy != null)
+                copy.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i=off; i<off+len; i++)
+                write(b[i]);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (copy != null)
+                copy.close();
+        }
+
+        /**
+         * Returns the first line of the first block of lines where the two outputs differ.
+         * @param other - the other output.
+         * @return the number of the line, counted from 1, or -1 if the outputs are the same.
+         */
+        private long firstDifference(DigestStream other) {
+            if (bytes == other.bytes && digest == other.digest)
+                return -1;
+            int block = 0;
+            while (block < blocks && block < other.blocks && checkpoints[block] == other.checkpoints[block])
+                block++;
+            return block * CHECKPOINT + 1;
+        }
+    }
+}
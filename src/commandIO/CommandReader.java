@@ -0,0 +1,246 @@
+package commandIO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the commands of the application and their arguments straight from the bytes of an input stream.
+ * It replaces the Scanner: lines are found in a reusable byte buffer, commands are matched against the
+ * known command names and phone numbers are parsed without creating any intermediate String.
+ * Only names and emails, which are kept by the application, become Strings (decoded as UTF-8).
+ * Lines may end with "\n" or "\r\n".
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class CommandReader {
+    private static final int DEFAULT_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private byte[] buffer;
+    // The unread bytes are buffer[pos..limit[
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    /**
+     * Creates a reader of the given input stream.
+     * @pre in != null
+     * @param in - the input stream with the commands.
+     */
+    public CommandReader(InputStream in) {
+        this.in = in;
+        buffer = new byte[DEFAULT_SIZE];
+        pos = 0;
+        limit = 0;
+        eof = false;
+    }
+
+    /**
+     * Evaluates if there is input already read from the stream and not consumed yet, that is,
+     * if reading the next line will not have to wait for the stream.
+     * @return true if there are buffered bytes to read, false otherwise.
+     */
+    public boolean hasBufferedInput() {
+        return pos < limit;
+    }
+
+    /**
+     * Reads the next line and returns the command it matches (ignoring case).
+     * @pre commands != null
+     * @param commands - the known commands, in uppercase.
+     * @return the element of commands that matches the line, or the line in uppercase if none matches.
+     * @throws NoSuchElementException if there are no more lines.
+     */
+    public String readCommand(String[] commands) {
+        int end = lineEnd();
+        int length = contentLength(end);
+        for (String command : commands)
+            if (matches(command, pos, length)) {
+                pos = next(end);
+                return command;
+            }
+        String line = new String(buffer, pos, length, StandardCharsets.UTF_8).toUpperCase();
+        pos = next(end);
+        for (String command : commands)
+            if (command.equals(line))
+                return command;
+        return line;
+    }
+
+    /**
+     * Reads the next line.
+     * @return the next line, without the line terminator.
+     * @throws NoSuchElementException if there are no more lines.
+     */
+    public String readLine() {
+        int end = lineEnd();
+        String line = new String(buffer, pos, contentLength(end), StandardCharsets.UTF_8);
+        pos = next(end);
+        return line;
+    }
+
+    /**
+     * Reads the next integer, which may be preceded by blank lines, and skips the rest of its line.
+     * @return the integer read.
+     * @throws InputMismatchException if the next token is not an integer.
+     * @throws NoSuchElementException if there are no more tokens.
+     */
+    public int readInt() {
+        return (int) readNumber(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads the next long integer, which may be preceded by blank lines, and skips the rest of its line.
+     * @return the long integer read.
+     * @throws InputMismatchException if the next token is not a long integer.
+     * @throws NoSuchElementException if there are no more tokens.
+     */
+    public long readLong() {
+        return readNumber(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the next number, which may be preceded by blank lines, and skips the rest of its line.
+     * The digits are accumulated as a negative number, which reaches further than a positive one.
+     * @param min - the smallest number accepted.
+     * @param max - the largest number accepted.
+     * @return the number read.
+     * @throws InputMismatchException if the next token is not a number between min and max.
+     * @throws NoSuchElementException if there are no more tokens.
+     */
+    private long readNumber(long min, long max) {
+        while (true) {
+            if (pos == limit && !fill())
+                throw new NoSuchElementException();
+            if (!Character.isWhitespace(buffer[pos]))
+                break;
+            pos++;
+        }
+        int end = lineEnd();
+        int length = contentLength(end);
+        int i = pos;
+        int stop = pos + length;
+        while (stop > i && Character.isWhitespace(buffer[stop - 1]))
+            stop--;
+        boolean negative = buffer[i] == '-';
+        if (negative || buffer[i] == '+')
+            i++;
+        // As Scanner.nextInt, a sign must be followed by a digit
+        if (i == stop || buffer[i] < '0' || buffer[i] > '9')
+            throw new InputMismatchException();
+        long bound = negative ? min : -max;
+        long value = 0;
+        while (i < stop && buffer[i] != ' ' && buffer[i] != '\t') {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9 || value < bound / 10)
+                throw new InputMismatchException();
+            value *= 10;
+            if (value < bound + digit)
+                throw new InputMismatchException();
+            value -= digit;
+            i++;
+        }
+        pos = next(end);
+        return negative ? value : -value;
+    }
+
+    /**
+     * Makes sure that the whole next line is in the buffer and finds its end.
+     * @return the position of the '\n' that ends the line, or limit if it is the last line and has none.
+     * @throws NoSuchElementException if there are no more lines.
+     */
+    private int lineEnd() {
+        int i = pos;
+        while (true) {
+            while (i < limit)
+                if (buffer[i] == '\n')
+                    return i;
+                else
+                    i++;
+            int scanned = i - pos;
+            if (!fill()) {
+                if (pos == limit)
+                    throw new NoSuchElementException("No line found");
+                return limit;
+            }
+            i = pos + scanned;
+        }
+    }
+
+    /**
+     * Returns the length of the line that starts at pos and ends at end, without the line terminator.
+     * @param end - the position of the end of the line.
+     * @return the length of the line content.
+     */
+    private int contentLength(int end) {
+        int length = end - pos;
+        if (length > 0 && buffer[pos + length - 1] == '\r')
+            length--;
+        return length;
+    }
+
+    /**
+     * Returns the position where the line after the one ending at end starts.
+     * @param end - the position of the end of the line.
+     * @return the start of the next line.
+     */
+    private int next(int end) {
+        return end < limit ? end + 1 : end;
+    }
+
+    /**
+     * Evaluates if the bytes buffer[from..from+length[ are the given ASCII command, ignoring case.
+     * @param command - the command, in uppercase.
+     * @param from - the first byte of the line.
+     * @param length - the length of the line.
+     * @return true if the line is the command, false otherwise.
+     */
+    private boolean matches(String command, int from, int length) {
+        if (command.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            int b = buffer[from + i];
+            if (b >= 'a' && b <= 'z')
+                b -= 'a' - 'A';
+            if (b != command.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads more bytes from the stream, keeping the unread ones. The consumed bytes are discarded,
+     * and the buffer grows if it is full of unread bytes (a very long line).
+     * @return true if some byte was read, false if the stream has ended.
+     */
+    private boolean fill() {
+        if (eof)
+            return false;
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            byte[] tmp = new byte[2 * buffer.length];
+            System.arraycopy(buffer, 0, tmp, 0, limit);
+            buffer = tmp;
+        }
+        try {
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n <= 0) {
+                eof = true;
+                return false;
+            }
+            limit += n;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
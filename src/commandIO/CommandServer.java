@@ -0,0 +1,148 @@
+package commandIO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the commands of the application to the clients that connect to a local TCP port.
+ * Every connection gets its own CommandReader and ResponseWriter over the socket streams and is
+ * answered by its own session, so a client speaks exactly as a user on the standard input: it may
+ * send many commands at once and the responses are only flushed when there are no more buffered
+ * commands, so pipelined batches cost one write instead of one per response.
+ * Every connection runs on its own virtual thread, when the Java version has them (21 or later);
+ * before that, on its own platform thread. The server only listens on the loopback address.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class CommandServer implements Closeable {
+
+    /**
+     * The conversation with one client, run on its own thread.
+     */
+    public interface Session {
+
+        /**
+         * Answers the commands of one client, until the client quits.
+         * @param in - the reader of the commands of the client.
+         * @param out - the writer of the responses to the client.
+         */
+        void run(CommandReader in, ResponseWriter out);
+    }
+
+    private final ServerSocket socket;
+    private final Session session;
+    // Runs every connection on its own thread
+    private final ExecutorService connections;
+    // The open connections, closed with the server
+    private final Set<Socket> clients;
+
+    /**
+     * Creates a server listening on the given local port.
+     * @pre session != null
+     * @param port - the port, or 0 for any free one.
+     * @param session - the session run for every client.
+     * @throws IOException if the port cannot be listened on.
+     */
+    public CommandServer(int port, Session session) throws IOException {
+        socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        this.session = session;
+        connections = newExecutor();
+        clients = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     * @return the port the server listens on.
+     */
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Accepts clients until the server is closed, starting a session for every one of them.
+     * @throws IOException if accepting fails for any other reason than the server being closed.
+     */
+    public void run() throws IOException {
+        while (!socket.isClosed()) {
+            Socket client;
+            try {
+                client = socket.accept();
+            } catch (SocketException e) {
+                if (socket.isClosed())
+                    return;
+                throw e;
+            }
+            clients.add(client);
+            connections.execute(() -> serve(client));
+        }
+    }
+
+    /**
+     * Stops accepting clients and closes the connections of the ones still connected.
+     */
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (Socket client : clients)
+            closeQuietly(client);
+        connections.shutdownNow();
+    }
+
+    /**
+     * Runs the session of one client and closes its connection when the client quits, disconnects
+     * or sends a malformed command.
+     * @param client - the connection of the client.
+     */
+    private void serve(Socket client) {
+        try {
+            client.setTcpNoDelay(true);
+            session.run(new CommandReader(client.getInputStream()), new ResponseWriter(client.getOutputStream()));
+        } catch (IOException | UncheckedIOException | NoSuchElementException e) {
+            // The client disconnected, or sent a malformed number (an InputMismatchException)
+        } finally {
+            clients.remove(client);
+            closeQuietly(client);
+        }
+    }
+
+    private static void closeQuietly(Socket client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            // Nothing else to do with a connection that is already broken
+        }
+    }
+
+    /**
+     * Creates the executor of the connections: a virtual thread per connection when the Java version
+     * has them, looked up by reflection so the application still runs on older versions, or else a
+     * daemon platform thread per connection.
+     * @return the executor of the connections.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "contact-book-client");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package commandIO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes the responses of the application to an output stream through a large reusable byte buffer.
+ * Strings are encoded as UTF-8 and numbers are written digit by digit straight into the buffer,
+ * so writing allocates nothing. The buffer is only written to the stream when it is full or
+ * when flush is called.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ResponseWriter {
+    private static final int DEFAULT_SIZE = 1 << 16;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+
+    /**
+     * Creates a writer to the given output stream.
+     * @pre out != null
+     * @param out - the output stream for the responses.
+     */
+    public ResponseWriter(OutputStream out) {
+        this.out = out;
+        buffer = new byte[DEFAULT_SIZE];
+        count = 0;
+    }
+
+    /**
+     * Writes the given text.
+     * @pre s != null
+     * @param s - the text to write.
+     */
+    public void print(String s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80)
+                write(c);
+            else if (c < 0x800) {
+                write(0xC0 | (c >> 6));
+                write(0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, s.charAt(++i));
+                write(0xF0 | (code >> 18));
+                write(0x80 | ((code >> 12) & 0x3F));
+                write(0x80 | ((code >> 6) & 0x3F));
+                write(0x80 | (code & 0x3F));
+            }
+            else if (Character.isSurrogate(c))
+                write('?');
+            else {
+                write(0xE0 | (c >> 12));
+                write(0x80 | ((c >> 6) & 0x3F));
+                write(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Writes the given number in decimal.
+     * @param n - the number to write.
+     */
+    public void print(int n) {
+        print((long) n);
+    }
+
+    /**
+     * Writes the given number in decimal.
+     * @param n - the number to write.
+     */
+    public void print(long n) {
+        if (n == Long.MIN_VALUE) {
+            print(Long.toString(n));
+            return;
+        }
+        if (count + 20 > buffer.length)
+            flushBuffer();
+        long value = n;
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10)
+            digits++;
+        for (int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+    }
+
+    /**
+     * Ends the current line.
+     */
+    public void println() {
+        for (byte b : LINE_SEPARATOR)
+            write(b);
+    }
+
+    /**
+     * Writes the given text and ends the line.
+     * @pre s != null
+     * @param s - the text to write.
+     */
+    public void println(String s) {
+        print(s);
+        println();
+    }
+
+    /**
+     * Writes the given number in decimal and ends the line.
+     * @param n - the number to write.
+     */
+    public void println(int n) {
+        print(n);
+        println();
+    }
+
+    /**
+     * Writes the given number in decimal and ends the line.
+     * @param n - the number to write.
+     */
+    public void println(long n) {
+        print(n);
+        println();
+    }
+
+    /**
+     * Writes everything buffered to the output stream and flushes it.
+     */
+    public void flush() {
+        flushBuffer();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes one byte to the buffer, emptying it first if it is full.
+     * @param b - the byte to write.
+     */
+    private void write(int b) {
+        if (count == buffer.length)
+            flushBuffer();
+        buffer[count++] = (byte) b;
+    }
+
+    /**
+     * Writes the buffered bytes to the output stream and empties the buffer.
+     */
+    private void flushBuffer() {
+        if (count > 0) {
+            try {
+                out.write(buffer, 0, count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package contactBook;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Storage engine that keeps every contact as a Contact object in an array (a deleted position is null).
+ * It is the default engine of the ContactBook.
+ * The contacts of a loaded snapshot are only decoded from the mapped file when first used. Decoding takes
+ * no lock, so threads that only read (as the readers of a ConcurrentContactBook) may share the storage
+ * without waiting for each other: if two of them decode the same contact, the first one to publish it in
+ * the array (compare and set) wins.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ArrayStorage extends ContactStorage {
+    // Stands for a contact of a loaded snapshot that was not decoded yet
+    private static final Contact NOT_LOADED = new Contact(null, 0, null);
+    // Reads and publishes the positions of the contacts array that readers may decode
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Contact[].class);
+
+    private Contact[] contacts;
+    // The snapshot the contacts were loaded from, while some of them are not decoded yet
+    private volatile ContactBookSnapshot snapshot;
+    private final AtomicInteger notLoaded;
+
+    /**
+     * Creates an empty storage.
+     */
+    public ArrayStorage() {
+        contacts = new Contact[0];
+        snapshot = null;
+        notLoaded = new AtomicInteger();
+    }
+
+    @Override
+    int capacity() {
+        return contacts.length;
+    }
+
+    @Override
+    void resize(int capacity) {
+        Contact tmp[] = new Contact[capacity];
+        for (int i=0; i<contacts.length; i++)
+            tmp[i] = contacts[i];
+        contacts = tmp;
+    }
+
+    @Override
+    void add(int index, String name, int phone, String email) {
+        contacts[index] = new Contact(name, phone, email);
+    }
+
+    @Override
+    void delete(int index) {
+        if (contacts[index] == NOT_LOADED)
+            loaded();
+        contacts[index] = null;
+    }
+
+    @Override
+    boolean isDeleted(int index) {
+        return contacts[index] == null;
+    }
+
+    @Override
+    Contact get(int index) {
+        Contact c = slot(index);
+        return c != NOT_LOADED ? c : decode(index);
+    }
+
+    @Override
+    String getName(int index) {
+        return get(index).getName();
+    }
+
+    @Override
+    int getPhone(int index) {
+        Contact c = slot(index);
+        if (c == NOT_LOADED) {
+            ContactBookSnapshot s = snapshot;
+            if (s != null)
+                return s.phone(index);
+            // Every contact was decoded meanwhile
+            c = slot(index);
+        }
+        return c.getPhone();
+    }
+
+    @Override
+    String getEmail(int index) {
+        return get(index).getEmail();
+    }
+
+    @Override
+    boolean hasName(int index, String name) {
+        return name.equals(get(index).getName());
+    }
+
+    @Override
+    boolean hasEmail(int index, String email) {
+        return email.equals(get(index).getEmail());
+    }
+
+    @Override
+    void setPhone(int index, int phone) {
+        get(index).setPhone(phone);
+    }
+
+    @Override
+    void setEmail(int index, String email) {
+        get(index).setEmail(email);
+    }
+
+    @Override
+    void move(int from, int to) {
+        contacts[to] = get(from);
+        contacts[from] = null;
+    }
+
+    @Override
+    void release(int from) {
+        // Nothing to do: move already leaves the positions it empties as null
+    }
+
+    @Override
+    void load(ContactBookSnapshot snapshot) {
+        int size = snapshot.size();
+        for (int i=0; i<size; i++)
+            contacts[i] = NOT_LOADED;
+        notLoaded.set(size);
+        this.snapshot = size > 0 ? snapshot : null;
+    }
+
+    /**
+     * Returns what the given position of the array holds, as published by the last reader that decoded it.
+     * @param index - the position.
+     * @return the contact in the given position, NOT_LOADED, or null if the position is empty.
+     */
+    private Contact slot(int index) {
+        return (Contact) SLOT.getAcquire(contacts, index);
+    }
+
+    /**
+     * Decodes the contact in the given position and publishes it, unless another reader published it first.
+     * @pre the contact in the given position was not decoded when it was read
+     * @param index - the position of the contact.
+     * @return the contact in the given position.
+     */
+    private Contact decode(int index) {
+        ContactBookSnapshot s = snapshot;
+        if (s == null)
+            // The last contact was decoded meanwhile, and with it this one
+            return slot(index);
+        Contact c = s.decode(index);
+        Contact published = (Contact) SLOT.compareAndExchange(contacts, index, NOT_LOADED, c);
+        if (published != NOT_LOADED)
+            return published;
+        loaded();
+        return c;
+    }
+
+    /**
+     * Counts one less contact not decoded, letting go of the snapshot after the last one.
+     */
+    private void loaded() {
+        if (notLoaded.decrementAndGet() == 0)
+            snapshot = null;
+    }
+}
@@ -0,0 +1,403 @@
+package contactBook;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Adds to a ContactBook all the contacts of a large file, with the same outcome as adding them one by
+ * one with the AC command: a contact whose name already exists (in the book, or earlier in the file)
+ * is not added.
+ * The file is read in chunks of whole records, which are parsed in parallel on a fork-join pool, while
+ * the caller adds the parsed chunks to the book in the order of the file. Only a few chunks are in
+ * memory at a time, so files of any size can be imported. The name hash codes are computed while
+ * parsing, and the book is grown once, before the first contact is added, to the expected number of
+ * contacts.
+ * A file is either a CSV file, with one "name,phone,email" record per line (a field may be quoted, with
+ * "" for a quote, but cannot span lines), or a command file with only AC commands (the command, name,
+ * phone and email lines, as typed in the application), which may end with Q.
+ * Records that cannot be parsed are counted as invalid and skipped.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class BulkImporter {
+    /**
+     * The formats of the imported files.
+     */
+    public enum Format {
+        CSV, COMMANDS;
+
+        /**
+         * Returns the format of the given file: CSV if its name ends with ".csv", in any case,
+         * and commands otherwise.
+         * @pre file != null
+         * @param file - the file.
+         * @return the format of the file.
+         */
+        public static Format of(Path file) {
+            return file.getFileName().toString().toLowerCase().endsWith(".csv") ? CSV : COMMANDS;
+        }
+    }
+
+    private static final int CHUNK_SIZE = 1 << 23;
+    private static final String ADD_COMMAND = "AC";
+    private static final String QUIT_COMMAND = "Q";
+
+    private final ContactBook book;
+    private final ForkJoinPool pool;
+    private long added;
+    private long existing;
+    private long invalid;
+
+    /**
+     * Creates an importer into the given book, parsing on the common fork-join pool.
+     * @pre book != null
+     * @param book - the book where the contacts are added.
+     */
+    public BulkImporter(ContactBook book) {
+        this(book, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an importer into the given book, parsing on the given pool.
+     * @pre book != null && pool != null
+     * @param book - the book where the contacts are added.
+     * @param pool - the pool where the chunks are parsed.
+     */
+    public BulkImporter(ContactBook book, ForkJoinPool pool) {
+        this.book = book;
+        this.pool = pool;
+        added = 0;
+        existing = 0;
+        invalid = 0;
+    }
+
+    /**
+     * Imports all the contacts of the given file.
+     * @pre file != null && format != null
+     * @param file - the file with the contacts.
+     * @param format - the format of the file.
+     * @param countHint - the expected number of records, or 0 to estimate it from the size of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public void importFile(Path file, Format format, long countHint) throws IOException {
+        int window = 2 * pool.getParallelism() + 1;
+        ArrayDeque<ForkJoinTask<Chunk>> parsing = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            byte[] rest = new byte[0];
+            boolean sized = false;
+            boolean quit = false;
+            boolean eof = false;
+            while (!eof && !quit) {
+                byte[] bytes = Arrays.copyOf(rest, rest.length + CHUNK_SIZE);
+                ByteBuffer target = ByteBuffer.wrap(bytes, rest.length, CHUNK_SIZE);
+                while (target.hasRemaining() && !eof)
+                    eof = channel.read(target) < 0;
+                int length = target.position();
+                int end = eof ? length : recordsEnd(bytes, length, format);
+                if (end == 0 && !eof) {
+                    // A record longer than a chunk: reads on
+                    rest = Arrays.copyOf(bytes, length);
+                    continue;
+                }
+                rest = Arrays.copyOfRange(bytes, end, length);
+                parsing.add(pool.submit(() -> parse(bytes, end, format)));
+                while (!quit && (parsing.size() >= window || (eof && !parsing.isEmpty()))) {
+                    Chunk chunk = parsing.poll().join();
+                    if (!sized) {
+                        long expected = countHint > 0 ? countHint : size * chunk.count / Math.max(end, 1);
+                        book.ensureCapacity((int) Math.min(Integer.MAX_VALUE - 8, book.getNumberOfContacts() + expected));
+                        sized = true;
+                    }
+                    quit = apply(chunk);
+                }
+            }
+        } finally {
+            for (ForkJoinTask<Chunk> task : parsing)
+                task.cancel(false);
+        }
+    }
+
+    /**
+     * Returns the number of contacts added so far.
+     * @return the number of contacts added so far.
+     */
+    public long getAdded() {
+        return added;
+    }
+
+    /**
+     * Returns the number of records not added so far because their name already existed.
+     * @return the number of records whose name already existed.
+     */
+    public long getExisting() {
+        return existing;
+    }
+
+    /**
+     * Returns the number of records skipped so far because they could not be parsed.
+     * @return the number of invalid records.
+     */
+    public long getInvalid() {
+        return invalid;
+    }
+
+    /**
+     * Adds the contacts of a parsed chunk to the book, in order.
+     * @param chunk - the parsed chunk.
+     * @return true if the chunk ended with Q, false otherwise.
+     */
+    private boolean apply(Chunk chunk) {
+        for (int i=0; i<chunk.count; i++) {
+            if (book.tryAddContact(chunk.names[i], chunk.phones[i], chunk.emails[i]))
+                added++;
+            else existing++;
+        }
+        invalid += chunk.invalid;
+        return chunk.quit;
+    }
+
+    /**
+     * Returns the end of the last whole record in the given bytes. A record of a command file is an AC
+     * command and its three lines, or any other single line.
+     * @param bytes - the bytes read, starting with a record.
+     * @param length - the number of bytes read.
+     * @param format - the format of the file.
+     * @return the position after the '\n' that ends the last whole record, or 0 if there is none.
+     */
+    private static int recordsEnd(byte[] bytes, int length, Format format) {
+        if (format == Format.CSV) {
+            int i = length;
+            while (i > 0 && bytes[i - 1] != '\n')
+                i--;
+            return i;
+        }
+        int end = 0;
+        int[] line = new int[2];
+        int pos = 0;
+        while (pos < length) {
+            int next = nextLine(bytes, pos, length, line);
+            if (bytes[next - 1] != '\n')
+                return end;
+            if (isCommand(bytes, line[0], line[1], ADD_COMMAND))
+                for (int i=0; i<3; i++) {
+                    if (next == length)
+                        return end;
+                    next = nextLine(bytes, next, length, line);
+                    if (bytes[next - 1] != '\n')
+                        return end;
+                }
+            end = next;
+            pos = next;
+        }
+        return end;
+    }
+
+    /**
+     * Parses the records of a chunk.
+     * @param bytes - the bytes of the chunk.
+     * @param length - the number of bytes of its records.
+     * @param format - the format of the file.
+     * @return the parsed chunk.
+     */
+    private static Chunk parse(byte[] bytes, int length, Format format) {
+        Chunk chunk = new Chunk(length / 32 + 1);
+        int[] line = new int[2];
+        int pos = 0;
+        while (pos < length) {
+            if (format == Format.CSV) {
+                pos = nextLine(bytes, pos, length, line);
+                if (line[1] > line[0])
+                    parseCsv(bytes, line[0], line[1], chunk);
+                continue;
+            }
+            pos = nextLine(bytes, pos, length, line);
+            if (isCommand(bytes, line[0], line[1], QUIT_COMMAND)) {
+                chunk.quit = true;
+                break;
+            }
+            if (isCommand(bytes, line[0], line[1], ""))
+                continue;
+            if (!isCommand(bytes, line[0], line[1], ADD_COMMAND)) {
+                chunk.invalid++;
+                continue;
+            }
+            pos = nextLine(bytes, pos, length, line);
+            String name = new String(bytes, line[0], line[1] - line[0], StandardCharsets.UTF_8);
+            pos = nextLine(bytes, pos, length, line);
+            long phone = parsePhone(bytes, line[0], line[1]);
+            pos = nextLine(bytes, pos, length, line);
+            String email = new String(bytes, line[0], line[1] - line[0], StandardCharsets.UTF_8);
+            if (phone == Long.MIN_VALUE)
+                chunk.invalid++;
+            else
+                chunk.add(name, (int) phone, email);
+        }
+        return chunk;
+    }
+
+    /**
+     * Parses a CSV record and adds it to the chunk, or counts it as invalid.
+     * @param bytes - the bytes of the chunk.
+     * @param start - the start of the record.
+     * @param end - the end of the record, without the line terminator.
+     * @param chunk - the chunk being parsed.
+     */
+    private static void parseCsv(byte[] bytes, int start, int end, Chunk chunk) {
+        String[] fields = new String[3];
+        int field = 0;
+        int pos = start;
+        while (field < 3) {
+            StringBuilder quoted = null;
+            int fieldStart = pos;
+            if (pos < end && bytes[pos] == '"') {
+                quoted = new StringBuilder();
+                int from = ++pos;
+                while (true) {
+                    while (pos < end && bytes[pos] != '"')
+                        pos++;
+                    if (pos == end) {
+                        chunk.invalid++;
+                        return;
+                    }
+                    quoted.append(new String(bytes, from, pos - from, StandardCharsets.UTF_8));
+                    if (pos + 1 < end && bytes[pos + 1] == '"') {
+                        quoted.append('"');
+                        pos += 2;
+                        from = pos;
+                    }
+                    else {
+                        pos++;
+                        break;
+                    }
+                }
+            }
+            else
+                while (pos < end && bytes[pos] != ',')
+                    pos++;
+            fields[field++] = quoted != null ? quoted.toString() :
+                    new String(bytes, fieldStart, pos - fieldStart, StandardCharsets.UTF_8);
+            if (field < 3 && (pos == end || bytes[pos] != ',')) {
+                chunk.invalid++;
+                return;
+            }
+            pos++;
+        }
+        long phone = parsePhone(fields[1]);
+        if (pos <= end || phone == Long.MIN_VALUE)
+            chunk.invalid++;
+        else
+            chunk.add(fields[0], (int) phone, fields[2]);
+    }
+
+    /**
+     * Finds the next line of a chunk.
+     * @param bytes - the bytes of the chunk.
+     * @param pos - the start of the line.
+     * @param length - the number of bytes of the chunk.
+     * @param line - where the start and the end (without "\n" or "\r\n") of the line are stored.
+     * @return the start of the following line.
+     */
+    private static int nextLine(byte[] bytes, int pos, int length, int[] line) {
+        int end = pos;
+        while (end < length && bytes[end] != '\n')
+            end++;
+        line[0] = pos;
+        line[1] = end > pos && bytes[end - 1] == '\r' ? end - 1 : end;
+        return Math.min(end + 1, length);
+    }
+
+    /**
+     * Evaluates if a line is the given command, ignoring case and blanks around it.
+     * @param bytes - the bytes of the chunk.
+     * @param start - the start of the line.
+     * @param end - the end of the line.
+     * @param command - the command, in upper case ASCII.
+     * @return true if the line is the command, false otherwise.
+     */
+    private static boolean isCommand(byte[] bytes, int start, int end, String command) {
+        while (start < end && Character.isWhitespace(bytes[start]))
+            start++;
+        while (end > start && Character.isWhitespace(bytes[end - 1]))
+            end--;
+        if (end - start != command.length())
+            return false;
+        for (int i=0; i<command.length(); i++)
+            if (Character.toUpperCase(bytes[start + i]) != command.charAt(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Parses a phone number line as the application does: an optional sign and digits, after optional
+     * blanks, up to the end of the line or to the next blank.
+     * @return the phone number, or Long.MIN_VALUE if the line is not a valid int.
+     */
+    private static long parsePhone(byte[] bytes, int start, int end) {
+        while (start < end && Character.isWhitespace(bytes[start]))
+            start++;
+        int stop = start;
+        while (stop < end && !Character.isWhitespace(bytes[stop]))
+            stop++;
+        return parsePhone(new String(bytes, start, stop - start, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Parses a phone number field: an optional sign and digits, with optional blanks around them.
+     * @return the phone number, or Long.MIN_VALUE if the field is not a valid int.
+     */
+    private static long parsePhone(String field) {
+        try {
+            return Integer.parseInt(field.trim());
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * The records parsed from a chunk, in order.
+     */
+    private static class Chunk {
+        private String[] names;
+        private int[] phones;
+        private String[] emails;
+        private int count;
+        private int invalid;
+        // If the chunk ended with Q
+        private boolean quit;
+
+        private Chunk(int capacity) {
+            names = new String[capacity];
+            phones = new int[capacity];
+            emails = new String[capacity];
+            count = 0;
+            invalid = 0;
+            quit = false;
+        }
+
+        /**
+         * Adds a record, computing the hash code of its name (which the String keeps) on this thread.
+         */
+        private void add(String name, int phone, String email) {
+            if (count == names.length) {
+                names = Arrays.copyOf(names, 2 * count);
+                phones = Arrays.copyOf(phones, 2 * count);
+                emails = Arrays.copyOf(emails, 2 * count);
+            }
+            name.hashCode();
+            names[count] = name;
+            phones[count] = phone;
+            emails[count] = email;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package contactBook;
+
+/**
+ * A change made to the contacts of a ContactBook, as published by a ChangeFeed: what changed, the contact
+ * it changed, and the sequence number of the change in the feed.
+ * Only the data of the change is kept: the name, and the phone number and the email the contact got (the
+ * ones that did not change are 0 and null).
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ChangeEvent {
+
+    /**
+     * The kinds of changes.
+     */
+    public enum Type {
+        ADDED, REMOVED, PHONE_CHANGED, EMAIL_CHANGED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final String name;
+    private final int phone;
+    private final String email;
+
+    /**
+     * Creates a change.
+     * @pre sequence > 0 && type != null && name != null
+     * @param sequence - the sequence number of the change in its feed.
+     * @param type - the kind of change.
+     * @param name - the name of the changed contact.
+     * @param phone - the phone number the contact got, or 0.
+     * @param email - the email the contact got, or null.
+     */
+    ChangeEvent(long sequence, Type type, String name, int phone, String email) {
+        this.sequence = sequence;
+        this.type = type;
+        this.name = name;
+        this.phone = phone;
+        this.email = email;
+    }
+
+    /**
+     * Returns the sequence number of the change, which is larger than the ones of all the changes before it.
+     * @return the sequence number of the change, starting at 1.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the phone number the contact got, when it was added or its phone number changed.
+     * @return the phone number the contact got, or 0 for the other changes.
+     */
+    public int getPhone() {
+        return phone;
+    }
+
+    /**
+     * Returns the email the contact got, when it was added or its email changed.
+     * @return the email the contact got, or null for the other changes.
+     */
+    public String getEmail() {
+        return email;
+    }
+}
@@ -0,0 +1,250 @@
+package contactBook;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ordered feed of the changes made to a ContactBook, which it listens to: every added and removed contact,
+ * and every change of a phone number or an email, gets a sequence number, from 1 on, and is kept in a ring
+ * of a fixed number of slots. So the subscribers stay in sync from the changes, without listing the book.
+ * Publishing a change stores it in the next slot, with no locks and no other allocation than the change.
+ * Subscribers read the changes from the ring in batches, each one at its own pace, and the ring is their
+ * bounded buffer: a change is only stored over one that every open subscription has read, so the book
+ * waits for the slowest subscriber when it is a whole ring behind (backpressure). A subscription may
+ * resume from any sequence number still in the ring. The changes may also be read without subscribing,
+ * with read, which never holds the book back, but may find that the changes it asks for are gone.
+ * The book must make its changes one at a time, as all the books do, since the feed has a single writer;
+ * any number of threads may read it at the same time. Sequence numbers start again with every feed.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ChangeFeed implements ContactBookListener {
+    /**
+     * Largest number of changes a feed keeps.
+     */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    // The changes, the one with sequence number s in slot s & mask
+    private final ChangeEvent[] ring;
+    private final int mask;
+    // Sequence number of the last published change, 0 if none
+    private volatile long published;
+    // Lower bound of the last sequence number read by every open subscription
+    private final AtomicLong gate;
+    private final List<ChangeSubscription> subscriptions;
+    // Number of threads waiting on this feed: the book for a slot, and subscribers for changes
+    private volatile int waiting;
+
+    /**
+     * Creates an empty feed that keeps at least the given number of changes.
+     * @pre 0 < capacity <= MAX_CAPACITY
+     * @param capacity - the minimum number of slots of the ring (rounded up to a power of two).
+     */
+    public ChangeFeed(int capacity) {
+        int length = Integer.highestOneBit(capacity);
+        if (length < capacity)
+            length *= 2;
+        ring = new ChangeEvent[length];
+        mask = length - 1;
+        published = 0;
+        gate = new AtomicLong(Long.MAX_VALUE);
+        subscriptions = new CopyOnWriteArrayList<>();
+        waiting = 0;
+    }
+
+    @Override
+    public void contactAdded(String name, int phone, String email) {
+        publish(ChangeEvent.Type.ADDED, name, phone, email);
+    }
+
+    @Override
+    public void contactDeleted(String name) {
+        publish(ChangeEvent.Type.REMOVED, name, 0, null);
+    }
+
+    @Override
+    public void phoneChanged(String name, int phone) {
+        publish(ChangeEvent.Type.PHONE_CHANGED, name, phone, null);
+    }
+
+    @Override
+    public void emailChanged(String name, String email) {
+        publish(ChangeEvent.Type.EMAIL_CHANGED, name, 0, email);
+    }
+
+    /**
+     * Returns the sequence number of the last change published.
+     * @return the sequence number of the last change, or 0 if there is none.
+     */
+    public long getSequence() {
+        return published;
+    }
+
+    /**
+     * Returns the sequence number of the oldest change still in the ring.
+     * @return the sequence number of the oldest change kept, or getSequence() + 1 if there is none.
+     */
+    public long getOldestSequence() {
+        return Math.max(published - ring.length, 0) + 1;
+    }
+
+    /**
+     * Subscribes to the changes after the given sequence number, which are read with the returned
+     * subscription, in order. Until the subscription is closed, the changes it did not read are kept.
+     * A change the book is publishing while the subscription starts may still replace the oldest one,
+     * which the subscription then finds out when it reads it.
+     * @pre after >= 0
+     * @param after - the sequence number of the last change already known, or 0 for all of them.
+     * @return the subscription.
+     * @throws IllegalArgumentException if some change after the given one is no longer in the ring,
+     * or the given change was not published yet (as when the sequence numbers of an older feed are used).
+     */
+    public ChangeSubscription subscribe(long after) {
+        if (after > published)
+            throw new IllegalArgumentException("Change " + after + " was not published yet");
+        ChangeSubscription subscription = new ChangeSubscription(this, after);
+        subscriptions.add(subscription);
+        gate.accumulateAndGet(after, Math::min);
+        if (after + 1 < getOldestSequence()) {
+            subscription.close();
+            throw new IllegalArgumentException("Changes after " + after + " are no longer kept");
+        }
+        return subscription;
+    }
+
+    /**
+     * Returns the changes after the given sequence number, without subscribing: the changes are not kept
+     * for this reader, so they may be gone by the time it asks for them.
+     * @pre after >= 0 && limit >= 0
+     * @param after - the sequence number of the last change already known, or 0 for all of them.
+     * @param limit - the maximum number of changes to return.
+     * @return the changes after the given one, in order, at most limit of them, or null if some of them
+     * are no longer in the ring.
+     */
+    public List<ChangeEvent> read(long after, int limit) {
+        List<ChangeEvent> changes = new ArrayList<>();
+        long last = Math.min(published, after + limit);
+        for (long sequence=after+1; sequence<=last; sequence++) {
+            ChangeEvent change = ring[(int) sequence & mask];
+            if (change == null || change.getSequence() != sequence)
+                return null;
+            changes.add(change);
+        }
+        return changes;
+    }
+
+    /**
+     * Stores a change in the next slot, once every open subscription has read the change in it.
+     * Publishing it makes it visible to the readers, which are woken up if some of them are waiting.
+     * @param type - the kind of change.
+     * @param name - the name of the changed contact.
+     * @param phone - the phone number the contact got, or 0.
+     * @param email - the email the contact got, or null.
+     */
+    private void publish(ChangeEvent.Type type, String name, int phone, String email) {
+        long sequence = published + 1;
+        if (sequence - ring.length > gate.get())
+            awaitSlot(sequence);
+        ring[(int) sequence & mask] = new ChangeEvent(sequence, type, name, phone, email);
+        published = sequence;
+        if (waiting > 0)
+            wakeUp();
+    }
+
+    /**
+     * Waits until every open subscription has read the change that is a whole ring before the given one.
+     * @param sequence - the sequence number of the change to publish.
+     */
+    private void awaitSlot(long sequence) {
+        boolean interrupted = false;
+        while (sequence - ring.length > updateGate()) {
+            synchronized (this) {
+                waiting++;
+                try {
+                    if (sequence - ring.length > updateGate())
+                        wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } finally {
+                    waiting--;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Recomputes the gate from the open subscriptions. If a subscription lowers the gate meanwhile,
+     * it is recomputed again, so the gate never misses a new subscription.
+     * @return the last sequence number read by every open subscription.
+     */
+    private long updateGate() {
+        while (true) {
+            long current = gate.get();
+            long lowest = Long.MAX_VALUE;
+            for (ChangeSubscription subscription : subscriptions)
+                lowest = Math.min(lowest, subscription.getSequence());
+            if (gate.compareAndSet(current, lowest))
+                return lowest;
+        }
+    }
+
+    /**
+     * Tells the feed that a subscription read some changes, or was closed, so the book may go on if it
+     * was waiting for it.
+     */
+    void advanced() {
+        if (waiting > 0)
+            wakeUp();
+    }
+
+    /**
+     * Removes a closed subscription, so the changes it did not read are no longer kept for it.
+     * @param subscription - the subscription.
+     */
+    void unsubscribe(ChangeSubscription subscription) {
+        subscriptions.remove(subscription);
+        advanced();
+    }
+
+    /**
+     * Waits until there is a change after the given sequence number, or the given time passes.
+     * @param after - the sequence number of the last change known.
+     * @param millis - the maximum time to wait, in milliseconds, greater than 0.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    void awaitChange(long after, long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        synchronized (this) {
+            waiting++;
+            try {
+                long left = millis;
+                while (published <= after && left > 0) {
+                    wait(left);
+                    left = deadline - System.currentTimeMillis();
+                }
+            } finally {
+                waiting--;
+            }
+        }
+    }
+
+    /**
+     * Returns the change in the slot of the given sequence number, which a subscription has not read
+     * yet: the change with that sequence number, unless it was replaced while the subscription started.
+     * @pre the change is published
+     * @param sequence - the sequence number of the change.
+     * @return the change in the slot of the sequence number.
+     */
+    ChangeEvent get(long sequence) {
+        return ring[(int) sequence & mask];
+    }
+
+    private synchronized void wakeUp() {
+        notifyAll();
+    }
+}
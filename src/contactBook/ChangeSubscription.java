@@ -0,0 +1,94 @@
+package contactBook;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Subscription to a ChangeFeed, which reads its changes in order, in batches, and keeps them in the feed
+ * until they are read: the book waits when the subscription is a whole ring behind, so a subscription
+ * that is no longer read must be closed.
+ * A subscription is read by one thread at a time.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ChangeSubscription implements Closeable {
+    private final ChangeFeed feed;
+    // Sequence number of the last change read
+    private volatile long sequence;
+    private volatile boolean closed;
+
+    /**
+     * Creates a subscription to the changes of the given feed after the given sequence number.
+     * @pre feed != null && after >= 0
+     * @param feed - the feed.
+     * @param after - the sequence number of the last change already known.
+     */
+    ChangeSubscription(ChangeFeed feed, long after) {
+        this.feed = feed;
+        sequence = after;
+        closed = false;
+    }
+
+    /**
+     * Returns the sequence number of the last change read, from which a new subscription would resume.
+     * @return the sequence number of the last change read.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Reads the changes published since the last one read, without waiting.
+     * @pre limit > 0, and the subscription is not closed
+     * @param limit - the maximum number of changes to read.
+     * @return the changes, in order, at most limit of them, and none if there are no new changes.
+     * @throws IllegalStateException if the next change was replaced while the subscription started,
+     * which then is closed.
+     */
+    public List<ChangeEvent> poll(int limit) {
+        long last = Math.min(feed.getSequence(), sequence + limit);
+        List<ChangeEvent> changes = new ArrayList<>((int) (last - sequence));
+        for (long s=sequence+1; s<=last; s++) {
+            ChangeEvent change = feed.get(s);
+            if (change.getSequence() != s) {
+                close();
+                throw new IllegalStateException("Changes after " + (s - 1) + " are no longer kept");
+            }
+            changes.add(change);
+        }
+        if (!changes.isEmpty()) {
+            sequence = last;
+            feed.advanced();
+        }
+        return changes;
+    }
+
+    /**
+     * Reads the changes published since the last one read, waiting up to the given time for some.
+     * @pre limit > 0 && millis >= 0, and the subscription is not closed
+     * @param limit - the maximum number of changes to read.
+     * @param millis - the maximum time to wait for a change, in milliseconds.
+     * @return the changes, in order, at most limit of them, and none if there were no new changes in time.
+     * @throws IllegalStateException if the next change was replaced while the subscription started,
+     * which then is closed.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public List<ChangeEvent> take(int limit, long millis) throws InterruptedException {
+        if (millis > 0 && feed.getSequence() == sequence)
+            feed.awaitChange(sequence, millis);
+        return poll(limit);
+    }
+
+    /**
+     * Closes the subscription, so the feed no longer keeps the changes it did not read.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            feed.unsubscribe(this);
+        }
+    }
+}
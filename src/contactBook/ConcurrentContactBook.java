@@ -0,0 +1,479 @@
+package contactBook;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe ContactBook that wraps another book, so one book can be served to many threads.
+ * Reads are far more frequent than changes, so the lock is striped: there is one StampedLock per
+ * stripe, a reader only read-locks the stripe of its thread, and a writer write-locks every stripe.
+ * So readers on different stripes never touch the same lock, and lookups scale with the cores.
+ * Counting reads (getNumberOfContacts, hasEqualPhones) are optimistic and take no lock at all.
+ * Every thread iterates on its own: iterator() and initializeIterator() take a copy of the
+ * contacts, so an iteration shows the book as it was when it started, however it changes later.
+ * Contacts are returned as copies too, which later changes to the book do not affect.
+ * Checking and then changing a contact takes two calls, between which other threads may change the
+ * book: the try methods (and findName) do both in a single step, and are the ones to use when the
+ * book is shared.
+ * Listeners are told about changes while the book is locked, so they must not use the book.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ConcurrentContactBook implements ContactBook {
+    private final ContactBook book;
+    // One lock per stripe, a power of two
+    private final StampedLock[] stripes;
+    // The iteration of every thread started with initializeIterator
+    private final ThreadLocal<Iterator<Contact>> iterations;
+
+    /**
+     * Wraps a new, empty book.
+     */
+    public ConcurrentContactBook() {
+        this(new ContactBookClass());
+    }
+
+    /**
+     * Wraps the given book, with a stripe per available processor.
+     * @pre book != null, and book is only used through this object from now on
+     * @param book - the wrapped book.
+     */
+    public ConcurrentContactBook(ContactBook book) {
+        this(book, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Wraps the given book, with at least the given number of stripes.
+     * @pre book != null && stripes > 0, and book is only used through this object from now on
+     * @param book - the wrapped book.
+     * @param stripes - the minimum number of stripes (rounded up to a power of two).
+     */
+    public ConcurrentContactBook(ContactBook book, int stripes) {
+        this.book = book;
+        int length = Integer.highestOneBit(stripes);
+        if (length < stripes)
+            length *= 2;
+        this.stripes = new StampedLock[length];
+        for (int i=0; i<length; i++)
+            this.stripes[i] = new StampedLock();
+        iterations = new ThreadLocal<>();
+    }
+
+    @Override
+    public void addListener(ContactBookListener listener) {
+        lockAll();
+        try {
+            book.addListener(listener);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public boolean hasContact(String name) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return book.hasContact(name);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean hasContact(int number) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return book.hasContact(number);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int getNumberOfContacts() {
+        StampedLock lock = stripe();
+        long stamp = lock.tryOptimisticRead();
+        int count = book.getNumberOfContacts();
+        if (lock.validate(stamp))
+            return count;
+        stamp = lock.readLock();
+        try {
+            return book.getNumberOfContacts();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Contact getContact(String name) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            Contact c = book.getContact(name);
+            return c != null ? copy(c) : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<Contact> getContactsByPrefix(String prefix, int limit) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return copies(book.getContactsByPrefix(prefix, limit));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<Contact> getSimilarContacts(String name, int limit) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return copies(book.getSimilarContacts(name, limit));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int getRank(String name) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return book.getRank(name);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<Contact> getContactsByRank(int rank, int limit) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return copies(book.getContactsByRank(rank, limit));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<Contact> getContactsBetween(String from, String to, int limit) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return copies(book.getContactsBetween(from, to, limit));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Contact getContactByEmail(String email) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            Contact c = book.getContactByEmail(email);
+            return c != null ? copy(c) : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int countContactsInDomain(String domain) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return book.countContactsInDomain(domain);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void addContact(String name, int phone, String email) {
+        lockAll();
+        try {
+            book.addContact(name, phone, email);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        lockAll();
+        try {
+            book.ensureCapacity(capacity);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public void deleteContact(String name) {
+        lockAll();
+        try {
+            book.deleteContact(name);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public int getPhone(String name) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return book.getPhone(name);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public String getEmail(String name) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return book.getEmail(name);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public String getName(int number) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return book.getName(number);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void setPhone(String name, int phone) {
+        lockAll();
+        try {
+            book.setPhone(name, phone);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public void setEmail(String name, String email) {
+        lockAll();
+        try {
+            book.setEmail(name, email);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public boolean tryAddContact(String name, int phone, String email) {
+        lockAll();
+        try {
+            return book.tryAddContact(name, phone, email);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public boolean tryDeleteContact(String name) {
+        lockAll();
+        try {
+            return book.tryDeleteContact(name);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public boolean trySetPhone(String name, int phone) {
+        lockAll();
+        try {
+            return book.trySetPhone(name, phone);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public boolean trySetEmail(String name, String email) {
+        lockAll();
+        try {
+            return book.trySetEmail(name, email);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public void applyBatch(ContactBatch batch) {
+        lockAll();
+        try {
+            book.applyBatch(batch);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public String findName(int number) {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            return book.findName(number);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean hasEqualPhones() {
+        StampedLock lock = stripe();
+        long stamp = lock.tryOptimisticRead();
+        boolean shared = book.hasEqualPhones();
+        if (lock.validate(stamp))
+            return shared;
+        stamp = lock.readLock();
+        try {
+            return book.hasEqualPhones();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Gives to the action up to limit contacts, from the given cursor on, as ContactBookClass does.
+     * The contacts are copied under a read lock, and only given to the action after unlocking, so
+     * an action that writes them to a slow client never blocks the writers.
+     * @pre limit >= 0 && action != null
+     * @param cursor - the cursor of the first contact, 0 for the oldest one.
+     * @param limit - the maximum number of contacts to give.
+     * @param action - what to do with every contact.
+     * @return the cursor of the contact after the last one given, or -1 if there is none.
+     */
+    @Override
+    public long listContacts(long cursor, int limit, Consumer<Contact> action) {
+        List<Contact> page = new ArrayList<>();
+        long next;
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            next = book.listContacts(cursor, limit, c -> page.add(copy(c)));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        page.forEach(action);
+        return next;
+    }
+
+    @Override
+    public ContactBookStatistics getStatistics() {
+        return book.getStatistics();
+    }
+
+    /**
+     * Initializes the iterator of the calling thread, such that the first contact to iterate is the
+     * oldest one. The iteration shows the contacts as they are now.
+     */
+    @Override
+    public void initializeIterator() {
+        iterations.set(iterator());
+    }
+
+    /**
+     * Evaluates if there is at least one more contact to iterate by the calling thread.
+     * @return true if there is at least one more contact to iterate, false otherwise.
+     */
+    @Override
+    public boolean hasNext() {
+        Iterator<Contact> iteration = iterations.get();
+        return iteration != null && iteration.hasNext();
+    }
+
+    /**
+     * Returns the next contact to iterate by the calling thread.
+     * @pre hasNext()
+     * @return the next Contact object to iterate.
+     */
+    @Override
+    public Contact next() {
+        return iterations.get().next();
+    }
+
+    /**
+     * Returns a new iterator of copies of all the contacts, from the oldest to the most recent one,
+     * as they are now. The copy is taken under a read lock, so it costs linear time, but it never
+     * blocks writers after that.
+     * @return a new iterator of all the contacts.
+     */
+    @Override
+    public Iterator<Contact> iterator() {
+        StampedLock lock = stripe();
+        long stamp = lock.readLock();
+        try {
+            List<Contact> copies = new ArrayList<>(book.getNumberOfContacts());
+            for (Contact c : book)
+                copies.add(copy(c));
+            return Collections.unmodifiableList(copies).iterator();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the lock of the stripe of the calling thread.
+     * @return the lock of the stripe of the calling thread.
+     */
+    private StampedLock stripe() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Write-locks every stripe, always in the same order, so writers never deadlock.
+     */
+    private void lockAll() {
+        for (StampedLock lock : stripes)
+            lock.asWriteLock().lock();
+    }
+
+    private void unlockAll() {
+        for (int i=stripes.length-1; i>=0; i--)
+            stripes[i].asWriteLock().unlock();
+    }
+
+    private static Contact copy(Contact c) {
+        return new Contact(c.getName(), c.getPhone(), c.getEmail());
+    }
+
+    /**
+     * Replaces every contact of the given list by a copy.
+     * @param contacts - a list of contacts returned by the wrapped book.
+     * @return the same list, now with copies of the contacts.
+     */
+    private static List<Contact> copies(List<Contact> contacts) {
+        for (int i=0; i<contacts.size(); i++)
+            contacts.set(i, copy(contacts.get(i)));
+        return contacts;
+    }
+}
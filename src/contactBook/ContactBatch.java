@@ -0,0 +1,192 @@
+package contactBook;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Sequence of changes (adding, deleting, and setting the phone or the email of contacts) that a
+ * ContactBook applies as a whole with applyBatch. Every change has the effect its try method would
+ * have if the changes were applied one by one, in order, so the result of every one of them is known
+ * before any is applied; after applyBatch, isApplied tells which ones changed the book.
+ * A batch is used by one thread at a time, and may be applied only once.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ContactBatch {
+    static final byte ADD = 0;
+    static final byte DELETE = 1;
+    static final byte SET_PHONE = 2;
+    static final byte SET_EMAIL = 3;
+    private static final int DEFAULT_SIZE = 16;
+    // Sequence of the added contacts that take the next sequence number of the book
+    private static final long NO_SEQUENCE = -1;
+
+    private int size;
+    // Kind and arguments of every change, by position in the batch
+    private byte[] kinds;
+    private String[] names;
+    private int[] phones;
+    private String[] emails;
+    // Whether every change changes the book, once the batch is validated
+    private boolean[] applied;
+    // Insertion number of every added contact, when given by a ShardedContactBook
+    private long[] sequences;
+
+    /**
+     * Creates an empty batch.
+     */
+    public ContactBatch() {
+        size = 0;
+        kinds = new byte[DEFAULT_SIZE];
+        names = new String[DEFAULT_SIZE];
+        phones = new int[DEFAULT_SIZE];
+        emails = new String[DEFAULT_SIZE];
+        applied = new boolean[DEFAULT_SIZE];
+        sequences = new long[DEFAULT_SIZE];
+    }
+
+    /**
+     * Appends the adding of a contact, which is applied if there is no contact with the given name.
+     * @pre name != null && email != null
+     * @param name - the given contact name.
+     * @param phone - the given phone number.
+     * @param email - the given contact email.
+     */
+    public void addContact(String name, int phone, String email) {
+        append(ADD, name, phone, email, NO_SEQUENCE);
+    }
+
+    /**
+     * Appends the deleting of a contact, which is applied if there is a contact with the given name.
+     * @pre name != null
+     * @param name - the given contact name.
+     */
+    public void deleteContact(String name) {
+        append(DELETE, name, 0, null, NO_SEQUENCE);
+    }
+
+    /**
+     * Appends the setting of the phone number of a contact, which is applied if there is a contact
+     * with the given name.
+     * @pre name != null
+     * @param name - the given contact name.
+     * @param phone - the given phone number.
+     */
+    public void setPhone(String name, int phone) {
+        append(SET_PHONE, name, phone, null, NO_SEQUENCE);
+    }
+
+    /**
+     * Appends the setting of the email of a contact, which is applied if there is a contact with
+     * the given name.
+     * @pre name != null && email != null
+     * @param name - the given contact name.
+     * @param email - the given contact email.
+     */
+    public void setEmail(String name, String email) {
+        append(SET_EMAIL, name, 0, email, NO_SEQUENCE);
+    }
+
+    /**
+     * Returns the number of changes in the batch.
+     * @return the number of changes in the batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tells if the change at the given position changed the book, which is what its try method
+     * would have returned.
+     * @pre 0 <= i < size(), and the batch was applied
+     * @param i - the position of the change.
+     * @return true if the change was applied, false if it was not.
+     */
+    public boolean isApplied(int i) {
+        return applied[i];
+    }
+
+    /**
+     * Decides which changes are applied, taking into account the ones before every change.
+     * Only the names changed by the batch are remembered, so it costs a lookup per change.
+     * @pre exists != null
+     * @param exists - tells if the book has a contact with a given name, before the batch.
+     * @return the number of contacts the batch adds, not counting the ones it deletes.
+     */
+    int validate(Predicate<String> exists) {
+        Map<String, Boolean> changed = new HashMap<>();
+        int added = 0;
+        for (int i=0; i<size; i++) {
+            Boolean known = changed.get(names[i]);
+            boolean present = known != null ? known : exists.test(names[i]);
+            applied[i] = kinds[i] == ADD ? !present : present;
+            if (applied[i] && kinds[i] == ADD) {
+                changed.put(names[i], true);
+                added++;
+            }
+            else if (applied[i] && kinds[i] == DELETE)
+                changed.put(names[i], false);
+        }
+        return added;
+    }
+
+    /**
+     * Appends the change at the given position of another batch, as already applied, and
+     * giving the added contact the given sequence number.
+     * @pre 0 <= i < other.size(), and other was validated
+     * @param other - the batch with the change.
+     * @param i - the position of the change.
+     * @param sequence - the global insertion number of the contact, if the change adds one.
+     */
+    void append(ContactBatch other, int i, long sequence) {
+        append(other.kinds[i], other.names[i], other.phones[i], other.emails[i], sequence);
+        applied[size - 1] = true;
+    }
+
+    byte getKind(int i) {
+        return kinds[i];
+    }
+
+    String getName(int i) {
+        return names[i];
+    }
+
+    int getPhone(int i) {
+        return phones[i];
+    }
+
+    String getEmail(int i) {
+        return emails[i];
+    }
+
+    /**
+     * Returns the sequence number given to the contact added by the change at the given position.
+     * @pre 0 <= i < size()
+     * @param i - the position of the change.
+     * @return the sequence number of the contact, or a negative number if the book gives it.
+     */
+    long getSequence(int i) {
+        return sequences[i];
+    }
+
+    private void append(byte kind, String name, int phone, String email, long sequence) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, 2*size);
+            names = Arrays.copyOf(names, 2*size);
+            phones = Arrays.copyOf(phones, 2*size);
+            emails = Arrays.copyOf(emails, 2*size);
+            applied = Arrays.copyOf(applied, 2*size);
+            sequences = Arrays.copyOf(sequences, 2*size);
+        }
+        kinds[size] = kind;
+        names[size] = name;
+        phones[size] = phone;
+        emails[size] = email;
+        applied[size] = false;
+        sequences[size] = sequence;
+        size++;
+    }
+}
@@ -1,58 +1,119 @@
 package contactBook;
 
-import java.util.Set;
-import java.util.HashSet;
-import java.util.function.Predicate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * It's the system interface that manages all the contacts from the application.
+ * Contacts are iterated in insertion order, from the oldest to the most recent one.
  * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
  * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
  * @author João Lima 65491 jav.lima@campus.fct.unl.pt
  */
-public class ContactBook {
-    private static final int DEFAULT_SIZE = 100;
-
-    private int counter;
-    private Contact[] contacts;
-    private int currentContact;
+public interface ContactBook extends Iterable<Contact> {
 
     /**
-     * Initializes all the variables. In the beginning there are no contacts (so counter is 0),
-     * and we are not iterating yet, so currentContact is -1.
+     * Registers a listener that is told about every change to the contacts, before it is applied.
+     * @pre listener != null
+     * @param listener - the listener to register.
      */
-    public ContactBook() {
-        counter = 0;
-        contacts = new Contact[DEFAULT_SIZE];
-        currentContact = -1;
-    }
+    void addListener(ContactBookListener listener);
 
     /**
      * Evaluates if there is a contact with the given name.
-     * @pre: name != null
+     * @pre name != null
      * @param name - the given contact name.
      * @return true if there is a contact with the given name, false otherwise.
      */
-    public boolean hasContact(String name) {
-        return searchIndex(name) >= 0;
-    }
+    boolean hasContact(String name);
 
     /**
      * Evaluates if there is a contact with the given phone number.
      * @param number - the given phone number.
      * @return true if there is a contact with the given phone number, false otherwise.
      */
-    public boolean hasContact(int number) {
-    	return searchIndex(number) >= 0;
-    }
+    boolean hasContact(int number);
 
     /**
      * Returns the number of contacts registered at the moment.
      * @return the number of contacts registered at the moment.
      */
-    public int getNumberOfContacts() {
-        return counter;
-    }
+    int getNumberOfContacts();
+
+    /**
+     * Returns the contact with the given name, or null if there is no such contact.
+     * Allows checking and reading a contact with a single lookup.
+     * @pre name != null
+     * @param name - the given contact name.
+     * @return the contact with the given name, or null if there is no such contact.
+     */
+    Contact getContact(String name);
+
+    /**
+     * Returns the first contacts, in alphabetical order, whose name starts with the given prefix.
+     * @pre prefix != null && limit >= 0
+     * @param prefix - the beginning of the names.
+     * @param limit - the maximum number of contacts to return.
+     * @return the first contacts whose name starts with the prefix, at most limit of them.
+     */
+    List<Contact> getContactsByPrefix(String prefix, int limit);
+
+    /**
+     * Returns the contacts whose names are closest to the given one, which may be mistyped, by edit
+     * distance (the number of characters to insert, delete or replace to get one name from the other),
+     * and then in alphabetical order. Only the names up to two edits away are considered.
+     * @pre name != null && limit >= 0
+     * @param name - the searched name.
+     * @param limit - the maximum number of contacts to return.
+     * @return the contacts with the closest names, the closest first, at most limit of them.
+     */
+    List<Contact> getSimilarContacts(String name, int limit);
+
+    /**
+     * Returns the number of contacts whose name comes before the given one in alphabetical order,
+     * which is the position of the contact with the given name, if there is one (0 for the first name).
+     * @pre name != null
+     * @param name - the given name.
+     * @return the number of contacts whose name comes before the given one.
+     */
+    int getRank(String name);
+
+    /**
+     * Returns the contacts in alphabetical order, from the given position on.
+     * @pre rank >= 0 && limit >= 0
+     * @param rank - the position of the first contact, 0 for the first name.
+     * @param limit - the maximum number of contacts to return.
+     * @return the contacts from the given position on, at most limit of them.
+     */
+    List<Contact> getContactsByRank(int rank, int limit);
+
+    /**
+     * Returns the contacts whose names are between the given ones (both included), in alphabetical order.
+     * @pre from != null && to != null && limit >= 0
+     * @param from - the first name.
+     * @param to - the last name.
+     * @param limit - the maximum number of contacts to return.
+     * @return the contacts whose names are between from and to, at most limit of them.
+     */
+    List<Contact> getContactsBetween(String from, String to, int limit);
+
+    /**
+     * Returns the oldest contact with the given email, or null if there is no such contact.
+     * @pre email != null
+     * @param email - the given email.
+     * @return the oldest contact with the given email, or null if there is no such contact.
+     */
+    Contact getContactByEmail(String email);
+
+    /**
+     * Returns the number of contacts whose email is in the given domain (the text after the last '@'
+     * of the email), ignoring case.
+     * @pre domain != null
+     * @param domain - the given domain, such as "fct.unl.pt".
+     * @return the number of contacts whose email is in the given domain.
+     */
+    int countContactsInDomain(String domain);
 
     /**
      * Adds a new contact in the system with the given arguments, if none has the given name.
@@ -61,24 +122,22 @@ public class ContactBook {
      * @param phone - the given phone number.
      * @param email - the given contact email.
      */
-    public void addContact(String name, int phone, String email) {
-        if (counter == contacts.length)
-            resize();
-        contacts[counter] = new Contact(name, phone, email);
-        counter++;
-    }
+    void addContact(String name, int phone, String email);
+
+    /**
+     * Makes room for the given number of contacts, so that the book does not grow again
+     * until it has that many.
+     * @pre capacity >= 0
+     * @param capacity - the number of contacts to make room for.
+     */
+    void ensureCapacity(int capacity);
 
     /**
      * Deletes a contact in the system with the given name (it's identifier), if there is a contact with such a name.
      * @pre name != null && hasContact(name)
      * @param name - the given contact name.
      */
-    public void deleteContact(String name) {
-        int index = searchIndex(name);
-        for(int i=index; i<counter; i++)
-            contacts[i] = contacts[i+1];
-        counter--;
-    }
+    void deleteContact(String name);
 
     /**
      * Returns the phone number of the contact with the given name, if there is a contact with such a name.
@@ -86,9 +145,7 @@ public class ContactBook {
      * @param name - the given contact name.
      * @return the phone number of the contact with the given name, if there is a contact with such a name.
      */
-    public int getPhone(String name) {
-        return contacts[searchIndex(name)].getPhone();
-    }
+    int getPhone(String name);
 
     /**
      * Returns the email of the contact with the given name, if there is a contact with such a name.
@@ -96,9 +153,7 @@ public class ContactBook {
      * @param name - the given contact name.
      * @return the email of the contact with the given name, if there is a contact with such a name.
      */
-    public String getEmail(String name) {
-        return contacts[searchIndex(name)].getEmail();
-    }
+    String getEmail(String name);
 
     /**
      * Returns the name of the oldest contact with the given phone number,
@@ -108,9 +163,7 @@ public class ContactBook {
      * @return the name of the oldest contact with the given phone number,
      * if there is a contact with such a phone number.
      */
-    public String getName(int number) {
-    	return contacts[searchIndex(number)].getName();
-    }
+    String getName(int number);
 
     /**
      * Sets the given phone number to the contact with the given name, if there is a contact with such a name.
@@ -118,9 +171,7 @@ public class ContactBook {
      * @param name - the given contact name.
      * @param phone - the given phone number.
      */
-    public void setPhone(String name, int phone) {
-        contacts[searchIndex(name)].setPhone(phone);
-    }
+    void setPhone(String name, int phone);
 
     /**
      * Sets the given email to the contact with the given name, if there is a contact with such a name.
@@ -128,101 +179,111 @@ public class ContactBook {
      * @param name - the given contact name.
      * @param email - the given contact email.
      */
-    public void setEmail(String name, String email) {
-        contacts[searchIndex(name)].setEmail(email);
-    }
+    void setEmail(String name, String email);
+
+    /**
+     * Adds a new contact with the given arguments, unless a contact has the given name,
+     * checking and adding in a single step.
+     * @pre name != null && email != null
+     * @param name - the given contact name.
+     * @param phone - the given phone number.
+     * @param email - the given contact email.
+     * @return true if the contact was added, false if there already was a contact with the given name.
+     */
+    boolean tryAddContact(String name, int phone, String email);
 
     /**
-     * Using a predicate to factor the search index (for all criteria wanted).
-     * @pre predicate != null, and predicate must evaluate a contact.
-     * @param predicate - the predicate used, takes a contact and evaluates as wanted.
-     * @return the index of the contact found, or -1 if not found.
+     * Deletes the contact with the given name, if there is one, checking and deleting in a single step.
+     * @pre name != null
+     * @param name - the given contact name.
+     * @return true if the contact was deleted, false if there was no contact with the given name.
      */
-    private int searchIndex(Predicate<Contact> predicate) {
-        int i = 0;
-        int result = -1;
-        boolean found = false;
-        while (i<counter && !found)
-            if (predicate.test(contacts[i]))
-                found = true;
-            else
-                i++;
-        if (found) result = i;
-        return result;
-    }
+    boolean tryDeleteContact(String name);
 
     /**
-     * Returns the index of the contact with the given name, or -1 if not found.
+     * Sets the given phone number to the contact with the given name, if there is one,
+     * checking and updating in a single step.
      * @pre name != null
      * @param name - the given contact name.
-     * @return the index of the contact with the given name, or -1 if not found.
+     * @param phone - the given phone number.
+     * @return true if the contact was updated, false if there was no contact with the given name.
+     */
+    boolean trySetPhone(String name, int phone);
+
+    /**
+     * Sets the given email to the contact with the given name, if there is one,
+     * checking and updating in a single step.
+     * @pre name != null && email != null
+     * @param name - the given contact name.
+     * @param email - the given contact email.
+     * @return true if the contact was updated, false if there was no contact with the given name.
      */
-    private int searchIndex(String name) {
-        return searchIndex(contact -> name.equals(contact.getName()));
-    }
+    boolean trySetEmail(String name, String email);
 
     /**
-     * Returns the index of the oldest contact with the given phone number, or -1 if not found.
+     * Applies all the changes of the given batch as a single step: every change has the effect its
+     * try method would have if the changes were applied one by one, in order, and the batch tells
+     * which ones were applied. The storage grows at most once for the whole batch.
+     * @pre batch != null, and batch was not applied before
+     * @param batch - the changes to apply.
+     */
+    void applyBatch(ContactBatch batch);
+
+    /**
+     * Returns the name of the oldest contact with the given phone number, or null if there is none.
      * @param number - the given phone number.
-     * @return the index of the oldest contact with the given phone number, or -1 if not found.
+     * @return the name of the oldest contact with the given phone number, or null if there is none.
+     */
+    String findName(int number);
+
+    /**
+     * Evaluates if there are at least two contacts with the same phone number.
+     * @return true if there are contacts that share phone numbers, false otherwise.
      */
-    private int searchIndex(int number) {
-        return searchIndex(contact -> number == contact.getPhone());
-    }
+    boolean hasEqualPhones();
 
     /**
-     * Auxiliary method to help the contacts array grow when needed.
+     * Gives to the action, from the oldest to the most recent one, up to limit contacts, starting at
+     * the one with the given cursor. A cursor stays valid while the book changes: if its contact is
+     * deleted, the listing starts at the next one still in the book.
+     * @pre limit >= 0 && action != null, and action does not change the book
+     * @param cursor - the cursor of the first contact, 0 for the oldest one.
+     * @param limit - the maximum number of contacts to give.
+     * @param action - what to do with every contact.
+     * @return the cursor of the contact after the last one given, or -1 if there is none.
      */
-    private void resize() {
-        Contact tmp[] = new Contact[2*contacts.length];
-        for (int i=0;i<counter; i++)
-            tmp[i] = contacts[i];
-        contacts = tmp;
-    }
+    long listContacts(long cursor, int limit, Consumer<Contact> action);
+
+    /**
+     * Returns the statistics of the work of the book, which are kept up to date as it works
+     * and may be read by any thread at any moment.
+     * @return the statistics of the book.
+     */
+    ContactBookStatistics getStatistics();
 
     /**
      * Initializes the iterator, such that the first contact to iterate is the oldest one.
      */
-    public void initializeIterator() {
-        currentContact = 0;
-    }
+    void initializeIterator();
 
     /**
      * Evaluates if there is at least one more contact to iterate.
      * @return true if there is at least one more contact to iterate, false otherwise.
      */
-    public boolean hasNext() {
-        return (currentContact >= 0 ) && (currentContact < counter);
-    }
+    boolean hasNext();
 
     /**
      * Returns the next contact to iterate.
      * @pre hasNext()
      * @return the next Contact object to iterate.
      */
-    public Contact next() {
-        return contacts[currentContact++];
-    }
+    Contact next();
 
     /**
-     * Iterates all the contacts of this cBook and uses a HashSet to check in constant time if the current phone number
-     * being iterated is already on the set. In this case, a previously iterated contact has the same phone number,
-     * which means there are at least two contacts with the same phone number (no need to keep iterating),
-     * and returns true.
-     * Otherwise, if we had to iterate through every phone number, then all phone numbers are different,
-     * and returns false.
+     * Returns a new iterator of all the contacts, from the oldest to the most recent one,
+     * independent from initializeIterator, hasNext and next and from any other iterator.
+     * @return a new iterator of all the contacts.
      */
-    public boolean hasEqualPhones() {
-        Set<Integer> phoneNumberFrequency = new HashSet<>();
-        int currentPhoneNumber;
-
-        initializeIterator();
-        while (hasNext()) {
-            currentPhoneNumber = next().getPhone();
-            if (!phoneNumberFrequency.add(currentPhoneNumber))
-                return true;
-        }
-
-        return false;
-    }
+    @Override
+    Iterator<Contact> iterator();
 }
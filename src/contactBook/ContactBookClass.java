@@ -0,0 +1,885 @@
+package contactBook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Implementation of the ContactBook, keeping the contacts in a storage engine in insertion order,
+ * with hash indexes by name and by phone number.
+ * It is not thread-safe: a book shared by several threads must be wrapped in a ConcurrentContactBook.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ContactBookClass implements ContactBook {
+    private static final int DEFAULT_SIZE = 100;
+    // The contacts are compacted when at least 1/COMPACTION_RATIO of their used positions are deleted
+    private static final int COMPACTION_RATIO = 4;
+
+    private int counter;
+    // Keeps the data of the contacts, in positions that follow the insertion order
+    private ContactStorage contacts;
+    // Number of positions of contacts in use, including the ones of deleted contacts
+    private int used;
+    private int currentContact;
+    // Number of compactions so far, so that iterators notice that the positions changed
+    private int compactions;
+    // Maps every contact name to its index in contacts, which keeps the insertion order
+    private NameIndex nameIndex;
+    // Maps every phone number to the indexes of the contacts that have it, oldest first
+    private PhoneIndex phoneIndex;
+    // Finds the contacts by name prefix; only built by the first prefix search, and kept up to date since then
+    private volatile NameTrie nameTrie;
+    // Finds the contacts by email and counts them by domain; only built by the first search, like nameTrie
+    private volatile EmailIndex emailIndex;
+    // Ranks the contacts in alphabetical order; only built by the first rank query, like nameTrie
+    private volatile NameTree nameTree;
+    // Finds the contacts with names similar to a given one; only built by the first search, like nameTrie
+    private volatile TrigramIndex trigramIndex;
+    // Told about every change before it is applied
+    private ContactBookListener[] listeners;
+    // Probe lengths of the indexes and resizes of the storage
+    private final ContactBookStatistics statistics;
+    // Insertion number of every contact, by index, which increases with the index and survives compactions
+    private long[] sequences;
+    // Sequence number of the next contact to add
+    private long nextSequence;
+
+    /**
+     * Initializes all the variables, keeping the contacts as Contact objects (in an ArrayStorage).
+     */
+    public ContactBookClass() {
+        this(new ArrayStorage());
+    }
+
+    /**
+     * Initializes all the variables, keeping the contacts in the given storage engine.
+     * In the beginning there are no contacts (so counter and used are 0),
+     * and we are not iterating yet, so currentContact is -1.
+     * @pre storage != null, and storage was never used by another book
+     * @param storage - the storage engine of the contacts.
+     */
+    public ContactBookClass(ContactStorage storage) {
+        this(storage, new ContactBookStatistics());
+    }
+
+    /**
+     * Initializes a shard of a ShardedContactBook, which records its statistics in the given ones,
+     * shared by all the shards.
+     * @pre storage != null && statistics != null, and storage was never used by another book
+     * @param storage - the storage engine of the contacts.
+     * @param statistics - the statistics of the sharded book.
+     */
+    ContactBookClass(ContactStorage storage, ContactBookStatistics statistics) {
+        counter = 0;
+        used = 0;
+        compactions = 0;
+        contacts = storage;
+        contacts.resize(DEFAULT_SIZE);
+        currentContact = -1;
+        this.statistics = statistics;
+        statistics.allocated(contacts.capacity());
+        contacts.attach(statistics);
+        sequences = new long[contacts.capacity()];
+        nextSequence = 0;
+        nameIndex = new NameIndex(DEFAULT_SIZE, contacts, statistics.getNameProbes());
+        phoneIndex = new PhoneIndex(DEFAULT_SIZE, statistics.getPhoneProbes());
+        nameTrie = null;
+        emailIndex = null;
+        nameTree = null;
+        trigramIndex = null;
+        listeners = new ContactBookListener[0];
+    }
+
+    /**
+     * Registers a listener that is told about every change to the contacts, before it is applied.
+     * @pre listener != null
+     * @param listener - the listener to register.
+     */
+    @Override
+    public void addListener(ContactBookListener listener) {
+        ContactBookListener[] tmp = new ContactBookListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, tmp, 0, listeners.length);
+        tmp[listeners.length] = listener;
+        listeners = tmp;
+    }
+
+    /**
+     * Evaluates if there is a contact with the given name.
+     * @pre: name != null
+     * @param name - the given contact name.
+     * @return true if there is a contact with the given name, false otherwise.
+     */
+    @Override
+    public boolean hasContact(String name) {
+        return searchIndex(name) >= 0;
+    }
+
+    /**
+     * Evaluates if there is a contact with the given phone number.
+     * @param number - the given phone number.
+     * @return true if there is a contact with the given phone number, false otherwise.
+     */
+    @Override
+    public boolean hasContact(int number) {
+    	return searchIndex(number) >= 0;
+    }
+
+    /**
+     * Returns the number of contacts registered at the moment.
+     * @return the number of contacts registered at the moment.
+     */
+    @Override
+    public int getNumberOfContacts() {
+        return counter;
+    }
+
+    /**
+     * Returns the contact with the given name, or null if there is no such contact.
+     * Allows checking and reading a contact with a single lookup.
+     * @pre name != null
+     * @param name - the given contact name.
+     * @return the contact with the given name, or null if there is no such contact.
+     */
+    @Override
+    public Contact getContact(String name) {
+        int index = searchIndex(name);
+        return index >= 0 ? contacts.get(index) : null;
+    }
+
+    /**
+     * Returns the first contacts, in alphabetical order, whose name starts with the given prefix.
+     * The first call builds an index of the names, which is kept up to date from then on, so the
+     * following calls cost time proportional to the length of the prefix plus the number of contacts found.
+     * @pre prefix != null && limit >= 0
+     * @param prefix - the beginning of the names.
+     * @param limit - the maximum number of contacts to return.
+     * @return the first contacts whose name starts with the prefix, at most limit of them.
+     */
+    @Override
+    public List<Contact> getContactsByPrefix(String prefix, int limit) {
+        List<Contact> result = new ArrayList<>(Math.min(limit, counter));
+        nameTrie().startingWith(prefix, limit, result);
+        return result;
+    }
+
+    /**
+     * Returns the contacts whose names are closest to the given one. The first call of this method
+     * builds an index of the trigrams and of the lengths of the names, which is kept up to date from
+     * then on, so only the contacts that share trigrams with the given name (or, if it has few of
+     * them, whose names have about its length) are compared with it.
+     * @pre name != null && limit >= 0
+     * @param name - the searched name.
+     * @param limit - the maximum number of contacts to return.
+     * @return the contacts with the closest names, the closest first, at most limit of them.
+     */
+    @Override
+    public List<Contact> getSimilarContacts(String name, int limit) {
+        int[] found = trigramIndex().search(name, limit);
+        List<Contact> result = new ArrayList<>(found.length);
+        for (int index : found)
+            result.add(contacts.get(index));
+        return result;
+    }
+
+    /**
+     * Returns the oldest contact with the given email, or null if there is no such contact.
+     * The first call of this method or of countContactsInDomain builds an index of the emails,
+     * which is kept up to date from then on.
+     * @pre email != null
+     * @param email - the given email.
+     * @return the oldest contact with the given email, or null if there is no such contact.
+     */
+    @Override
+    public Contact getContactByEmail(String email) {
+        int index = emailIndex().oldest(email);
+        return index >= 0 ? contacts.get(index) : null;
+    }
+
+    /**
+     * Returns the number of contacts whose email is in the given domain (the text after the last '@'
+     * of the email), ignoring case.
+     * @pre domain != null
+     * @param domain - the given domain, such as "fct.unl.pt".
+     * @return the number of contacts whose email is in the given domain.
+     */
+    @Override
+    public int countContactsInDomain(String domain) {
+        return emailIndex().countDomain(domain);
+    }
+
+    /**
+     * Returns the number of contacts whose name comes before the given one in alphabetical order.
+     * The first call of this method, getContactsByRank or getContactsBetween builds an index of the
+     * names in alphabetical order, which is kept up to date from then on, so they cost logarithmic
+     * time (plus the number of contacts returned).
+     * @pre name != null
+     * @param name - the given name.
+     * @return the number of contacts whose name comes before the given one.
+     */
+    @Override
+    public int getRank(String name) {
+        return nameTree().rank(name);
+    }
+
+    /**
+     * Returns the contacts in alphabetical order, from the given position on.
+     * @pre rank >= 0 && limit >= 0
+     * @param rank - the position of the first contact, 0 for the first name.
+     * @param limit - the maximum number of contacts to return.
+     * @return the contacts from the given position on, at most limit of them.
+     */
+    @Override
+    public List<Contact> getContactsByRank(int rank, int limit) {
+        NameTree tree = nameTree();
+        int end = (int) Math.min(counter, (long) rank + limit);
+        List<Contact> result = new ArrayList<>(Math.max(end - rank, 0));
+        for (int i=rank; i<end; i++)
+            result.add(contacts.get(tree.select(i)));
+        return result;
+    }
+
+    /**
+     * Returns the contacts whose names are between the given ones (both included), in alphabetical order.
+     * @pre from != null && to != null && limit >= 0
+     * @param from - the first name.
+     * @param to - the last name.
+     * @param limit - the maximum number of contacts to return.
+     * @return the contacts whose names are between from and to, at most limit of them.
+     */
+    @Override
+    public List<Contact> getContactsBetween(String from, String to, int limit) {
+        NameTree tree = nameTree();
+        int first = tree.rank(from);
+        int end = tree.rank(to) + (searchIndex(to) >= 0 ? 1 : 0);
+        return getContactsByRank(first, Math.min(limit, Math.max(end - first, 0)));
+    }
+
+    /**
+     * Adds a new contact in the system with the given arguments, if none has the given name.
+     * @pre name != null && !hasContact(name)
+     * @param name - the given contact name.
+     * @param phone - the given phone number.
+     * @param email - the given contact email.
+     */
+    @Override
+    public void addContact(String name, int phone, String email) {
+        for (ContactBookListener listener : listeners)
+            listener.contactAdded(name, phone, email);
+        if (used == contacts.capacity())
+            resize();
+        contacts.add(used, name, phone, email);
+        nameIndex.add(used, name.hashCode());
+        phoneIndex.add(phone, used);
+        if (nameTrie != null)
+            nameTrie.add(name, used);
+        if (emailIndex != null)
+            emailIndex.add(used, email);
+        if (nameTree != null)
+            nameTree.add(used);
+        if (trigramIndex != null)
+            trigramIndex.add(used);
+        sequences[used] = nextSequence++;
+        used++;
+        counter++;
+    }
+
+    /**
+     * Adds a new contact to this shard, with the given sequence number.
+     * @pre name != null && !hasContact(name), and sequence is larger than the ones of all the contacts
+     * @param name - the given contact name.
+     * @param phone - the given phone number.
+     * @param email - the given contact email.
+     * @param sequence - the global insertion number of the contact.
+     */
+    void addContact(String name, int phone, String email, long sequence) {
+        nextSequence = sequence;
+        addContact(name, phone, email);
+    }
+
+    /**
+     * Makes room for the given number of contacts, so that the book does not grow again
+     * until it has that many. Deleted contacts still take room until they are compacted.
+     * @pre capacity >= 0
+     * @param capacity - the number of contacts to make room for.
+     */
+    @Override
+    public void ensureCapacity(int capacity) {
+        if (capacity > contacts.capacity())
+            grow(capacity);
+    }
+
+    /**
+     * Deletes a contact in the system with the given name (it's identifier), if there is a contact with such a name.
+     * The position of the contact is only marked as deleted, and the contacts are compacted
+     * once enough positions are deleted, so deleting costs constant amortized time.
+     * @pre name != null && hasContact(name)
+     * @param name - the given contact name.
+     */
+    @Override
+    public void deleteContact(String name) {
+        remove(name);
+        compactIfSparse();
+    }
+
+    /**
+     * Marks the position of the contact with the given name as deleted, without compacting.
+     * @pre name != null && hasContact(name)
+     * @param name - the given contact name.
+     */
+    private void remove(String name) {
+        for (ContactBookListener listener : listeners)
+            listener.contactDeleted(name);
+        int index = nameIndex.find(name);
+        nameIndex.remove(index);
+        phoneIndex.remove(contacts.getPhone(index), index);
+        if (nameTrie != null)
+            nameTrie.remove(index);
+        if (emailIndex != null)
+            emailIndex.remove(index);
+        if (nameTree != null)
+            nameTree.remove(index);
+        if (trigramIndex != null)
+            trigramIndex.remove(index);
+        contacts.delete(index);
+        counter--;
+    }
+
+    /**
+     * Compacts the contacts if enough of their used positions are deleted.
+     */
+    private void compactIfSparse() {
+        if (used > counter && COMPACTION_RATIO * (used - counter) >= used)
+            compact();
+    }
+
+    /**
+     * Moves all the contacts to the first positions, removing the positions of the
+     * deleted contacts and keeping the insertion order. An iteration in progress continues
+     * from the same contact, while the iterators returned by iterator() are invalidated.
+     */
+    public void compact() {
+        int j = 0;
+        int cursor = currentContact;
+        for (int i=0; i<used; i++) {
+            if (i == currentContact)
+                cursor = j;
+            if (!contacts.isDeleted(i)) {
+                if (i != j) {
+                    contacts.move(i, j);
+                    nameIndex.move(i, j);
+                    phoneIndex.move(contacts.getPhone(j), i, j);
+                    if (nameTrie != null)
+                        nameTrie.move(i, j);
+                    if (emailIndex != null)
+                        emailIndex.move(i, j);
+                    if (nameTree != null)
+                        nameTree.move(i, j);
+                    if (trigramIndex != null)
+                        trigramIndex.move(i, j);
+                    sequences[j] = sequences[i];
+                }
+                j++;
+            }
+        }
+        if (currentContact >= used)
+            cursor = j;
+        contacts.release(j);
+        used = j;
+        currentContact = cursor;
+        compactions++;
+    }
+
+    /**
+     * Returns the phone number of the contact with the given name, if there is a contact with such a name.
+     * @pre name != null && hasContact(name)
+     * @param name - the given contact name.
+     * @return the phone number of the contact with the given name, if there is a contact with such a name.
+     */
+    @Override
+    public int getPhone(String name) {
+        return contacts.getPhone(searchIndex(name));
+    }
+
+    /**
+     * Returns the email of the contact with the given name, if there is a contact with such a name.
+     * @pre name != null && hasContact(name)
+     * @param name - the given contact name.
+     * @return the email of the contact with the given name, if there is a contact with such a name.
+     */
+    @Override
+    public String getEmail(String name) {
+        return contacts.getEmail(searchIndex(name));
+    }
+
+    /**
+     * Returns the name of the oldest contact with the given phone number,
+     * if there is a contact with such a phone number.
+     * @pre hasContact(number)
+     * @param number - the given phone number.
+     * @return the name of the oldest contact with the given phone number,
+     * if there is a contact with such a phone number.
+     */
+    @Override
+    public String getName(int number) {
+    	return contacts.getName(searchIndex(number));
+    }
+
+    /**
+     * Sets the given phone number to the contact with the given name, if there is a contact with such a name.
+     * @pre name != null && hasContact(name)
+     * @param name - the given contact name.
+     * @param phone - the given phone number.
+     */
+    @Override
+    public void setPhone(String name, int phone) {
+        for (ContactBookListener listener : listeners)
+            listener.phoneChanged(name, phone);
+        int index = searchIndex(name);
+        int old = contacts.getPhone(index);
+        if (old != phone) {
+            phoneIndex.remove(old, index);
+            contacts.setPhone(index, phone);
+            phoneIndex.add(phone, index);
+        }
+    }
+
+    /**
+     * Sets the given email to the contact with the given name, if there is a contact with such a name.
+     * @pre name != null && hasContact(name)
+     * @param name - the given contact name.
+     * @param email - the given contact email.
+     */
+    @Override
+    public void setEmail(String name, String email) {
+        for (ContactBookListener listener : listeners)
+            listener.emailChanged(name, email);
+        int index = searchIndex(name);
+        if (emailIndex != null)
+            emailIndex.remove(index);
+        contacts.setEmail(index, email);
+        if (emailIndex != null)
+            emailIndex.add(index, email);
+    }
+
+    @Override
+    public boolean tryAddContact(String name, int phone, String email) {
+        if (hasContact(name))
+            return false;
+        addContact(name, phone, email);
+        return true;
+    }
+
+    @Override
+    public boolean tryDeleteContact(String name) {
+        if (!hasContact(name))
+            return false;
+        deleteContact(name);
+        return true;
+    }
+
+    @Override
+    public boolean trySetPhone(String name, int phone) {
+        if (!hasContact(name))
+            return false;
+        setPhone(name, phone);
+        return true;
+    }
+
+    @Override
+    public boolean trySetEmail(String name, String email) {
+        if (!hasContact(name))
+            return false;
+        setEmail(name, email);
+        return true;
+    }
+
+    /**
+     * Applies the batch in a single pass over its changes: the storage and the indexes grow once,
+     * for all the contacts it adds, and the contacts are compacted, if needed, only at the end.
+     * @pre batch != null, and batch was not applied before
+     * @param batch - the changes to apply.
+     */
+    @Override
+    public void applyBatch(ContactBatch batch) {
+        apply(batch, batch.validate(this::hasContact));
+    }
+
+    /**
+     * Applies the changes of a validated batch that are marked as applied.
+     * @pre batch was validated against this book, and adds the given number of contacts
+     * @param batch - the changes to apply.
+     * @param added - the number of contacts the batch adds.
+     */
+    void apply(ContactBatch batch, int added) {
+        if (used + added > contacts.capacity())
+            grow(Math.max(used + added, 2*contacts.capacity()));
+        for (int i=0; i<batch.size(); i++) {
+            if (!batch.isApplied(i))
+                continue;
+            String name = batch.getName(i);
+            switch (batch.getKind(i)) {
+                case ContactBatch.ADD -> {
+                    if (batch.getSequence(i) >= 0)
+                        nextSequence = batch.getSequence(i);
+                    addContact(name, batch.getPhone(i), batch.getEmail(i));
+                }
+                case ContactBatch.DELETE -> remove(name);
+                case ContactBatch.SET_PHONE -> setPhone(name, batch.getPhone(i));
+                default -> setEmail(name, batch.getEmail(i));
+            }
+        }
+        compactIfSparse();
+    }
+
+    @Override
+    public String findName(int number) {
+        int index = searchIndex(number);
+        return index >= 0 ? contacts.getName(index) : null;
+    }
+
+    /**
+     * Returns the index of the contact with the given name, or -1 if not found.
+     * @pre name != null
+     * @param name - the given contact name.
+     * @return the index of the contact with the given name, or -1 if not found.
+     */
+    private int searchIndex(String name) {
+        return nameIndex.find(name);
+    }
+
+    /**
+     * Fills this empty book with the contacts of a snapshot. Only the phone numbers and name hashes
+     * are read to build the indexes; the storage engine decides how to keep the contacts.
+     * @pre this book is new
+     * @param snapshot - the loaded snapshot.
+     */
+    void load(ContactBookSnapshot snapshot) {
+        int size = snapshot.size();
+        if (size > contacts.capacity()) {
+            int from = contacts.capacity();
+            contacts.resize(size);
+            statistics.resized(from, contacts.capacity());
+            sequences = Arrays.copyOf(sequences, contacts.capacity());
+        }
+        nameIndex.ensureCapacity(contacts.capacity());
+        phoneIndex.ensureCapacity(contacts.capacity());
+        contacts.load(snapshot);
+        for (int i=0; i<size; i++) {
+            nameIndex.add(i, snapshot.nameHash(i));
+            phoneIndex.add(snapshot.phone(i), i);
+            sequences[i] = i;
+        }
+        used = size;
+        counter = size;
+        nextSequence = size;
+    }
+
+    /**
+     * Returns the index of the oldest contact of this shard with the given phone number, or -1 if not found.
+     * @param number - the given phone number.
+     * @return the index of the oldest contact with the given phone number, or -1 if not found.
+     */
+    int indexOf(int number) {
+        return searchIndex(number);
+    }
+
+    /**
+     * Returns the index of the oldest contact of this shard with the given email, or -1 if not found.
+     * @pre email != null
+     * @param email - the given email.
+     * @return the index of the oldest contact with the given email, or -1 if not found.
+     */
+    int indexOfEmail(String email) {
+        return emailIndex().oldest(email);
+    }
+
+    /**
+     * Returns the first index whose contact (deleted or not) has at least the given sequence number,
+     * by binary search, since the sequence numbers increase with the index.
+     * @param sequence - the sequence number.
+     * @return the first index with at least the given sequence number, or the number of used indexes.
+     */
+    int indexFrom(long sequence) {
+        int low = 0;
+        int high = used;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sequences[middle] < sequence)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the first index, from the given one on, that holds a contact, or -1 if there is none.
+     * Indexes are only valid until the next compaction.
+     * @param from - the first index to look at.
+     * @return the first index of a contact that is not below from, or -1 if there is none.
+     */
+    int nextIndex(int from) {
+        for (int i=from; i<used; i++)
+            if (!contacts.isDeleted(i))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Returns the contact at the given index.
+     * @pre index holds a contact
+     * @param index - the index of the contact.
+     * @return the contact at the given index.
+     */
+    Contact contactAt(int index) {
+        return contacts.get(index);
+    }
+
+    /**
+     * Returns the sequence number of the contact at the given index.
+     * @pre index holds a contact
+     * @param index - the index of the contact.
+     * @return the global insertion number of the contact.
+     */
+    long sequenceAt(int index) {
+        return sequences[index];
+    }
+
+    /**
+     * Returns the number of compactions so far, which invalidate the indexes of the contacts.
+     * @return the number of compactions so far.
+     */
+    int getCompactions() {
+        return compactions;
+    }
+
+    /**
+     * Returns the index of the oldest contact with the given phone number, or -1 if not found.
+     * @param number - the given phone number.
+     * @return the index of the oldest contact with the given phone number, or -1 if not found.
+     */
+    private int searchIndex(int number) {
+        return phoneIndex.oldest(number);
+    }
+
+    /**
+     * Returns the index of the names by prefix, building it the first time. Building it is synchronized,
+     * so that it happens once even if several readers of a ConcurrentContactBook search at the same time.
+     * @return the index of the names by prefix.
+     */
+    private NameTrie nameTrie() {
+        NameTrie trie = nameTrie;
+        if (trie == null)
+            synchronized (this) {
+                trie = nameTrie;
+                if (trie == null) {
+                    trie = new NameTrie(contacts.capacity(), contacts);
+                    for (int i=0; i<used; i++)
+                        if (!contacts.isDeleted(i))
+                            trie.add(contacts.getName(i), i);
+                    nameTrie = trie;
+                }
+            }
+        return trie;
+    }
+
+    /**
+     * Returns the index of the emails, building it the first time, as nameTrie() does.
+     * @return the index of the emails.
+     */
+    private EmailIndex emailIndex() {
+        EmailIndex index = emailIndex;
+        if (index == null)
+            synchronized (this) {
+                index = emailIndex;
+                if (index == null) {
+                    index = new EmailIndex(contacts.capacity(), contacts);
+                    for (int i=0; i<used; i++)
+                        if (!contacts.isDeleted(i))
+                            index.add(i, contacts.getEmail(i));
+                    emailIndex = index;
+                }
+            }
+        return index;
+    }
+
+    /**
+     * Returns the index of the names in alphabetical order, building it the first time, as nameTrie() does.
+     * @return the index of the names in alphabetical order.
+     */
+    private NameTree nameTree() {
+        NameTree tree = nameTree;
+        if (tree == null)
+            synchronized (this) {
+                tree = nameTree;
+                if (tree == null) {
+                    tree = new NameTree(contacts.capacity(), contacts);
+                    for (int i=0; i<used; i++)
+                        if (!contacts.isDeleted(i))
+                            tree.add(i);
+                    nameTree = tree;
+                }
+            }
+        return tree;
+    }
+
+    /**
+     * Returns the index of the trigrams of the names, building it the first time, as nameTrie() does.
+     * @return the index of the trigrams of the names.
+     */
+    private TrigramIndex trigramIndex() {
+        TrigramIndex index = trigramIndex;
+        if (index == null)
+            synchronized (this) {
+                index = trigramIndex;
+                if (index == null) {
+                    index = new TrigramIndex(contacts.capacity(), contacts);
+                    for (int i=0; i<used; i++)
+                        if (!contacts.isDeleted(i))
+                            index.add(i);
+                    trigramIndex = index;
+                }
+            }
+        return index;
+    }
+
+    /**
+     * Auxiliary method to help the contacts storage grow when needed.
+     */
+    private void resize() {
+        grow(2*contacts.capacity());
+    }
+
+    /**
+     * Grows the contacts storage, and the indexes over it, to the given capacity.
+     * @pre capacity > contacts.capacity()
+     * @param capacity - the new capacity.
+     */
+    private void grow(int capacity) {
+        int from = contacts.capacity();
+        contacts.resize(capacity);
+        statistics.resized(from, contacts.capacity());
+        sequences = Arrays.copyOf(sequences, contacts.capacity());
+        nameIndex.ensureCapacity(contacts.capacity());
+        phoneIndex.ensureCapacity(contacts.capacity());
+        if (nameTrie != null)
+            nameTrie.ensureCapacity(contacts.capacity());
+        if (emailIndex != null)
+            emailIndex.ensureCapacity(contacts.capacity());
+        if (nameTree != null)
+            nameTree.ensureCapacity(contacts.capacity());
+        if (trigramIndex != null)
+            trigramIndex.ensureCapacity(contacts.capacity());
+    }
+
+    /**
+     * Gives to the action, from the oldest to the most recent one, up to limit contacts, starting
+     * at the one with the given cursor. The cursor is found by binary search, so a page costs
+     * logarithmic time plus the time of its contacts, wherever it is in the book.
+     * @pre limit >= 0 && action != null, and action does not change the book
+     * @param cursor - the cursor of the first contact, 0 for the oldest one.
+     * @param limit - the maximum number of contacts to give.
+     * @param action - what to do with every contact.
+     * @return the cursor of the contact after the last one given, or -1 if there is none.
+     */
+    @Override
+    public long listContacts(long cursor, int limit, Consumer<Contact> action) {
+        int index = nextIndex(indexFrom(cursor));
+        for (int listed=0; listed<limit && index >= 0; listed++) {
+            action.accept(contacts.get(index));
+            index = nextIndex(index + 1);
+        }
+        return index >= 0 ? sequences[index] : -1;
+    }
+
+    @Override
+    public ContactBookStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Initializes the iterator, such that the first contact to iterate is the oldest one.
+     */
+    @Override
+    public void initializeIterator() {
+        currentContact = 0;
+    }
+
+    /**
+     * Evaluates if there is at least one more contact to iterate.
+     * @return true if there is at least one more contact to iterate, false otherwise.
+     */
+    @Override
+    public boolean hasNext() {
+        if (currentContact < 0)
+            return false;
+        while (currentContact < used && contacts.isDeleted(currentContact))
+            currentContact++;
+        return currentContact < used;
+    }
+
+    /**
+     * Returns the next contact to iterate.
+     * @pre hasNext()
+     * @return the next Contact object to iterate.
+     */
+    @Override
+    public Contact next() {
+        while (contacts.isDeleted(currentContact))
+            currentContact++;
+        return contacts.get(currentContact++);
+    }
+
+    /**
+     * Evaluates if there are at least two contacts with the same phone number.
+     * The phone index keeps the number of contacts of every phone number up to date,
+     * so this needs no search and does not disturb the iterator.
+     * @return true if there are contacts that share phone numbers, false otherwise.
+     */
+    @Override
+    public boolean hasEqualPhones() {
+        return phoneIndex.hasSharedNumbers();
+    }
+
+    /**
+     * Returns a new iterator of all the contacts, from the oldest to the most recent one.
+     * It walks the positions of the contacts on its own, so it is independent from initializeIterator,
+     * hasNext and next, and from any other iterator. Contacts added while iterating are also iterated.
+     * @return a new iterator of all the contacts.
+     * @throws ConcurrentModificationException from its next method, if the contacts were compacted
+     * since the iterator was created.
+     */
+    @Override
+    public Iterator<Contact> iterator() {
+        return new Iterator<>() {
+            private final int expectedCompactions = compactions;
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                checkForCompaction();
+                while (position < used && contacts.isDeleted(position))
+                    position++;
+                return position < used;
+            }
+
+            @Override
+            public Contact next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return contacts.get(position++);
+            }
+
+            private void checkForCompaction() {
+                if (compactions != expectedCompactions)
+                    throw new ConcurrentModificationException();
+            }
+        };
+    }
+}
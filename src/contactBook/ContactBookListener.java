@@ -0,0 +1,39 @@
+package contactBook;
+
+/**
+ * Receives the changes made to a ContactBook, before they are applied.
+ * Listeners are called on the thread that changes the book, so they must be quick.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public interface ContactBookListener {
+
+    /**
+     * A contact is about to be added.
+     * @param name - the contact name.
+     * @param phone - the contact phone number.
+     * @param email - the contact email.
+     */
+    void contactAdded(String name, int phone, String email);
+
+    /**
+     * A contact is about to be deleted.
+     * @param name - the contact name.
+     */
+    void contactDeleted(String name);
+
+    /**
+     * The phone number of a contact is about to change.
+     * @param name - the contact name.
+     * @param phone - the new phone number.
+     */
+    void phoneChanged(String name, int phone);
+
+    /**
+     * The email of a contact is about to change.
+     * @param name - the contact name.
+     * @param email - the new email.
+     */
+    void emailChanged(String name, String email);
+}
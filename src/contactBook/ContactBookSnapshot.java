@@ -0,0 +1,322 @@
+package contactBook;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ConcurrentModificationException;
+
+/**
+ * Compact binary image of a whole ContactBook, written with a FileChannel and loaded by mapping the
+ * file in memory, so a large book comes back online without parsing text or replaying commands.
+ * The file has a header (magic number, version, number of contacts and the generation of the
+ * WriteAheadLog whose changes it already has, if any), three fixed width columns
+ * (phone numbers, name hash codes and the offset of every name and email) and then the names and
+ * emails, as length-prefixed UTF-8, in insertion order. No record crosses a 1 GiB boundary of that
+ * last region, so it is mapped in 1 GiB segments.
+ * Loading only reads the phone and hash columns, to build the indexes of the book; every Contact is
+ * decoded from the mapped file the first time it is used.
+ * A snapshot of the first version, whose header has no log generation, loads as one without a log.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ContactBookSnapshot {
+    private static final int MAGIC = 0x43425350;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 20;
+    // The first version had no log generation in the header
+    private static final int FIRST_VERSION = 1;
+    private static final int FIRST_HEADER_SIZE = 12;
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final int size;
+    private final IntBuffer phones;
+    private final IntBuffer hashes;
+    private final LongBuffer offsets;
+    private final MappedByteBuffer[] segments;
+
+    private ContactBookSnapshot(int size, IntBuffer phones, IntBuffer hashes, LongBuffer offsets,
+                                MappedByteBuffer[] segments) {
+        this.size = size;
+        this.phones = phones;
+        this.hashes = hashes;
+        this.offsets = offsets;
+        this.segments = segments;
+    }
+
+    /**
+     * Writes all the contacts of the given book to the given file, in insertion order, as a snapshot
+     * that has none of the changes of any log.
+     * @pre book != null && file != null
+     * @param book - the book to save.
+     * @param file - the snapshot file.
+     * @throws IOException if the file cannot be written, or a contact is larger than 1 GiB.
+     * @throws ConcurrentModificationException if the book changes while it is written.
+     */
+    public static void write(ContactBook book, Path file) throws IOException {
+        write(book, file, WriteAheadLog.NO_GENERATION);
+    }
+
+    /**
+     * Writes all the contacts of the given book to the given file, in insertion order.
+     * The snapshot is written to a temporary file first, and then moved over the given one,
+     * so a crash never leaves a half written snapshot behind. The snapshot records that it has all
+     * the changes of the given generation of the log, so that they are not replayed over it if the
+     * program stops before the log is reset.
+     * @pre book != null && file != null
+     * @param book - the book to save.
+     * @param file - the snapshot file.
+     * @param logGeneration - the generation of the log of the book, or WriteAheadLog.NO_GENERATION.
+     * @throws IOException if the file cannot be written, or a contact is larger than 1 GiB.
+     * @throws ConcurrentModificationException if the book changes while it is written.
+     */
+    public static void write(ContactBook book, Path file, long logGeneration) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = book.getNumberOfContacts();
+        long phonesStart = HEADER_SIZE;
+        long hashesStart = phonesStart + 4L * count;
+        long offsetsStart = hashesStart + 4L * count;
+        long stringsStart = offsetsStart + 8L * count;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putLong(logGeneration).flip();
+            write(channel, header, 0);
+
+            ByteBuffer phoneColumn = ByteBuffer.allocate(BUFFER_SIZE);
+            ByteBuffer hashColumn = ByteBuffer.allocate(BUFFER_SIZE);
+            ByteBuffer offsetColumn = ByteBuffer.allocate(BUFFER_SIZE);
+            ByteBuffer strings = ByteBuffer.allocate(BUFFER_SIZE);
+            long offset = 0;
+            int written = 0;
+            for (Contact contact : book) {
+                if (written == count)
+                    throw new ConcurrentModificationException();
+                byte[] name = contact.getName().getBytes(StandardCharsets.UTF_8);
+                byte[] email = contact.getEmail().getBytes(StandardCharsets.UTF_8);
+                int length = 8 + name.length + email.length;
+                if (length > SEGMENT_SIZE)
+                    throw new IOException("Contact too large for a snapshot: " + contact.getName());
+                long position = offset + strings.position();
+                if ((position >>> SEGMENT_BITS) != ((position + length - 1) >>> SEGMENT_BITS)) {
+                    // Skips to the next segment, leaving a hole in the file
+                    offset = drain(channel, strings, stringsStart, offset);
+                    offset += SEGMENT_SIZE - (offset & (SEGMENT_SIZE - 1));
+                    position = offset;
+                }
+                else if (strings.remaining() < length) {
+                    offset = drain(channel, strings, stringsStart, offset);
+                    position = offset;
+                }
+                if (phoneColumn.remaining() < 4) {
+                    write(channel, phoneColumn.flip(), phonesStart + 4L * written - phoneColumn.limit());
+                    phoneColumn.clear();
+                    write(channel, hashColumn.flip(), hashesStart + 4L * written - hashColumn.limit());
+                    hashColumn.clear();
+                }
+                if (offsetColumn.remaining() < 8) {
+                    write(channel, offsetColumn.flip(), offsetsStart + 8L * written - offsetColumn.limit());
+                    offsetColumn.clear();
+                }
+                phoneColumn.putInt(contact.getPhone());
+                hashColumn.putInt(contact.getName().hashCode());
+                offsetColumn.putLong(position);
+                written++;
+                ByteBuffer target = length <= strings.capacity() ? strings : ByteBuffer.allocate(length);
+                target.putInt(name.length).put(name).putInt(email.length).put(email);
+                if (target != strings)
+                    offset += write(channel, target.flip(), stringsStart + offset);
+            }
+            if (written != count)
+                throw new ConcurrentModificationException();
+            write(channel, phoneColumn.flip(), phonesStart + 4L * written - phoneColumn.limit());
+            write(channel, hashColumn.flip(), hashesStart + 4L * written - hashColumn.limit());
+            write(channel, offsetColumn.flip(), offsetsStart + 8L * written - offsetColumn.limit());
+            drain(channel, strings, stringsStart, offset);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the book saved in the given file. Only the phone numbers and the name hash codes are read
+     * now; the contacts are decoded from the mapped file when first used.
+     * @pre file != null
+     * @param file - the snapshot file.
+     * @return the book saved in the file.
+     * @throws IOException if the file cannot be read or is not a contact book snapshot.
+     */
+    public static ContactBook load(Path file) throws IOException {
+        return load(file, new ArrayStorage());
+    }
+
+    /**
+     * Loads the book saved in the given file into a book with the given storage engine.
+     * @pre file != null && storage != null, and storage was never used by another book
+     * @param file - the snapshot file.
+     * @param storage - the storage engine of the loaded book.
+     * @return the book saved in the file.
+     * @throws IOException if the file cannot be read or is not a contact book snapshot.
+     */
+    public static ContactBook load(Path file, ContactStorage storage) throws IOException {
+        ContactBookSnapshot snapshot;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            int count = header.getInt(8);
+            long phonesStart = header.limit();
+            long hashesStart = phonesStart + 4L * count;
+            long offsetsStart = hashesStart + 4L * count;
+            long stringsStart = offsetsStart + 8L * count;
+            long stringsSize = channel.size() - stringsStart;
+            if (count < 0 || stringsSize < 0)
+                throw new IOException("Truncated contact book snapshot");
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((stringsSize + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, stringsStart + start,
+                        Math.min(SEGMENT_SIZE, stringsSize - start));
+            }
+            snapshot = new ContactBookSnapshot(count,
+                    channel.map(FileChannel.MapMode.READ_ONLY, phonesStart, 4L * count).asIntBuffer(),
+                    channel.map(FileChannel.MapMode.READ_ONLY, hashesStart, 4L * count).asIntBuffer(),
+                    channel.map(FileChannel.MapMode.READ_ONLY, offsetsStart, 8L * count).asLongBuffer(),
+                    segments);
+        }
+        ContactBookClass book = new ContactBookClass(storage);
+        book.load(snapshot);
+        return book;
+    }
+
+    /**
+     * Returns the generation of the log whose changes the snapshot in the given file already has.
+     * @pre file != null
+     * @param file - the snapshot file.
+     * @return the generation of the log, or WriteAheadLog.NO_GENERATION if the snapshot has no log.
+     * @throws IOException if the file cannot be read or is not a contact book snapshot.
+     */
+    public static long getLogGeneration(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            return header.limit() == HEADER_SIZE ? header.getLong(12) : WriteAheadLog.NO_GENERATION;
+        }
+    }
+
+    /**
+     * Reads and checks the header of a snapshot, of either version.
+     * @param channel - the snapshot file.
+     * @return the header, whose limit is its size.
+     * @throws IOException if the file cannot be read or is not a contact book snapshot.
+     */
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < FIRST_HEADER_SIZE || header.getInt(0) != MAGIC)
+            throw new IOException("Not a contact book snapshot");
+        int version = header.getInt(4);
+        if (version == FIRST_VERSION)
+            return header.limit(FIRST_HEADER_SIZE);
+        if (version != VERSION || header.remaining() < HEADER_SIZE)
+            throw new IOException("Not a contact book snapshot");
+        return header;
+    }
+
+    /**
+     * Returns the number of contacts in the snapshot.
+     * @return the number of contacts in the snapshot.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the phone number of the contact at the given position.
+     * @pre 0 <= index < size()
+     * @param index - the position of the contact.
+     * @return the phone number of the contact.
+     */
+    int phone(int index) {
+        return phones.get(index);
+    }
+
+    /**
+     * Returns the hash code of the name of the contact at the given position.
+     * @pre 0 <= index < size()
+     * @param index - the position of the contact.
+     * @return the hash code of the name of the contact.
+     */
+    int nameHash(int index) {
+        return hashes.get(index);
+    }
+
+    /**
+     * Decodes the contact at the given position from the mapped file.
+     * @pre 0 <= index < size()
+     * @param index - the position of the contact.
+     * @return a new Contact with the data of the contact.
+     */
+    Contact decode(int index) {
+        long offset = offsets.get(index);
+        MappedByteBuffer segment = segments[(int) (offset >>> SEGMENT_BITS)];
+        int position = (int) (offset & (SEGMENT_SIZE - 1));
+        int nameLength = segment.getInt(position);
+        String name = decodeString(segment, position + 4, nameLength);
+        position += 4 + nameLength;
+        int emailLength = segment.getInt(position);
+        String email = decodeString(segment, position + 4, emailLength);
+        return new Contact(name, phones.get(index), email);
+    }
+
+    /**
+     * Returns the record (name and email, as length-prefixed UTF-8) of the contact at the given position,
+     * as a view of the mapped file.
+     * @pre 0 <= index < size()
+     * @param index - the position of the contact.
+     * @return a buffer with the record, from position 0 to its limit.
+     */
+    ByteBuffer record(int index) {
+        long offset = offsets.get(index);
+        MappedByteBuffer segment = segments[(int) (offset >>> SEGMENT_BITS)];
+        int position = (int) (offset & (SEGMENT_SIZE - 1));
+        int nameLength = segment.getInt(position);
+        int length = 8 + nameLength + segment.getInt(position + 4 + nameLength);
+        return segment.slice(position, length);
+    }
+
+    private static String decodeString(MappedByteBuffer segment, int position, int length) {
+        byte[] bytes = new byte[length];
+        segment.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the strings buffer at the end of the strings region and empties it.
+     * @return the offset, in the strings region, after the written bytes.
+     */
+    private static long drain(FileChannel channel, ByteBuffer strings, long stringsStart, long offset) throws IOException {
+        offset += write(channel, strings.flip(), stringsStart + offset);
+        strings.clear();
+        return offset;
+    }
+
+    /**
+     * Writes all the remaining bytes of the buffer at the given file position.
+     * @return the number of bytes written.
+     */
+    private static int write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining())
+            written += channel.write(buffer, position + written);
+        return written;
+    }
+}
@@ -0,0 +1,158 @@
+package contactBook;
+
+import statistics.Histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a ContactBook measures about itself while it works: how many table entries every lookup by name
+ * and by phone number scans before it ends, how many times the storage grew and its current capacity,
+ * and, if the storage caches the contacts (as a TieredStorage), how many reads found them in the cache.
+ * Long scans mean clustered hashes, which is what pathological inputs look like.
+ * It is updated by the book as it works and may be read at any moment, from any thread.
+ * The shards of a ShardedContactBook share one, so it adds up the storages of all of them.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ContactBookStatistics {
+    // Table entries scanned by every lookup in the name and phone indexes
+    private final Histogram nameProbes;
+    private final Histogram phoneProbes;
+    private final AtomicLong resizes;
+    private final AtomicLong capacity;
+    // Bytes the caches of the storages may hold, the bytes they hold, and the reads of the contacts that
+    // found them there or not
+    private final AtomicLong cacheBytes;
+    private final LongAdder cachedBytes;
+    private final LongAdder cacheHits;
+    private final LongAdder cacheMisses;
+
+    /**
+     * Creates the statistics of a book that has no storage yet.
+     */
+    ContactBookStatistics() {
+        nameProbes = new Histogram();
+        phoneProbes = new Histogram();
+        resizes = new AtomicLong();
+        capacity = new AtomicLong();
+        cacheBytes = new AtomicLong();
+        cachedBytes = new LongAdder();
+        cacheHits = new LongAdder();
+        cacheMisses = new LongAdder();
+    }
+
+    /**
+     * Returns the histogram of the table entries scanned by the lookups by name.
+     * @return the histogram of the table entries scanned by the lookups by name.
+     */
+    public Histogram getNameProbes() {
+        return nameProbes;
+    }
+
+    /**
+     * Returns the histogram of the table entries scanned by the lookups by phone number.
+     * @return the histogram of the table entries scanned by the lookups by phone number.
+     */
+    public Histogram getPhoneProbes() {
+        return phoneProbes;
+    }
+
+    /**
+     * Returns how many times the storage grew.
+     * @return how many times the storage grew.
+     */
+    public long getResizes() {
+        return resizes.get();
+    }
+
+    /**
+     * Returns the number of positions of the storage, both used and free.
+     * @return the current capacity of the storage.
+     */
+    public long getCapacity() {
+        return capacity.get();
+    }
+
+    /**
+     * Returns the maximum bytes of the contacts cached by the storage.
+     * @return the maximum bytes of the cache of the storage, or 0 if it does not cache the contacts.
+     */
+    public long getCacheBytes() {
+        return cacheBytes.get();
+    }
+
+    /**
+     * Returns the estimated bytes of the contacts cached by the storage now.
+     * @return the estimated bytes of the contacts in the cache of the storage, or 0 if it has none.
+     */
+    public long getCachedBytes() {
+        return cachedBytes.sum();
+    }
+
+    /**
+     * Returns how many reads of a contact found it in the cache of the storage.
+     * @return the number of cache hits.
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Returns how many reads of a contact did not find it in the cache of the storage, and read it from
+     * the disk.
+     * @return the number of cache misses.
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Registers that a new storage was created with the given capacity.
+     * @param positions - the capacity of the new storage.
+     */
+    void allocated(int positions) {
+        capacity.addAndGet(positions);
+    }
+
+    /**
+     * Registers that a storage grew.
+     * @param from - the capacity of the storage before growing.
+     * @param to - the capacity of the storage after growing.
+     */
+    void resized(int from, int to) {
+        resizes.incrementAndGet();
+        capacity.addAndGet(to - from);
+    }
+
+    /**
+     * Registers that a storage caches its contacts in up to the given number of bytes.
+     * @param bytes - the maximum bytes of the cache.
+     */
+    void cacheAllocated(long bytes) {
+        cacheBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Registers that the contacts cached by a storage grew or shrank by the given number of bytes.
+     * @param bytes - the bytes added to the cache, or the bytes removed from it if negative.
+     */
+    void cacheFilled(long bytes) {
+        cachedBytes.add(bytes);
+    }
+
+    /**
+     * Registers that a read of a contact found it in the cache.
+     */
+    void cacheHit() {
+        cacheHits.increment();
+    }
+
+    /**
+     * Registers that a read of a contact did not find it in the cache.
+     */
+    void cacheMissed() {
+        cacheMisses.increment();
+    }
+}
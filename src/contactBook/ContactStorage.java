@@ -0,0 +1,149 @@
+package contactBook;
+
+/**
+ * Storage engine of a ContactBook: keeps the data of the contacts in numbered positions, while the
+ * book keeps the order of the positions and the indexes over them.
+ * The positions from 0 to capacity() - 1 are either deleted (free) or hold a contact.
+ * Its operations are only used by the ContactBook, so choosing an engine only means giving it to
+ * the ContactBook constructor.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public abstract class ContactStorage {
+
+    /**
+     * Gives the storage the statistics of its book, where it records what it measures about itself.
+     * Engines that measure nothing ignore them.
+     * @pre statistics != null
+     * @param statistics - the statistics of the book.
+     */
+    void attach(ContactBookStatistics statistics) {
+    }
+
+    /**
+     * Returns the number of positions of the storage.
+     * @return the number of positions of the storage.
+     */
+    abstract int capacity();
+
+    /**
+     * Grows the storage to the given number of positions. The new positions are deleted.
+     * @pre capacity > capacity()
+     * @param capacity - the new number of positions.
+     */
+    abstract void resize(int capacity);
+
+    /**
+     * Stores a contact in the given position.
+     * @pre isDeleted(index) && name != null && email != null
+     * @param index - the position of the contact.
+     * @param name - the contact name.
+     * @param phone - the contact phone number.
+     * @param email - the contact email.
+     */
+    abstract void add(int index, String name, int phone, String email);
+
+    /**
+     * Deletes the contact in the given position.
+     * @pre !isDeleted(index)
+     * @param index - the position of the contact.
+     */
+    abstract void delete(int index);
+
+    /**
+     * Evaluates if the given position has no contact.
+     * @param index - the position.
+     * @return true if the position has no contact, false otherwise.
+     */
+    abstract boolean isDeleted(int index);
+
+    /**
+     * Returns the contact in the given position. Engines that do not keep Contact objects
+     * create a new one with a copy of the data.
+     * @pre !isDeleted(index)
+     * @param index - the position of the contact.
+     * @return the contact in the given position.
+     */
+    abstract Contact get(int index);
+
+    /**
+     * Returns the name of the contact in the given position.
+     * @pre !isDeleted(index)
+     * @param index - the position of the contact.
+     * @return the name of the contact.
+     */
+    abstract String getName(int index);
+
+    /**
+     * Returns the phone number of the contact in the given position.
+     * @pre !isDeleted(index)
+     * @param index - the position of the contact.
+     * @return the phone number of the contact.
+     */
+    abstract int getPhone(int index);
+
+    /**
+     * Returns the email of the contact in the given position.
+     * @pre !isDeleted(index)
+     * @param index - the position of the contact.
+     * @return the email of the contact.
+     */
+    abstract String getEmail(int index);
+
+    /**
+     * Evaluates if the contact in the given position has the given name.
+     * @pre !isDeleted(index) && name != null
+     * @param index - the position of the contact.
+     * @param name - the name to compare with.
+     * @return true if the contact has the given name, false otherwise.
+     */
+    abstract boolean hasName(int index, String name);
+
+    /**
+     * Evaluates if the contact in the given position has the given email.
+     * @pre !isDeleted(index) && email != null
+     * @param index - the position of the contact.
+     * @param email - the email to compare with.
+     * @return true if the contact has the given email, false otherwise.
+     */
+    abstract boolean hasEmail(int index, String email);
+
+    /**
+     * Sets the phone number of the contact in the given position.
+     * @pre !isDeleted(index)
+     * @param index - the position of the contact.
+     * @param phone - the new phone number.
+     */
+    abstract void setPhone(int index, int phone);
+
+    /**
+     * Sets the email of the contact in the given position.
+     * @pre !isDeleted(index) && email != null
+     * @param index - the position of the contact.
+     * @param email - the new email.
+     */
+    abstract void setEmail(int index, String email);
+
+    /**
+     * Moves the contact in one position to another, leaving the first one deleted.
+     * @pre !isDeleted(from) && isDeleted(to)
+     * @param from - the current position of the contact.
+     * @param to - the new position of the contact.
+     */
+    abstract void move(int from, int to);
+
+    /**
+     * Tells the storage that the positions from the given one on are no longer in use (after the book
+     * is compacted), so it can release what they hold.
+     * @param from - the first position not in use.
+     */
+    abstract void release(int from);
+
+    /**
+     * Stores the contacts of a snapshot in the positions 0 to snapshot.size() - 1.
+     * @pre capacity() >= snapshot.size(), and all those positions are deleted
+     * @param snapshot - the loaded snapshot.
+     */
+    abstract void load(ContactBookSnapshot snapshot);
+}
@@ -0,0 +1,210 @@
+package contactBook;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Secondary index from emails to the contacts that have them, used by the ContactBook, which also
+ * counts the contacts of every email domain.
+ * Like the phone index, it is an IntHashTable where every distinct email points to a chain of contact
+ * indexes kept sorted by index, so the oldest contact with an email is the head of its chain. The table
+ * keeps only the hash codes of the emails (two emails with the same hash code have an entry each):
+ * emails are only compared when the hashes match, by asking the storage of the book for the email of
+ * the head contact.
+ * The chains, and the email hash of every contact, are stored in arrays indexed by the contact index.
+ * The domain of an email is the text after its last '@', in lower case; emails without '@' have no domain.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+class EmailIndex {
+    private static final int NONE = IntHashTable.NONE;
+    // The values of the entry of every email: the first and the last contact of its chain
+    private static final int HEAD = 0;
+    private static final int TAIL = 1;
+
+    private final ContactStorage contacts;
+    // Keys are the email hash codes
+    private final IntHashTable table;
+
+    // Chain links and email hash codes, indexed by contact index
+    private int[] next;
+    private int[] prev;
+    private int[] hashes;
+
+    // Number of contacts of every domain that has some
+    private final Map<String, Integer> domains;
+
+    /**
+     * Creates an empty index, able to link contact indexes up to capacity - 1 before growing.
+     * @pre capacity > 0 && contacts != null
+     * @param capacity - the initial capacity of the contacts storage.
+     * @param contacts - the storage with the emails of the contacts.
+     */
+    EmailIndex(int capacity, ContactStorage contacts) {
+        this.contacts = contacts;
+        table = new IntHashTable(2);
+        next = new int[capacity];
+        prev = new int[capacity];
+        hashes = new int[capacity];
+        domains = new HashMap<>();
+    }
+
+    /**
+     * Makes room for the chain links of contact indexes up to capacity - 1.
+     * @param capacity - the new capacity of the contacts storage.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > next.length) {
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+    }
+
+    /**
+     * Returns the index of the oldest contact with the given email, or -1 if there is none.
+     * @pre email != null
+     * @param email - the given email.
+     * @return the index of the oldest contact with the given email, or -1 if there is none.
+     */
+    int oldest(String email) {
+        int entry = find(email);
+        return entry >= 0 ? table.get(entry, HEAD) : NONE;
+    }
+
+    /**
+     * Returns the number of contacts whose email is in the given domain, in any case.
+     * @pre domain != null
+     * @param domain - the given domain, such as "fct.unl.pt".
+     * @return the number of contacts whose email is in the given domain.
+     */
+    int countDomain(String domain) {
+        return domains.getOrDefault(domain.toLowerCase(Locale.ROOT), 0);
+    }
+
+    /**
+     * Registers that the contact at the given index has the given email.
+     * @pre email != null, index is not registered, and the storage already has email at index
+     * @param index - the index of the contact.
+     * @param email - the email of the contact.
+     */
+    void add(int index, String email) {
+        String domain = domainOf(email);
+        if (domain != null)
+            domains.merge(domain, 1, Integer::sum);
+        int hash = email.hashCode();
+        hashes[index] = hash;
+        int entry = find(email);
+        if (entry < 0) {
+            entry = table.insert(hash, index);
+            table.set(entry, TAIL, index);
+            prev[index] = NONE;
+            next[index] = NONE;
+            return;
+        }
+        // New contacts go to the tail; an older contact that changed its email walks back
+        int after = table.get(entry, TAIL);
+        while (after != NONE && after > index)
+            after = prev[after];
+        prev[index] = after;
+        if (after == NONE) {
+            next[index] = table.get(entry, HEAD);
+            table.set(entry, HEAD, index);
+        }
+        else {
+            next[index] = next[after];
+            next[after] = index;
+        }
+        if (next[index] == NONE)
+            table.set(entry, TAIL, index);
+        else
+            prev[next[index]] = index;
+    }
+
+    /**
+     * Unregisters the contact at the given index.
+     * @pre the contact at index is registered, and the storage still has its email
+     * @param index - the index of the contact.
+     */
+    void remove(int index) {
+        String domain = domainOf(contacts.getEmail(index));
+        if (domain != null)
+            domains.computeIfPresent(domain, (d, count) -> count == 1 ? null : count - 1);
+        int entry = prev[index] == NONE || next[index] == NONE ? entryOf(index) : NONE;
+        if (prev[index] == NONE && next[index] == NONE) {
+            table.delete(entry);
+            return;
+        }
+        if (prev[index] == NONE)
+            table.set(entry, HEAD, next[index]);
+        else
+            next[prev[index]] = next[index];
+        if (next[index] == NONE)
+            table.set(entry, TAIL, prev[index]);
+        else
+            prev[next[index]] = prev[index];
+    }
+
+    /**
+     * Moves a contact to another index, keeping its position in the chain of its email.
+     * @pre the contact at from is registered, and the move keeps the chain sorted
+     * @param from - the current index of the contact.
+     * @param to - the new index of the contact.
+     */
+    void move(int from, int to) {
+        int entry = prev[from] == NONE || next[from] == NONE ? entryOf(from) : NONE;
+        hashes[to] = hashes[from];
+        prev[to] = prev[from];
+        next[to] = next[from];
+        if (prev[to] == NONE)
+            table.set(entry, HEAD, to);
+        else
+            next[prev[to]] = to;
+        if (next[to] == NONE)
+            table.set(entry, TAIL, to);
+        else
+            prev[next[to]] = to;
+    }
+
+    /**
+     * Returns the domain of the given email.
+     * @param email - the email.
+     * @return the text after the last '@' of the email, in lower case, or null if there is no '@'.
+     */
+    private static String domainOf(String email) {
+        int at = email.lastIndexOf('@');
+        return at >= 0 ? email.substring(at + 1).toLowerCase(Locale.ROOT) : null;
+    }
+
+    /**
+     * Returns the table entry of the given email, or -1 if not found.
+     * @param email - the given email.
+     * @return the table entry of the given email, or -1 if not found.
+     */
+    private int find(String email) {
+        int hash = email.hashCode();
+        int i = table.home(hash);
+        while (!table.isFree(i)) {
+            if (table.key(i) == hash && contacts.hasEmail(table.get(i, HEAD), email))
+                return i;
+            i = table.next(i);
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the table entry whose chain starts or ends at the given contact.
+     * @pre the contact at index is the head or the tail of its chain
+     * @param index - the index of the contact.
+     * @return the table entry of the email of the contact.
+     */
+    private int entryOf(int index) {
+        int i = table.home(hashes[index]);
+        while (table.get(i, HEAD) != index && table.get(i, TAIL) != index)
+            i = table.next(i);
+        return i;
+    }
+}
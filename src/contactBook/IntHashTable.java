@@ -0,0 +1,204 @@
+package contactBook;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table (linear probing) of int keys, each with a fixed number of int values,
+ * shared by the indexes of the ContactBook that look contacts up by a number: the phone index, the
+ * email index (by email hash code) and the phone counts of a ShardedContactBook.
+ * The key and the values of every entry are stored next to each other in a single int array, so no
+ * object is created per entry and a lookup reads one cache line. A free entry has NONE as its first
+ * value, so the first value of a used entry is never NONE. Deleting shifts back the entries of the
+ * probe sequence, so no deleted markers are needed, and the table doubles when it is half full.
+ * The table does not compare keys itself: the indexes walk the probe sequence of a key (home, next,
+ * isFree), since a key may have more than one entry (emails with the same hash code) and some of them
+ * count the entries they scan.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+class IntHashTable {
+    static final int NONE = -1;
+    private static final int DEFAULT_TABLE_SIZE = 64;
+
+    // Ints per entry: the key, then the values
+    private final int stride;
+    private int[] table;
+    // Number of entries the table has room for (a power of two), and of used ones
+    private int length;
+    private int size;
+
+    /**
+     * Creates an empty table.
+     * @pre values > 0
+     * @param values - the number of values of every entry.
+     */
+    IntHashTable(int values) {
+        stride = 1 + values;
+        length = DEFAULT_TABLE_SIZE;
+        table = newTable(length);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of used entries.
+     * @return the number of used entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Spreads the bits of a key, since close numbers (and close hash codes) are common.
+     * @param key - the key.
+     * @return the first entry of the probe sequence of the key.
+     */
+    int home(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (length - 1);
+    }
+
+    /**
+     * Returns the entry after the given one in a probe sequence.
+     * @param entry - the entry.
+     * @return the next entry, wrapping around at the end of the table.
+     */
+    int next(int entry) {
+        return (entry + 1) & (length - 1);
+    }
+
+    /**
+     * Evaluates if an entry is free, which ends a probe sequence.
+     * @param entry - the entry.
+     * @return true if the entry is free, false if it is used.
+     */
+    boolean isFree(int entry) {
+        return table[entry * stride + 1] == NONE;
+    }
+
+    /**
+     * Returns the key of a used entry.
+     * @param entry - the entry.
+     * @return the key of the entry.
+     */
+    int key(int entry) {
+        return table[entry * stride];
+    }
+
+    /**
+     * Returns a value of an entry.
+     * @param entry - the entry.
+     * @param value - the number of the value, from 0.
+     * @return the value.
+     */
+    int get(int entry, int value) {
+        return table[entry * stride + 1 + value];
+    }
+
+    /**
+     * Changes a value of an entry.
+     * @pre value > 0 || v != NONE, unless the entry is deleted right after
+     * @param entry - the entry.
+     * @param value - the number of the value, from 0.
+     * @param v - the new value.
+     */
+    void set(int entry, int value, int v) {
+        table[entry * stride + 1 + value] = v;
+    }
+
+    /**
+     * Returns the first entry with the given key, for the tables where keys are unique.
+     * @param key - the key.
+     * @return the entry of the key, or NONE if there is none.
+     */
+    int find(int key) {
+        int i = home(key);
+        while (!isFree(i)) {
+            if (key(i) == key)
+                return i;
+            i = next(i);
+        }
+        return NONE;
+    }
+
+    /**
+     * Adds an entry with the given key, even if the key already has one, growing the table if needed.
+     * Its other values are 0 until they are set. Entries returned before may move.
+     * @pre first != NONE
+     * @param key - the key.
+     * @param first - the first value of the entry.
+     * @return the new entry.
+     */
+    int insert(int key, int first) {
+        if (2 * (size + 1) > length)
+            rehash(2 * length);
+        int entry = freeEntry(key);
+        int base = entry * stride;
+        table[base] = key;
+        table[base + 1] = first;
+        Arrays.fill(table, base + 2, base + stride, 0);
+        size++;
+        return entry;
+    }
+
+    /**
+     * Frees an entry, shifting back the entries of its probe sequence, so that
+     * no deleted markers are needed.
+     * @param entry - the used entry to free.
+     */
+    void delete(int entry) {
+        int hole = entry;
+        int i = entry;
+        while (true) {
+            i = next(i);
+            if (isFree(i))
+                break;
+            int h = home(key(i));
+            boolean stays = hole <= i ? (hole < h && h <= i) : (hole < h || h <= i);
+            if (!stays) {
+                System.arraycopy(table, i * stride, table, hole * stride, stride);
+                hole = i;
+            }
+        }
+        table[hole * stride + 1] = NONE;
+        size--;
+    }
+
+    /**
+     * Returns the first free entry in the probe sequence of the given key.
+     * @param key - the key.
+     * @return the free entry.
+     */
+    private int freeEntry(int key) {
+        int i = home(key);
+        while (!isFree(i))
+            i = next(i);
+        return i;
+    }
+
+    /**
+     * Creates the array of a table of free entries.
+     * @param entries - the number of entries.
+     * @return the array of the table.
+     */
+    private int[] newTable(int entries) {
+        int[] t = new int[entries * stride];
+        for (int i = 0; i < entries; i++)
+            t[i * stride + 1] = NONE;
+        return t;
+    }
+
+    /**
+     * Auxiliary method to help the hash table grow when needed.
+     * @param newLength - the new number of entries, a power of two.
+     */
+    private void rehash(int newLength) {
+        int[] old = table;
+        int oldLength = length;
+        table = newTable(newLength);
+        length = newLength;
+        for (int i = 0; i < oldLength; i++)
+            if (old[i * stride + 1] != NONE)
+                System.arraycopy(old, i * stride, table, freeEntry(old[i * stride]) * stride, stride);
+    }
+}
@@ -0,0 +1,183 @@
+package contactBook;
+
+import statistics.Histogram;
+
+import java.util.Arrays;
+
+/**
+ * Index from contact names to contact indexes, used by the ContactBook.
+ * It is an open addressing hash table (linear probing) that stores only contact indexes: the hash of
+ * every name is kept in an array indexed by the contact index, and names are only compared when the
+ * hashes match, by asking the storage of the book for the name at an index. So the index never holds the names
+ * themselves, and it can be built from the hashes alone (as when loading a snapshot).
+ * Every lookup records in a histogram how many entries it scanned.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+class NameIndex {
+    private static final int DEFAULT_TABLE_SIZE = 64;
+    private static final int NONE = -1;
+
+    private final ContactStorage contacts;
+    // Hash table of contact indexes: a free entry is NONE
+    private int[] table;
+    private int size;
+    // Name hashes, indexed by contact index
+    private int[] hashes;
+    // Number of occupied entries scanned by every lookup
+    private final Histogram probes;
+
+    /**
+     * Creates an empty index.
+     * @pre capacity > 0 && contacts != null
+     * @param capacity - the initial capacity of the contacts storage.
+     * @param contacts - the storage with the names of the contacts.
+     * @param probes - the histogram of the entries scanned by every lookup.
+     */
+    NameIndex(int capacity, ContactStorage contacts, Histogram probes) {
+        this.contacts = contacts;
+        this.probes = probes;
+        table = new int[DEFAULT_TABLE_SIZE];
+        Arrays.fill(table, NONE);
+        size = 0;
+        hashes = new int[capacity];
+    }
+
+    /**
+     * Makes room for contact indexes up to capacity - 1, and for that many names in the table.
+     * @param capacity - the new capacity of the contacts storage.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > hashes.length)
+            hashes = Arrays.copyOf(hashes, capacity);
+        int length = table.length;
+        while (2 * capacity > length)
+            length *= 2;
+        if (length > table.length)
+            rehash(length);
+    }
+
+    /**
+     * Returns the index of the contact with the given name, or -1 if not found.
+     * @pre name != null
+     * @param name - the given contact name.
+     * @return the index of the contact with the given name, or -1 if not found.
+     */
+    int find(String name) {
+        int hash = name.hashCode();
+        int mask = table.length - 1;
+        int i = home(hash);
+        int scanned = 0;
+        while (table[i] != NONE) {
+            int index = table[i];
+            scanned++;
+            if (hashes[index] == hash && contacts.hasName(index, name)) {
+                probes.record(scanned);
+                return index;
+            }
+            i = (i + 1) & mask;
+        }
+        probes.record(scanned);
+        return NONE;
+    }
+
+    /**
+     * Registers the contact at the given index, whose name has the given hash.
+     * @pre no contact with the same name is registered
+     * @param index - the index of the contact.
+     * @param hash - the hash code of the contact name.
+     */
+    void add(int index, int hash) {
+        if (2 * (size + 1) > table.length)
+            rehash(2 * table.length);
+        hashes[index] = hash;
+        table[freeEntry(hash)] = index;
+        size++;
+    }
+
+    /**
+     * Unregisters the contact at the given index.
+     * @pre the contact at index is registered
+     * @param index - the index of the contact.
+     */
+    void remove(int index) {
+        int mask = table.length - 1;
+        int hole = entryOf(index);
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            if (table[i] == NONE)
+                break;
+            int h = home(hashes[table[i]]);
+            boolean stays = hole <= i ? (hole < h && h <= i) : (hole < h || h <= i);
+            if (!stays) {
+                table[hole] = table[i];
+                hole = i;
+            }
+        }
+        table[hole] = NONE;
+        size--;
+    }
+
+    /**
+     * Moves a contact to another index.
+     * @pre the contact at from is registered
+     * @param from - the current index of the contact.
+     * @param to - the new index of the contact.
+     */
+    void move(int from, int to) {
+        table[entryOf(from)] = to;
+        hashes[to] = hashes[from];
+    }
+
+    /**
+     * Returns the table entry holding the given contact index.
+     * @pre the contact at index is registered
+     * @param index - the index of the contact.
+     * @return the table entry holding the index.
+     */
+    private int entryOf(int index) {
+        int mask = table.length - 1;
+        int i = home(hashes[index]);
+        while (table[i] != index)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    /**
+     * Returns the first free table entry in the probe sequence of the given hash.
+     * @param hash - the hash code of a name.
+     * @return the free table entry.
+     */
+    private int freeEntry(int hash) {
+        int mask = table.length - 1;
+        int i = home(hash);
+        while (table[i] != NONE)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    /**
+     * Spreads the bits of a hash code, since similar names have close hash codes.
+     * @param hash - the hash code of a name.
+     * @return the position of the hash in the table, if there are no collisions.
+     */
+    private int home(int hash) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (table.length - 1);
+    }
+
+    /**
+     * Auxiliary method to help the hash table grow when needed.
+     * @param length - the new table length, a power of two.
+     */
+    private void rehash(int length) {
+        int[] old = table;
+        table = new int[length];
+        Arrays.fill(table, NONE);
+        for (int index : old)
+            if (index != NONE)
+                table[freeEntry(hashes[index])] = index;
+    }
+}
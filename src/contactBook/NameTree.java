@@ -0,0 +1,251 @@
+package contactBook;
+
+import java.util.Arrays;
+
+/**
+ * Index of the contacts in alphabetical order of their names, used by the ContactBook to answer rank
+ * queries: the position of a name, the contact at a position, and so the contacts between two names.
+ * It is a treap (a binary search tree kept balanced by random priorities) whose nodes are the contact
+ * indexes themselves, so the children, subtree sizes and priorities are arrays indexed by the contact
+ * index, and the names are asked to the storage of the book. Knowing the size of every subtree,
+ * ranking and selecting cost O(log n) expected time, as adding and removing do.
+ * Names are compared as Strings are, which is the same order as the one of the NameTrie.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+class NameTree {
+    private static final int NONE = -1;
+
+    private final ContactStorage contacts;
+    private int root;
+    // Children, subtree sizes and priorities of the nodes, indexed by contact index
+    private int[] left;
+    private int[] right;
+    private int[] sizes;
+    private int[] priorities;
+    // State of the generator of the priorities, so the same contacts always make the same tree
+    private int seed;
+    // The two trees left by the last split
+    private int splitLow;
+    private int splitHigh;
+
+    /**
+     * Creates an empty tree, able to hold contact indexes up to capacity - 1 before growing.
+     * @pre capacity > 0 && contacts != null
+     * @param capacity - the initial capacity of the contacts storage.
+     * @param contacts - the storage with the names of the contacts.
+     */
+    NameTree(int capacity, ContactStorage contacts) {
+        this.contacts = contacts;
+        root = NONE;
+        left = new int[capacity];
+        right = new int[capacity];
+        sizes = new int[capacity];
+        priorities = new int[capacity];
+        seed = 0x2545F491;
+    }
+
+    /**
+     * Makes room for contact indexes up to capacity - 1.
+     * @param capacity - the new capacity of the contacts storage.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > left.length) {
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+        }
+    }
+
+    /**
+     * Returns the number of contacts whose name comes before the given one.
+     * @pre name != null
+     * @param name - the given name.
+     * @return the number of contacts with smaller names.
+     */
+    int rank(String name) {
+        int rank = 0;
+        int node = root;
+        while (node != NONE) {
+            if (name.compareTo(contacts.getName(node)) <= 0)
+                node = left[node];
+            else {
+                rank += sizeOf(left[node]) + 1;
+                node = right[node];
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the index of the contact at the given position of the alphabetical order.
+     * @pre 0 <= rank < number of contacts in the tree
+     * @param rank - the position, 0 for the first name.
+     * @return the index of the contact at the given position.
+     */
+    int select(int rank) {
+        int node = root;
+        while (true) {
+            int smaller = sizeOf(left[node]);
+            if (rank < smaller)
+                node = left[node];
+            else if (rank == smaller)
+                return node;
+            else {
+                rank -= smaller + 1;
+                node = right[node];
+            }
+        }
+    }
+
+    /**
+     * Adds the contact at the given index.
+     * @pre the contact at index is in the storage and not in the tree, and no contact in the tree has its name
+     * @param index - the index of the contact.
+     */
+    void add(int index) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        priorities[index] = seed;
+        root = insert(root, index, contacts.getName(index));
+    }
+
+    /**
+     * Removes the contact at the given index.
+     * @pre the contact at index is in the tree, and the storage still has its name
+     * @param index - the index of the contact.
+     */
+    void remove(int index) {
+        root = delete(root, index, contacts.getName(index));
+    }
+
+    /**
+     * Moves a contact to another index, keeping its place in the tree.
+     * @pre the contact at from is in the tree, and the storage already moved it to to
+     * @param from - the current index of the contact.
+     * @param to - the new index of the contact.
+     */
+    void move(int from, int to) {
+        left[to] = left[from];
+        right[to] = right[from];
+        sizes[to] = sizes[from];
+        priorities[to] = priorities[from];
+        if (root == from) {
+            root = to;
+            return;
+        }
+        String name = contacts.getName(to);
+        int node = root;
+        while (true) {
+            if (name.compareTo(contacts.getName(node)) < 0) {
+                if (left[node] == from) {
+                    left[node] = to;
+                    return;
+                }
+                node = left[node];
+            }
+            else {
+                if (right[node] == from) {
+                    right[node] = to;
+                    return;
+                }
+                node = right[node];
+            }
+        }
+    }
+
+    /**
+     * Inserts a node in a subtree: the node goes down while its priority is lower than the ones
+     * it meets, and then takes the place of the subtree there, split by its name.
+     * @param node - the root of the subtree, or NONE.
+     * @param index - the node to insert.
+     * @param name - the name of the node to insert.
+     * @return the new root of the subtree.
+     */
+    private int insert(int node, int index, String name) {
+        if (node == NONE || priorities[index] > priorities[node]) {
+            split(node, name);
+            left[index] = splitLow;
+            right[index] = splitHigh;
+            sizes[index] = sizeOf(splitLow) + sizeOf(splitHigh) + 1;
+            return index;
+        }
+        if (name.compareTo(contacts.getName(node)) < 0)
+            left[node] = insert(left[node], index, name);
+        else
+            right[node] = insert(right[node], index, name);
+        sizes[node]++;
+        return node;
+    }
+
+    /**
+     * Deletes a node from a subtree, replacing it by the merge of its children.
+     * @param node - the root of the subtree, which has the node to delete.
+     * @param index - the node to delete.
+     * @param name - the name of the node to delete.
+     * @return the new root of the subtree.
+     */
+    private int delete(int node, int index, String name) {
+        if (node == index)
+            return merge(left[node], right[node]);
+        if (name.compareTo(contacts.getName(node)) < 0)
+            left[node] = delete(left[node], index, name);
+        else
+            right[node] = delete(right[node], index, name);
+        sizes[node]--;
+        return node;
+    }
+
+    /**
+     * Splits a subtree into the nodes with smaller names (left in splitLow) and the others
+     * (left in splitHigh).
+     * @param node - the root of the subtree, or NONE.
+     * @param name - the name that splits the subtree.
+     */
+    private void split(int node, String name) {
+        if (node == NONE) {
+            splitLow = NONE;
+            splitHigh = NONE;
+        }
+        else if (contacts.getName(node).compareTo(name) < 0) {
+            split(right[node], name);
+            right[node] = splitLow;
+            sizes[node] = sizeOf(left[node]) + sizeOf(right[node]) + 1;
+            splitLow = node;
+        }
+        else {
+            split(left[node], name);
+            left[node] = splitHigh;
+            sizes[node] = sizeOf(left[node]) + sizeOf(right[node]) + 1;
+            splitHigh = node;
+        }
+    }
+
+    /**
+     * Merges two subtrees, where all the names of the first come before the ones of the second.
+     * @param low - the root of the first subtree, or NONE.
+     * @param high - the root of the second subtree, or NONE.
+     * @return the root of the merged tree.
+     */
+    private int merge(int low, int high) {
+        if (low == NONE)
+            return high;
+        if (high == NONE)
+            return low;
+        if (priorities[low] > priorities[high]) {
+            right[low] = merge(right[low], high);
+            sizes[low] = sizeOf(left[low]) + sizeOf(right[low]) + 1;
+            return low;
+        }
+        left[high] = merge(low, left[high]);
+        sizes[high] = sizeOf(left[high]) + sizeOf(right[high]) + 1;
+        return high;
+    }
+
+    private int sizeOf(int node) {
+        return node == NONE ? 0 : sizes[node];
+    }
+}
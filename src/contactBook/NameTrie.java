@@ -0,0 +1,291 @@
+package contactBook;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the contact names by prefix, used by the ContactBook to find the contacts whose name starts
+ * with some text, in alphabetical order.
+ * It is a compressed trie (radix tree): every node is reached from its parent through a label of one
+ * or more characters, and a node that is not the end of a name has at least two children, so there
+ * are fewer nodes than twice the number of names. The children of a node are a list of siblings,
+ * sorted by the first character of their labels.
+ * The nodes are kept in arrays indexed by node number (free nodes are reused), and the node of every
+ * contact in an array indexed by the contact index, like the other indexes of the book.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+class NameTrie {
+    private static final int DEFAULT_NODES = 64;
+    private static final int NONE = -1;
+    // The root node, whose label is empty
+    private static final int ROOT = 0;
+
+    private final ContactStorage contacts;
+    // Node arrays: a free node is linked to the next free one by nextSiblings
+    private String[] labels;
+    private int[] contactOf;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int nodes;
+    private int free;
+    // Node of every contact, indexed by contact index
+    private int[] nodeOf;
+
+    /**
+     * Creates an empty index.
+     * @pre capacity > 0 && contacts != null
+     * @param capacity - the initial capacity of the contacts storage.
+     * @param contacts - the storage of the contacts.
+     */
+    NameTrie(int capacity, ContactStorage contacts) {
+        this.contacts = contacts;
+        labels = new String[DEFAULT_NODES];
+        contactOf = new int[DEFAULT_NODES];
+        parents = new int[DEFAULT_NODES];
+        firstChildren = new int[DEFAULT_NODES];
+        nextSiblings = new int[DEFAULT_NODES];
+        nodes = 0;
+        free = NONE;
+        nodeOf = new int[capacity];
+        newNode("", NONE, NONE);
+    }
+
+    /**
+     * Makes room for contact indexes up to capacity - 1.
+     * @param capacity - the new capacity of the contacts storage.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > nodeOf.length)
+            nodeOf = Arrays.copyOf(nodeOf, capacity);
+    }
+
+    /**
+     * Registers the contact at the given index, with the given name.
+     * @pre name != null and no contact with the same name is registered
+     * @param name - the contact name.
+     * @param index - the index of the contact.
+     */
+    void add(String name, int index) {
+        int node = ROOT;
+        int position = 0;
+        while (position < name.length()) {
+            char c = name.charAt(position);
+            int previous = NONE;
+            int child = firstChildren[node];
+            while (child != NONE && labels[child].charAt(0) < c) {
+                previous = child;
+                child = nextSiblings[child];
+            }
+            if (child == NONE || labels[child].charAt(0) != c) {
+                int leaf = newNode(name.substring(position), node, index);
+                link(node, previous, leaf, child);
+                nodeOf[index] = leaf;
+                return;
+            }
+            String label = labels[child];
+            int common = 1;
+            while (common < label.length() && position + common < name.length() &&
+                    label.charAt(common) == name.charAt(position + common))
+                common++;
+            if (common < label.length())
+                child = split(child, previous, common);
+            node = child;
+            position += common;
+        }
+        contactOf[node] = index;
+        nodeOf[index] = node;
+    }
+
+    /**
+     * Unregisters the contact at the given index.
+     * @pre the contact at index is registered
+     * @param index - the index of the contact.
+     */
+    void remove(int index) {
+        int node = nodeOf[index];
+        contactOf[node] = NONE;
+        if (node != ROOT && firstChildren[node] == NONE) {
+            int parent = parents[node];
+            unlink(node);
+            freeNode(node);
+            node = parent;
+        }
+        int child = firstChildren[node];
+        if (node != ROOT && contactOf[node] == NONE && child != NONE && nextSiblings[child] == NONE)
+            merge(node, child);
+    }
+
+    /**
+     * Moves a contact to another index.
+     * @pre the contact at from is registered
+     * @param from - the current index of the contact.
+     * @param to - the new index of the contact.
+     */
+    void move(int from, int to) {
+        int node = nodeOf[from];
+        contactOf[node] = to;
+        nodeOf[to] = node;
+    }
+
+    /**
+     * Adds to the given list the first contacts, in alphabetical order, whose name starts with the given
+     * prefix, up to the given limit. It costs time proportional to the length of the prefix plus the
+     * number of contacts found, and allocates nothing but what the storage needs to return the contacts.
+     * @pre prefix != null && limit >= 0 && result != null
+     * @param prefix - the beginning of the names.
+     * @param limit - the maximum number of contacts to add.
+     * @param result - the list where the contacts are added.
+     */
+    void startingWith(String prefix, int limit, List<Contact> result) {
+        int node = ROOT;
+        int position = 0;
+        while (position < prefix.length()) {
+            char c = prefix.charAt(position);
+            node = firstChildren[node];
+            while (node != NONE && labels[node].charAt(0) < c)
+                node = nextSiblings[node];
+            if (node == NONE)
+                return;
+            String label = labels[node];
+            int length = Math.min(label.length(), prefix.length() - position);
+            if (!label.regionMatches(0, prefix, position, length))
+                return;
+            position += length;
+        }
+        // Depth-first walk of the subtree of node, climbing back through the parents
+        int start = node;
+        int added = 0;
+        while (added < limit) {
+            if (contactOf[node] != NONE) {
+                result.add(contacts.get(contactOf[node]));
+                added++;
+            }
+            if (firstChildren[node] != NONE)
+                node = firstChildren[node];
+            else {
+                while (node != start && nextSiblings[node] == NONE)
+                    node = parents[node];
+                if (node == start)
+                    return;
+                node = nextSiblings[node];
+            }
+        }
+    }
+
+    /**
+     * Splits the label of a node, putting a new node with the beginning of the label in its place.
+     * @param node - the node to split.
+     * @param previous - the sibling before node, or NONE if it is the first child.
+     * @param length - the length of the beginning of the label, which stays in the new node.
+     * @return the new node, parent of node.
+     */
+    private int split(int node, int previous, int length) {
+        int parent = parents[node];
+        String label = labels[node];
+        int middle = newNode(label.substring(0, length), parent, NONE);
+        link(parent, previous, middle, nextSiblings[node]);
+        labels[node] = label.substring(length);
+        parents[node] = middle;
+        nextSiblings[node] = NONE;
+        firstChildren[middle] = node;
+        return middle;
+    }
+
+    /**
+     * Joins a node that is not the end of a name with its only child, which takes its place.
+     * @param node - the node to remove.
+     * @param child - the only child of node.
+     */
+    private void merge(int node, int child) {
+        int parent = parents[node];
+        int previous = previousSibling(node);
+        labels[child] = labels[node] + labels[child];
+        parents[child] = parent;
+        link(parent, previous, child, nextSiblings[node]);
+        freeNode(node);
+    }
+
+    /**
+     * Puts a node in the list of children of parent, between previous and next.
+     * @param parent - the parent of the node.
+     * @param previous - the sibling before the node, or NONE if it is the first child.
+     * @param node - the node.
+     * @param next - the sibling after the node, or NONE if it is the last child.
+     */
+    private void link(int parent, int previous, int node, int next) {
+        nextSiblings[node] = next;
+        if (previous == NONE)
+            firstChildren[parent] = node;
+        else
+            nextSiblings[previous] = node;
+    }
+
+    /**
+     * Takes a node out of the list of children of its parent.
+     * @param node - the node.
+     */
+    private void unlink(int node) {
+        int previous = previousSibling(node);
+        if (previous == NONE)
+            firstChildren[parents[node]] = nextSiblings[node];
+        else
+            nextSiblings[previous] = nextSiblings[node];
+    }
+
+    private int previousSibling(int node) {
+        int previous = NONE;
+        int sibling = firstChildren[parents[node]];
+        while (sibling != node) {
+            previous = sibling;
+            sibling = nextSiblings[sibling];
+        }
+        return previous;
+    }
+
+    /**
+     * Creates a node without children, reusing a free one if there is any.
+     * @param label - the label of the node.
+     * @param parent - the parent of the node.
+     * @param contact - the index of the contact whose name ends in the node, or NONE.
+     * @return the new node.
+     */
+    private int newNode(String label, int parent, int contact) {
+        int node;
+        if (free != NONE) {
+            node = free;
+            free = nextSiblings[node];
+        }
+        else {
+            if (nodes == labels.length)
+                grow();
+            node = nodes++;
+        }
+        labels[node] = label;
+        contactOf[node] = contact;
+        parents[node] = parent;
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        labels[node] = null;
+        nextSiblings[node] = free;
+        free = node;
+    }
+
+    /**
+     * Auxiliary method to help the node arrays grow when needed.
+     */
+    private void grow() {
+        int length = 2 * labels.length;
+        labels = Arrays.copyOf(labels, length);
+        contactOf = Arrays.copyOf(contactOf, length);
+        parents = Arrays.copyOf(parents, length);
+        firstChildren = Arrays.copyOf(firstChildren, length);
+        nextSiblings = Arrays.copyOf(nextSiblings, length);
+    }
+}
@@ -0,0 +1,319 @@
+package contactBook;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storage engine that keeps the contacts as a structure of arrays instead of Contact objects: the phone
+ * numbers in an int array, and the names and emails as UTF-8 bytes in an arena of direct (off-heap)
+ * byte buffers, where every position points to its record by offset. So the heap only holds 12 bytes
+ * per contact, and the garbage collector has no objects to trace.
+ * A record is the name length, the name bytes, the email length and the email bytes. Records are only
+ * appended to the arena (a new email appends a new record), and the arena is rewritten with just the
+ * live records once most of it is garbage.
+ * Contacts are created on demand, as copies of the stored data.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class OffHeapStorage extends ContactStorage {
+    private static final int CHUNK_SIZE = 1 << 26;
+    // Marks a deleted position in records
+    private static final long FREE = -1;
+
+    private int[] phones;
+    // The record of every position: the arena chunk in the high 32 bits and the offset in the low ones
+    private long[] records;
+    private List<ByteBuffer> chunks;
+    // Bytes appended to the arena, and bytes of the records still in use
+    private long usedBytes;
+    private long liveBytes;
+
+    /**
+     * Creates an empty storage.
+     */
+    public OffHeapStorage() {
+        phones = new int[0];
+        records = new long[0];
+        chunks = new ArrayList<>();
+        usedBytes = 0;
+        liveBytes = 0;
+    }
+
+    @Override
+    int capacity() {
+        return records.length;
+    }
+
+    @Override
+    void resize(int capacity) {
+        int old = records.length;
+        phones = Arrays.copyOf(phones, capacity);
+        records = Arrays.copyOf(records, capacity);
+        Arrays.fill(records, old, capacity, FREE);
+    }
+
+    @Override
+    void add(int index, String name, int phone, String email) {
+        int nameLength = utf8Length(name);
+        int length = 8 + nameLength + utf8Length(email);
+        long record = reserve(length);
+        ByteBuffer chunk = chunk(record);
+        int position = offset(record);
+        chunk.putInt(position, nameLength);
+        position = putUtf8(chunk, position + 4, name);
+        chunk.putInt(position, length - 8 - nameLength);
+        putUtf8(chunk, position + 4, email);
+        phones[index] = phone;
+        records[index] = record;
+    }
+
+    @Override
+    void delete(int index) {
+        liveBytes -= recordLength(records[index]);
+        records[index] = FREE;
+    }
+
+    @Override
+    boolean isDeleted(int index) {
+        return records[index] == FREE;
+    }
+
+    @Override
+    Contact get(int index) {
+        return new Contact(getName(index), phones[index], getEmail(index));
+    }
+
+    @Override
+    String getName(int index) {
+        ByteBuffer chunk = chunk(records[index]);
+        int position = offset(records[index]);
+        return decode(chunk, position + 4, chunk.getInt(position));
+    }
+
+    @Override
+    int getPhone(int index) {
+        return phones[index];
+    }
+
+    @Override
+    String getEmail(int index) {
+        ByteBuffer chunk = chunk(records[index]);
+        int position = offset(records[index]);
+        position += 4 + chunk.getInt(position);
+        return decode(chunk, position + 4, chunk.getInt(position));
+    }
+
+    @Override
+    boolean hasName(int index, String name) {
+        ByteBuffer chunk = chunk(records[index]);
+        int position = offset(records[index]);
+        return equalsUtf8(chunk, position + 4, chunk.getInt(position), name);
+    }
+
+    @Override
+    boolean hasEmail(int index, String email) {
+        ByteBuffer chunk = chunk(records[index]);
+        int position = offset(records[index]);
+        position += 4 + chunk.getInt(position);
+        return equalsUtf8(chunk, position + 4, chunk.getInt(position), email);
+    }
+
+    @Override
+    void setPhone(int index, int phone) {
+        phones[index] = phone;
+    }
+
+    @Override
+    void setEmail(int index, String email) {
+        long old = records[index];
+        ByteBuffer oldChunk = chunk(old);
+        int oldPosition = offset(old);
+        int nameLength = oldChunk.getInt(oldPosition);
+        int length = 8 + nameLength + utf8Length(email);
+        long record = reserve(length);
+        ByteBuffer chunk = chunk(record);
+        int position = offset(record);
+        chunk.put(position, oldChunk, oldPosition, 4 + nameLength);
+        position += 4 + nameLength;
+        chunk.putInt(position, length - 8 - nameLength);
+        putUtf8(chunk, position + 4, email);
+        liveBytes -= recordLength(old);
+        records[index] = record;
+        reclaimIfWasteful();
+    }
+
+    @Override
+    void move(int from, int to) {
+        phones[to] = phones[from];
+        records[to] = records[from];
+        records[from] = FREE;
+    }
+
+    @Override
+    void release(int from) {
+        reclaimIfWasteful();
+    }
+
+    @Override
+    void load(ContactBookSnapshot snapshot) {
+        for (int i=0; i<snapshot.size(); i++) {
+            ByteBuffer source = snapshot.record(i);
+            long record = reserve(source.remaining());
+            chunk(record).put(offset(record), source, 0, source.remaining());
+            phones[i] = snapshot.phone(i);
+            records[i] = record;
+        }
+    }
+
+    /**
+     * Reserves space for a record at the end of the arena, adding a new chunk if the last one is full.
+     * A record larger than a chunk gets a chunk of its own.
+     * @param length - the length of the record.
+     * @return the location of the reserved space.
+     */
+    private long reserve(int length) {
+        ByteBuffer last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (last == null || last.remaining() < length) {
+            last = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, length));
+            chunks.add(last);
+        }
+        int position = last.position();
+        last.position(position + length);
+        usedBytes += length;
+        liveBytes += length;
+        return ((long) (chunks.size() - 1) << 32) | position;
+    }
+
+    private ByteBuffer chunk(long record) {
+        return chunks.get((int) (record >>> 32));
+    }
+
+    private static int offset(long record) {
+        return (int) record;
+    }
+
+    private int recordLength(long record) {
+        return recordLength(chunk(record), offset(record));
+    }
+
+    private static int recordLength(ByteBuffer chunk, int position) {
+        int nameLength = chunk.getInt(position);
+        return 8 + nameLength + chunk.getInt(position + 4 + nameLength);
+    }
+
+    /**
+     * Rewrites the arena with only the records in use, if more than half of it is garbage.
+     */
+    private void reclaimIfWasteful() {
+        if (usedBytes <= CHUNK_SIZE || 2 * liveBytes >= usedBytes)
+            return;
+        List<ByteBuffer> old = chunks;
+        chunks = new ArrayList<>();
+        usedBytes = 0;
+        liveBytes = 0;
+        for (int i=0; i<records.length; i++)
+            if (records[i] != FREE) {
+                ByteBuffer oldChunk = old.get((int) (records[i] >>> 32));
+                int oldPosition = offset(records[i]);
+                int length = recordLength(oldChunk, oldPosition);
+                long record = reserve(length);
+                chunk(record).put(offset(record), oldChunk, oldPosition, length);
+                records[i] = record;
+            }
+    }
+
+    /**
+     * Returns the number of bytes of the given text in UTF-8.
+     * @param s - the text.
+     * @return the number of bytes of the text in UTF-8.
+     */
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80)
+                length++;
+            else if (c < 0x800)
+                length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            }
+            else if (Character.isSurrogate(c))
+                length++;
+            else
+                length += 3;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the given text in UTF-8 at the given position, as String.getBytes would
+     * (a lone surrogate becomes '?').
+     * @param buffer - the buffer to write to.
+     * @param position - the position of the first byte.
+     * @param s - the text.
+     * @return the position after the last byte written.
+     */
+    private static int putUtf8(ByteBuffer buffer, int position, String s) {
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80)
+                buffer.put(position++, (byte) c);
+            else if (c < 0x800) {
+                buffer.put(position++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put(position++, (byte) (0xF0 | (code >> 18)));
+                buffer.put(position++, (byte) (0x80 | ((code >> 12) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | ((code >> 6) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | (code & 0x3F)));
+            }
+            else if (Character.isSurrogate(c))
+                buffer.put(position++, (byte) '?');
+            else {
+                buffer.put(position++, (byte) (0xE0 | (c >> 12)));
+                buffer.put(position++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Evaluates if the UTF-8 bytes at the given position are the given text, without decoding them.
+     * @param buffer - the buffer with the bytes.
+     * @param position - the position of the first byte.
+     * @param length - the number of bytes.
+     * @param s - the text.
+     * @return true if the bytes are the text in UTF-8, false otherwise.
+     */
+    private static boolean equalsUtf8(ByteBuffer buffer, int position, int length, String s) {
+        if (length < s.length() || length > 3 * s.length())
+            return false;
+        int end = position + length;
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (position == end || buffer.get(position++) != (byte) c)
+                    return false;
+            }
+            else
+                // Rare: compares the rest of the text as decoded characters
+                return decode(buffer, position, end - position).equals(s.substring(i));
+        }
+        return position == end;
+    }
+
+    private static String decode(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,68 @@
+package contactBook;
+
+/**
+ * Counts the contacts of every phone number, and how many numbers are shared by more than one contact,
+ * as the PhoneIndex of a single book does, but without linking the contacts: a ShardedContactBook uses
+ * it to know if contacts in different shards share numbers without looking at the shards.
+ * Phone numbers are kept as primitive ints in an IntHashTable, with the count of every number.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+class PhoneCounts {
+    // The only value of the entry of every phone number
+    private static final int COUNT = 0;
+
+    private final IntHashTable table;
+    // Number of phone numbers with more than one contact
+    private int shared;
+
+    /**
+     * Creates an empty counter.
+     */
+    PhoneCounts() {
+        table = new IntHashTable(1);
+        shared = 0;
+    }
+
+    /**
+     * Evaluates if there are at least two contacts with the same phone number.
+     * @return true if some phone number is shared by more than one contact, false otherwise.
+     */
+    boolean hasSharedNumbers() {
+        return shared > 0;
+    }
+
+    /**
+     * Counts one more contact with the given phone number.
+     * @param phone - the phone number of the contact.
+     */
+    void add(int phone) {
+        int entry = table.find(phone);
+        if (entry == IntHashTable.NONE) {
+            table.insert(phone, 1);
+            return;
+        }
+        int count = table.get(entry, COUNT) + 1;
+        table.set(entry, COUNT, count);
+        if (count == 2)
+            shared++;
+    }
+
+    /**
+     * Counts one less contact with the given phone number.
+     * @pre some contact with the given phone number is counted
+     * @param phone - the phone number of the contact.
+     */
+    void remove(int phone) {
+        int entry = table.find(phone);
+        int count = table.get(entry, COUNT) - 1;
+        if (count == 0) {
+            table.delete(entry);
+            return;
+        }
+        table.set(entry, COUNT, count);
+        if (count == 1)
+            shared--;
+    }
+}
@@ -0,0 +1,187 @@
+package contactBook;
+
+import statistics.Histogram;
+
+import java.util.Arrays;
+
+/**
+ * Secondary index from phone numbers to the contacts that have them, used by the ContactBook.
+ * Phone numbers are kept as primitive ints in an IntHashTable, so no Integer is ever created. Every number points to a chain of contact indexes kept
+ * sorted by index, which is the same as insertion order, so the oldest contact with a number
+ * is always the head of its chain.
+ * The chains are stored in two arrays (next and prev) indexed by the contact index.
+ * It also counts the contacts of every number, and how many numbers are shared by more
+ * than one contact, so duplicated phone numbers can be detected without any search.
+ * Every lookup records in a histogram how many entries it scanned.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+class PhoneIndex {
+    private static final int NONE = IntHashTable.NONE;
+    // The values of the entry of every phone number: the first and the last contact of its chain,
+    // and the number of contacts in it
+    private static final int HEAD = 0;
+    private static final int TAIL = 1;
+    private static final int COUNT = 2;
+
+    private final IntHashTable table;
+    // Number of phone numbers with more than one contact
+    private int shared;
+
+    // Chain links, indexed by contact index
+    private int[] next;
+    private int[] prev;
+
+    // Number of occupied entries scanned by every lookup
+    private final Histogram probes;
+
+    /**
+     * Creates an empty index, able to link contact indexes up to capacity - 1 before growing.
+     * @pre capacity > 0
+     * @param capacity - the initial capacity of the contacts storage.
+     * @param probes - the histogram of the entries scanned by every lookup.
+     */
+    PhoneIndex(int capacity, Histogram probes) {
+        this.probes = probes;
+        table = new IntHashTable(3);
+        shared = 0;
+        next = new int[capacity];
+        prev = new int[capacity];
+    }
+
+    /**
+     * Makes room for the chain links of contact indexes up to capacity - 1.
+     * @param capacity - the new capacity of the contacts storage.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > next.length) {
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+        }
+    }
+
+    /**
+     * Returns the index of the oldest contact with the given phone number, or -1 if there is none.
+     * @param phone - the given phone number.
+     * @return the index of the oldest contact with the given phone number, or -1 if there is none.
+     */
+    int oldest(int phone) {
+        int entry = find(phone);
+        return entry >= 0 ? table.get(entry, HEAD) : NONE;
+    }
+
+    /**
+     * Evaluates if there are at least two contacts with the same phone number.
+     * @return true if some phone number is shared by more than one contact, false otherwise.
+     */
+    boolean hasSharedNumbers() {
+        return shared > 0;
+    }
+
+    /**
+     * Registers that the contact at the given index has the given phone number.
+     * @pre index is not registered in the index
+     * @param phone - the phone number of the contact.
+     * @param index - the index of the contact.
+     */
+    void add(int phone, int index) {
+        int entry = find(phone);
+        if (entry < 0) {
+            entry = table.insert(phone, index);
+            table.set(entry, TAIL, index);
+            table.set(entry, COUNT, 1);
+            prev[index] = NONE;
+            next[index] = NONE;
+            return;
+        }
+        int count = table.get(entry, COUNT) + 1;
+        table.set(entry, COUNT, count);
+        if (count == 2)
+            shared++;
+        // New contacts go to the tail; an older contact that changed its phone walks back
+        int after = table.get(entry, TAIL);
+        while (after != NONE && after > index)
+            after = prev[after];
+        prev[index] = after;
+        if (after == NONE) {
+            next[index] = table.get(entry, HEAD);
+            table.set(entry, HEAD, index);
+        }
+        else {
+            next[index] = next[after];
+            next[after] = index;
+        }
+        if (next[index] == NONE)
+            table.set(entry, TAIL, index);
+        else
+            prev[next[index]] = index;
+    }
+
+    /**
+     * Unregisters the contact at the given index from the given phone number.
+     * @pre the contact at index is registered with phone
+     * @param phone - the phone number of the contact.
+     * @param index - the index of the contact.
+     */
+    void remove(int phone, int index) {
+        int entry = find(phone);
+        int count = table.get(entry, COUNT) - 1;
+        if (count == 0) {
+            table.delete(entry);
+            return;
+        }
+        table.set(entry, COUNT, count);
+        if (count == 1)
+            shared--;
+        if (prev[index] == NONE)
+            table.set(entry, HEAD, next[index]);
+        else
+            next[prev[index]] = next[index];
+        if (next[index] == NONE)
+            table.set(entry, TAIL, prev[index]);
+        else
+            prev[next[index]] = prev[index];
+    }
+
+    /**
+     * Moves a contact to another index, keeping its position in the chain of its phone number.
+     * @pre the contact at from is registered with phone, and the move keeps the chain sorted
+     * @param phone - the phone number of the contact.
+     * @param from - the current index of the contact.
+     * @param to - the new index of the contact.
+     */
+    void move(int phone, int from, int to) {
+        int entry = find(phone);
+        prev[to] = prev[from];
+        next[to] = next[from];
+        if (prev[to] == NONE)
+            table.set(entry, HEAD, to);
+        else
+            next[prev[to]] = to;
+        if (next[to] == NONE)
+            table.set(entry, TAIL, to);
+        else
+            prev[next[to]] = to;
+    }
+
+    /**
+     * Returns the table entry of the given phone number, or -1 if not found.
+     * @param phone - the given phone number.
+     * @return the table entry of the given phone number, or -1 if not found.
+     */
+    private int find(int phone) {
+        int i = table.home(phone);
+        int scanned = 0;
+        while (!table.isFree(i)) {
+            scanned++;
+            if (table.key(i) == phone) {
+                probes.record(scanned);
+                return i;
+            }
+            i = table.next(i);
+        }
+        probes.record(scanned);
+        return NONE;
+    }
+}
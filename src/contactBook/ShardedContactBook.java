@@ -0,0 +1,662 @@
+package contactBook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * ContactBook that partitions its contacts by name hash into independent shards, each one a
+ * ContactBookClass with its own storage and indexes. So the storage grows shard by shard, and the
+ * operations on the whole book (LC, counting by domain, prefix search) run on all the shards in
+ * parallel, on a fork-join pool, and then merge their results.
+ * The operations on one name only go to the shard of the name; the ones on a phone number or an
+ * email ask every shard, since any of them may have it.
+ * The contacts of every phone number are counted across the shards on every change, so EP needs
+ * no shard at all.
+ * Every contact gets a sequence number when it is added, so that the oldest of several contacts in
+ * different shards is known, and so that iterations merge the shards in global insertion order.
+ * Iterations read ahead a batch of contacts from every shard at a time, in parallel.
+ * Like ContactBookClass, it is not thread-safe (the parallelism is internal to every operation):
+ * a book shared by several threads must be wrapped in a ConcurrentContactBook.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class ShardedContactBook implements ContactBook {
+    // Number of contacts read ahead from every shard by an iteration
+    private static final int BATCH = 1024;
+
+    // The shards, a power of two of them
+    private final ContactBookClass[] shards;
+    // Right shift of a mixed name hash that leaves the shard of the name
+    private final int shift;
+    private final ForkJoinPool pool;
+    private final ContactBookStatistics statistics;
+    private int counter;
+    // Sequence number of the next contact to add
+    private long nextSequence;
+    // The contacts of every phone number in all the shards, so shared numbers are known at once
+    private final PhoneCounts phones;
+    // The iteration started with initializeIterator
+    private Iterator<Contact> iteration;
+    // Whether some listener is told about the changes, which must then be applied in order
+    private boolean listened;
+
+    /**
+     * Creates an empty book, with a shard per available processor, keeping the contacts as Contact
+     * objects (in ArrayStorages).
+     */
+    public ShardedContactBook() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an empty book with at least the given number of shards, keeping the contacts as
+     * Contact objects (in ArrayStorages).
+     * @pre shards > 0
+     * @param shards - the minimum number of shards (rounded up to a power of two).
+     */
+    public ShardedContactBook(int shards) {
+        this(shards, ArrayStorage::new, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an empty book with at least the given number of shards, each one with a new storage
+     * engine, which runs the operations on the whole book on the given pool.
+     * @pre shards > 0 && storages != null && pool != null, and storages gives a new engine every time
+     * @param shards - the minimum number of shards (rounded up to a power of two).
+     * @param storages - creates the storage engine of every shard.
+     * @param pool - the pool of the parallel operations.
+     */
+    public ShardedContactBook(int shards, Supplier<ContactStorage> storages, ForkJoinPool pool) {
+        int length = Integer.highestOneBit(shards);
+        if (length < shards)
+            length *= 2;
+        this.pool = pool;
+        statistics = new ContactBookStatistics();
+        this.shards = new ContactBookClass[length];
+        for (int i=0; i<length; i++)
+            this.shards[i] = new ContactBookClass(storages.get(), statistics);
+        shift = 32 - Integer.numberOfTrailingZeros(length);
+        counter = 0;
+        nextSequence = 0;
+        phones = new PhoneCounts();
+        iteration = null;
+        listened = false;
+    }
+
+    @Override
+    public void addListener(ContactBookListener listener) {
+        for (ContactBookClass shard : shards)
+            shard.addListener(listener);
+        listened = true;
+    }
+
+    @Override
+    public boolean hasContact(String name) {
+        return shardOf(name).hasContact(name);
+    }
+
+    @Override
+    public boolean hasContact(int number) {
+        for (ContactBookClass shard : shards)
+            if (shard.indexOf(number) >= 0)
+                return true;
+        return false;
+    }
+
+    @Override
+    public int getNumberOfContacts() {
+        return counter;
+    }
+
+    @Override
+    public Contact getContact(String name) {
+        return shardOf(name).getContact(name);
+    }
+
+    /**
+     * Returns the first contacts, in alphabetical order, whose name starts with the given prefix.
+     * Every shard finds its own first contacts in parallel, and they are then merged.
+     * @pre prefix != null && limit >= 0
+     * @param prefix - the beginning of the names.
+     * @param limit - the maximum number of contacts to return.
+     * @return the first contacts whose name starts with the prefix, at most limit of them.
+     */
+    @Override
+    public List<Contact> getContactsByPrefix(String prefix, int limit) {
+        List<Contact>[] found = newLists();
+        forEachShard(i -> found[i] = shards[i].getContactsByPrefix(prefix, limit));
+        return mergeByName(found, limit);
+    }
+
+    /**
+     * Returns the contacts whose names are closest to the given one. Every shard finds its own closest
+     * contacts in parallel (building its index, the first time), and the closest of all of them are kept.
+     * @pre name != null && limit >= 0
+     * @param name - the searched name.
+     * @param limit - the maximum number of contacts to return.
+     * @return the contacts with the closest names, the closest first, at most limit of them.
+     */
+    @Override
+    public List<Contact> getSimilarContacts(String name, int limit) {
+        List<Contact>[] found = newLists();
+        forEachShard(i -> found[i] = shards[i].getSimilarContacts(name, limit));
+        List<Contact> result = new ArrayList<>();
+        for (List<Contact> contacts : found)
+            result.addAll(contacts);
+        Comparator<Contact> byDistance =
+                Comparator.comparingInt(c -> TrigramIndex.distance(name, c.getName(), Integer.MAX_VALUE));
+        result.sort(byDistance.thenComparing(Contact::getName));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Returns the number of contacts whose name comes before the given one in alphabetical order,
+     * adding up the ranks of the shards, found in parallel (building their indexes, the first time).
+     * @pre name != null
+     * @param name - the given name.
+     * @return the number of contacts whose name comes before the given one.
+     */
+    @Override
+    public int getRank(String name) {
+        return pool.submit(() -> IntStream.range(0, shards.length).parallel()
+                .map(i -> shards[i].getRank(name)).sum()).join();
+    }
+
+    /**
+     * Returns the contacts in alphabetical order, from the given position on. The name at the
+     * position is found by binary search in the shards; then every shard, in parallel, gives its
+     * contacts from that name on, and they are merged.
+     * @pre rank >= 0 && limit >= 0
+     * @param rank - the position of the first contact, 0 for the first name.
+     * @param limit - the maximum number of contacts to return.
+     * @return the contacts from the given position on, at most limit of them.
+     */
+    @Override
+    public List<Contact> getContactsByRank(int rank, int limit) {
+        if (limit == 0 || rank >= counter)
+            return new ArrayList<>();
+        String first = nameAt(rank);
+        List<Contact>[] found = newLists();
+        forEachShard(i -> found[i] = shards[i].getContactsByRank(shards[i].getRank(first), limit));
+        return mergeByName(found, limit);
+    }
+
+    /**
+     * Returns the contacts whose names are between the given ones (both included), in alphabetical
+     * order. Every shard finds its own contacts in parallel, and they are then merged.
+     * @pre from != null && to != null && limit >= 0
+     * @param from - the first name.
+     * @param to - the last name.
+     * @param limit - the maximum number of contacts to return.
+     * @return the contacts whose names are between from and to, at most limit of them.
+     */
+    @Override
+    public List<Contact> getContactsBetween(String from, String to, int limit) {
+        List<Contact>[] found = newLists();
+        forEachShard(i -> found[i] = shards[i].getContactsBetween(from, to, limit));
+        return mergeByName(found, limit);
+    }
+
+    @Override
+    public Contact getContactByEmail(String email) {
+        ContactBookClass oldest = null;
+        int oldestIndex = -1;
+        for (ContactBookClass shard : shards) {
+            int index = shard.indexOfEmail(email);
+            if (index >= 0 && (oldest == null || shard.sequenceAt(index) < oldest.sequenceAt(oldestIndex))) {
+                oldest = shard;
+                oldestIndex = index;
+            }
+        }
+        return oldest != null ? oldest.contactAt(oldestIndex) : null;
+    }
+
+    /**
+     * Returns the number of contacts whose email is in the given domain, ignoring case.
+     * The shards count their own contacts in parallel (building their email indexes, the first time).
+     * @pre domain != null
+     * @param domain - the given domain, such as "fct.unl.pt".
+     * @return the number of contacts whose email is in the given domain.
+     */
+    @Override
+    public int countContactsInDomain(String domain) {
+        return pool.submit(() -> IntStream.range(0, shards.length).parallel()
+                .map(i -> shards[i].countContactsInDomain(domain)).sum()).join();
+    }
+
+    @Override
+    public void addContact(String name, int phone, String email) {
+        shardOf(name).addContact(name, phone, email, nextSequence++);
+        counter++;
+        phones.add(phone);
+    }
+
+    /**
+     * Makes room for the given number of contacts, spread over the shards with some margin,
+     * since the names never split exactly evenly.
+     * @pre capacity >= 0
+     * @param capacity - the number of contacts to make room for.
+     */
+    @Override
+    public void ensureCapacity(int capacity) {
+        int perShard = capacity / shards.length;
+        int margin = perShard / 8 + 16;
+        forEachShard(i -> shards[i].ensureCapacity(perShard + margin));
+    }
+
+    @Override
+    public void deleteContact(String name) {
+        ContactBookClass shard = shardOf(name);
+        phones.remove(shard.getPhone(name));
+        shard.deleteContact(name);
+        counter--;
+    }
+
+    @Override
+    public int getPhone(String name) {
+        return shardOf(name).getPhone(name);
+    }
+
+    @Override
+    public String getEmail(String name) {
+        return shardOf(name).getEmail(name);
+    }
+
+    @Override
+    public String getName(int number) {
+        return findName(number);
+    }
+
+    @Override
+    public void setPhone(String name, int phone) {
+        ContactBookClass shard = shardOf(name);
+        phones.remove(shard.getPhone(name));
+        shard.setPhone(name, phone);
+        phones.add(phone);
+    }
+
+    @Override
+    public void setEmail(String name, String email) {
+        shardOf(name).setEmail(name, email);
+    }
+
+    @Override
+    public boolean tryAddContact(String name, int phone, String email) {
+        if (hasContact(name))
+            return false;
+        addContact(name, phone, email);
+        return true;
+    }
+
+    @Override
+    public boolean tryDeleteContact(String name) {
+        if (!hasContact(name))
+            return false;
+        deleteContact(name);
+        return true;
+    }
+
+    @Override
+    public boolean trySetPhone(String name, int phone) {
+        if (!hasContact(name))
+            return false;
+        setPhone(name, phone);
+        return true;
+    }
+
+    @Override
+    public boolean trySetEmail(String name, String email) {
+        return shardOf(name).trySetEmail(name, email);
+    }
+
+    /**
+     * Applies the batch by splitting it by shard: the added contacts get their sequence numbers in
+     * the order of the batch, and then every shard applies its part in a single pass, all of them in
+     * parallel. If some listener is told about the changes, they are applied one by one, in order,
+     * so that the listener sees them as they are in the batch. Otherwise the phone numbers are counted
+     * first, in the order of the batch, since the shards only apply their parts after that.
+     * @pre batch != null, and batch was not applied before
+     * @param batch - the changes to apply.
+     */
+    @Override
+    public void applyBatch(ContactBatch batch) {
+        batch.validate(this::hasContact);
+        ContactBatch[] parts = new ContactBatch[shards.length];
+        int[] added = new int[shards.length];
+        // The phone numbers the batch gave to the names it added or changed, before the shards apply it
+        Map<String, Integer> batchPhones = new HashMap<>();
+        for (int i=0; i<batch.size(); i++) {
+            if (!batch.isApplied(i))
+                continue;
+            String name = batch.getName(i);
+            byte kind = batch.getKind(i);
+            if (listened)
+                switch (kind) {
+                    case ContactBatch.ADD -> addContact(name, batch.getPhone(i), batch.getEmail(i));
+                    case ContactBatch.DELETE -> deleteContact(name);
+                    case ContactBatch.SET_PHONE -> setPhone(name, batch.getPhone(i));
+                    default -> setEmail(name, batch.getEmail(i));
+                }
+            else {
+                int shard = shardIndex(name);
+                if (parts[shard] == null)
+                    parts[shard] = new ContactBatch();
+                parts[shard].append(batch, i, kind == ContactBatch.ADD ? nextSequence++ : -1);
+                if (kind == ContactBatch.ADD) {
+                    added[shard]++;
+                    counter++;
+                }
+                else if (kind == ContactBatch.DELETE)
+                    counter--;
+                if (kind != ContactBatch.SET_EMAIL) {
+                    if (kind != ContactBatch.ADD) {
+                        Integer phone = batchPhones.get(name);
+                        phones.remove(phone != null ? phone : shards[shard].getPhone(name));
+                    }
+                    if (kind != ContactBatch.DELETE) {
+                        phones.add(batch.getPhone(i));
+                        batchPhones.put(name, batch.getPhone(i));
+                    }
+                }
+            }
+        }
+        if (!listened)
+            forEachShard(i -> {
+                if (parts[i] != null)
+                    shards[i].apply(parts[i], added[i]);
+            });
+    }
+
+    @Override
+    public String findName(int number) {
+        ContactBookClass oldest = null;
+        int oldestIndex = -1;
+        for (ContactBookClass shard : shards) {
+            int index = shard.indexOf(number);
+            if (index >= 0 && (oldest == null || shard.sequenceAt(index) < oldest.sequenceAt(oldestIndex))) {
+                oldest = shard;
+                oldestIndex = index;
+            }
+        }
+        return oldest != null ? oldest.contactAt(oldestIndex).getName() : null;
+    }
+
+    /**
+     * Evaluates if there are at least two contacts with the same phone number. Contacts in different
+     * shards may share numbers, so the book counts the contacts of every number across the shards
+     * on every change, and the answer takes constant time.
+     * @return true if there are contacts that share phone numbers, false otherwise.
+     */
+    @Override
+    public boolean hasEqualPhones() {
+        return phones.hasSharedNumbers();
+    }
+
+    /**
+     * Gives to the action up to limit contacts, from the given cursor on, merging the shards by
+     * sequence number: every shard finds its first contact from the cursor on by binary search.
+     * @pre limit >= 0 && action != null, and action does not change the book
+     * @param cursor - the cursor of the first contact, 0 for the oldest one.
+     * @param limit - the maximum number of contacts to give.
+     * @param action - what to do with every contact.
+     * @return the cursor of the contact after the last one given, or -1 if there is none.
+     */
+    @Override
+    public long listContacts(long cursor, int limit, Consumer<Contact> action) {
+        int[] heads = new int[shards.length];
+        for (int i=0; i<shards.length; i++)
+            heads[i] = shards[i].nextIndex(shards[i].indexFrom(cursor));
+        int oldest = oldestHead(heads);
+        for (int listed=0; listed<limit && oldest >= 0; listed++) {
+            action.accept(shards[oldest].contactAt(heads[oldest]));
+            heads[oldest] = shards[oldest].nextIndex(heads[oldest] + 1);
+            oldest = oldestHead(heads);
+        }
+        return oldest >= 0 ? shards[oldest].sequenceAt(heads[oldest]) : -1;
+    }
+
+    @Override
+    public ContactBookStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Initializes the iterator, such that the first contact to iterate is the oldest one.
+     */
+    @Override
+    public void initializeIterator() {
+        iteration = iterator();
+    }
+
+    /**
+     * Evaluates if there is at least one more contact to iterate.
+     * @return true if there is at least one more contact to iterate, false otherwise.
+     */
+    @Override
+    public boolean hasNext() {
+        return iteration != null && iteration.hasNext();
+    }
+
+    /**
+     * Returns the next contact to iterate.
+     * @pre hasNext()
+     * @return the next Contact object to iterate.
+     */
+    @Override
+    public Contact next() {
+        return iteration.next();
+    }
+
+    /**
+     * Returns a new iterator of all the contacts, from the oldest to the most recent one, merging
+     * the shards by sequence number. The book must not be compacted while iterating, as for
+     * the iterators of ContactBookClass.
+     * @return a new iterator of all the contacts.
+     */
+    @Override
+    public Iterator<Contact> iterator() {
+        return new MergedIterator();
+    }
+
+    /**
+     * Returns the shard of the given name. Its indexes use the low bits of a mix of the same hash,
+     * so the shard is chosen by the high bits of a different mix, to keep the two independent.
+     * @param name - the name of a contact.
+     * @return the shard that has, or would have, the contact with the given name.
+     */
+    private ContactBookClass shardOf(String name) {
+        return shards[shardIndex(name)];
+    }
+
+    private int shardIndex(String name) {
+        long h = (name.hashCode() * 0x85EBCA6B) & 0xFFFFFFFFL;
+        return (int) (h >>> shift);
+    }
+
+    /**
+     * Returns the name at the given position of the alphabetical order of the whole book. The names
+     * of a shard have increasing global ranks, so every shard is searched by binary search until the
+     * one that has the name.
+     * @pre 0 <= rank < getNumberOfContacts()
+     * @param rank - the position, 0 for the first name.
+     * @return the name at the given position.
+     */
+    private String nameAt(int rank) {
+        for (ContactBookClass shard : shards) {
+            int low = 0;
+            int high = shard.getNumberOfContacts() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                String name = shard.getContactsByRank(middle, 1).get(0).getName();
+                int global = 0;
+                for (ContactBookClass other : shards)
+                    global += other.getRank(name);
+                if (global == rank)
+                    return name;
+                if (global < rank)
+                    low = middle + 1;
+                else
+                    high = middle - 1;
+            }
+        }
+        throw new NoSuchElementException();
+    }
+
+    /**
+     * Returns an array for a list of contacts per shard.
+     * @return a new array with a null list per shard.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Contact>[] newLists() {
+        return new List[shards.length];
+    }
+
+    /**
+     * Merges lists of contacts in alphabetical order, one per shard, keeping the first ones.
+     * @param found - the contacts found in every shard, each list in alphabetical order.
+     * @param limit - the maximum number of contacts to keep.
+     * @return the first contacts of all the lists, in alphabetical order, at most limit of them.
+     */
+    private static List<Contact> mergeByName(List<Contact>[] found, int limit) {
+        List<Contact> result = new ArrayList<>();
+        for (List<Contact> contacts : found)
+            result.addAll(contacts);
+        result.sort(Comparator.comparing(Contact::getName));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Returns the shard whose next contact is the oldest.
+     * @param heads - the index of the next contact of every shard, or -1 if it has none.
+     * @return the shard with the oldest next contact, or -1 if no shard has a next contact.
+     */
+    private int oldestHead(int[] heads) {
+        int oldest = -1;
+        for (int i=0; i<shards.length; i++)
+            if (heads[i] >= 0 && (oldest < 0 || shards[i].sequenceAt(heads[i]) < shards[oldest].sequenceAt(heads[oldest])))
+                oldest = i;
+        return oldest;
+    }
+
+    /**
+     * Runs the given task once for every shard, in parallel on the pool, and waits for all of them.
+     * @param task - the task, given the number of a shard.
+     */
+    private void forEachShard(IntConsumer task) {
+        pool.submit(() -> IntStream.range(0, shards.length).parallel().forEach(task)).join();
+    }
+
+    /**
+     * Iterator that merges the shards by sequence number. It reads the contacts of every shard in
+     * batches, and reads the next batches of all the shards in parallel whenever one of them runs out.
+     */
+    private class MergedIterator implements Iterator<Contact> {
+        private final int[] expectedCompactions;
+        // Index of the next contact to read in every shard, or -1 once the shard is read to the end
+        private final int[] positions;
+        // The contacts read and not returned yet of every shard, and their sequence numbers
+        private final Contact[][] buffers;
+        private final long[][] sequences;
+        private final int[] starts;
+        private final int[] ends;
+
+        MergedIterator() {
+            expectedCompactions = new int[shards.length];
+            positions = new int[shards.length];
+            buffers = new Contact[shards.length][BATCH];
+            sequences = new long[shards.length][BATCH];
+            starts = new int[shards.length];
+            ends = new int[shards.length];
+            for (int i=0; i<shards.length; i++)
+                expectedCompactions[i] = shards[i].getCompactions();
+            refill();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return oldest() >= 0;
+        }
+
+        @Override
+        public Contact next() {
+            int shard = oldest();
+            if (shard < 0)
+                throw new NoSuchElementException();
+            Contact next = buffers[shard][starts[shard]];
+            buffers[shard][starts[shard]++] = null;
+            return next;
+        }
+
+        /**
+         * Returns the shard whose next contact is the oldest, reading the next batches first if some
+         * shard has no contacts read.
+         * @return the shard with the oldest next contact, or -1 if all the contacts were returned.
+         */
+        private int oldest() {
+            int oldest = -1;
+            long sequence = Long.MAX_VALUE;
+            for (int i=0; i<shards.length; i++) {
+                if (starts[i] == ends[i]) {
+                    if (positions[i] < 0)
+                        continue;
+                    refill();
+                    return oldest();
+                }
+                if (sequences[i][starts[i]] < sequence) {
+                    oldest = i;
+                    sequence = sequences[i][starts[i]];
+                }
+            }
+            return oldest;
+        }
+
+        /**
+         * Fills the buffers of all the shards that are not read to the end, in parallel.
+         */
+        private void refill() {
+            forEachShard(this::refill);
+        }
+
+        /**
+         * Moves the contacts not returned yet of a shard to the start of its buffer, and fills the
+         * rest of it with the next contacts of the shard.
+         * @param shard - the number of the shard.
+         */
+        private void refill(int shard) {
+            ContactBookClass book = shards[shard];
+            if (book.getCompactions() != expectedCompactions[shard])
+                throw new ConcurrentModificationException();
+            Contact[] buffer = buffers[shard];
+            long[] sequence = sequences[shard];
+            int count = ends[shard] - starts[shard];
+            System.arraycopy(buffer, starts[shard], buffer, 0, count);
+            System.arraycopy(sequence, starts[shard], sequence, 0, count);
+            int position = positions[shard];
+            while (count < BATCH && position >= 0) {
+                position = book.nextIndex(position);
+                if (position >= 0) {
+                    buffer[count] = book.contactAt(position);
+                    sequence[count++] = book.sequenceAt(position);
+                    position++;
+                }
+            }
+            Arrays.fill(buffer, count, BATCH, null);
+            positions[shard] = position;
+            starts[shard] = 0;
+            ends[shard] = count;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package contactBook;
+
+/**
+ * Tells a WriteAheadLog when to force its records to the disk (fsync).
+ * Forcing after every operation is the safest and the slowest choice. A group commit forces once
+ * every given number of operations or milliseconds, whichever comes first, so a crash loses at most
+ * that window. Never forcing leaves it to the operating system.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class SyncPolicy {
+    enum Mode { EVERY_OPERATION, GROUP, NONE }
+
+    private final Mode mode;
+    private final int maxOperations;
+    private final long maxMillis;
+
+    private SyncPolicy(Mode mode, int maxOperations, long maxMillis) {
+        this.mode = mode;
+        this.maxOperations = maxOperations;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * Returns the policy that forces the log after every operation.
+     * @return the policy that forces the log after every operation.
+     */
+    public static SyncPolicy everyOperation() {
+        return new SyncPolicy(Mode.EVERY_OPERATION, 1, 0);
+    }
+
+    /**
+     * Returns the policy that forces the log after the given number of operations, or after
+     * the given time since the first operation not forced yet.
+     * @pre maxOperations > 0 && maxMillis >= 0
+     * @param maxOperations - the maximum number of operations not forced to the disk.
+     * @param maxMillis - the maximum time, in milliseconds, an operation waits to be forced, or 0 for no limit.
+     * @return the group commit policy.
+     */
+    public static SyncPolicy groupCommit(int maxOperations, long maxMillis) {
+        return new SyncPolicy(Mode.GROUP, maxOperations, maxMillis);
+    }
+
+    /**
+     * Returns the policy that never forces the log, only writing it to the operating system.
+     * @return the policy that never forces the log.
+     */
+    public static SyncPolicy none() {
+        return new SyncPolicy(Mode.NONE, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * Returns the policy described by the given text: "op", "none" or "group:operations:millis".
+     * @pre text != null
+     * @param text - the description of the policy.
+     * @return the policy described by the given text.
+     * @throws IllegalArgumentException if the text does not describe a policy.
+     */
+    public static SyncPolicy parse(String text) {
+        String[] parts = text.split(":");
+        try {
+            if (parts.length == 1 && parts[0].equals("op"))
+                return everyOperation();
+            if (parts.length == 1 && parts[0].equals("none"))
+                return none();
+            if (parts.length == 3 && parts[0].equals("group")
+                    && Integer.parseInt(parts[1]) > 0 && Long.parseLong(parts[2]) >= 0)
+                return groupCommit(Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            // Falls through to the error below
+        }
+        throw new IllegalArgumentException("Unknown sync policy: " + text);
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    int getMaxOperations() {
+        return maxOperations;
+    }
+
+    long getMaxMillis() {
+        return maxMillis;
+    }
+}
@@ -0,0 +1,573 @@
+package contactBook;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Storage engine for books larger than the heap: the names and emails of all the contacts are kept in a
+ * file on the local disk, and only the contacts used most are kept on the heap, as Contact objects, in a
+ * cache of a bounded number of bytes. The heap holds 20 bytes per contact besides the cache: the phone
+ * number, which the phone index needs for every lookup, and the offset, the length and the cache slot of
+ * its record in the file.
+ * A record is the name length, the name bytes, the email length and the email bytes, in UTF-8, as in a
+ * ContactBookSnapshot. Records are only appended to the file, through a buffer, (a new email appends a
+ * new record), and the file is rewritten with just the live records once most of it is garbage. The file
+ * is temporary: it is deleted when the program ends, since keeping the contacts between runs is the job
+ * of the snapshot and the log.
+ * The cache is a segmented LRU, whose size is the estimate of the bytes of its contacts: a contact read
+ * from the file enters a probation segment, and moves to a protected one (of at most 80% of the cache)
+ * when it is read again, so a scan of the whole book, which reads every contact once, only replaces the
+ * contacts in probation, and the hot ones stay. The least recently used contact of the probation segment
+ * is the first to leave. Added contacts only enter the cache when they are read.
+ * Reading a contact updates the cache, so the cache is split in 16 stripes, by position, each a segmented
+ * LRU of 1/16 of the bytes with its own lock: readers only wait for the ones that read a position of the
+ * same stripe, and a record is read from the file without any lock. Threads that only read (as the readers
+ * of a ConcurrentContactBook) may share the storage; the operations that change it must not run along with
+ * any other one, as in a ContactBook.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class TieredStorage extends ContactStorage {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // The file is only rewritten once it has this many bytes, and most of them are garbage
+    private static final long MIN_RECLAIM = 1L << 26;
+    // Marks a deleted position in offsets, and a position without a cache slot in slots
+    private static final long FREE = -1;
+    private static final int NONE = -1;
+    // Estimated bytes of a cached contact besides its characters: the Contact, its two strings and their arrays
+    private static final int ENTRY_OVERHEAD = 112;
+    // The cache segments, and the percentage of the cache the protected one may take
+    private static final int PROBATION = 0;
+    private static final int PROTECTED = 1;
+    private static final int PROTECTED_PERCENT = 80;
+    // The stripes of the cache (a power of two): position i is cached in stripe i & (STRIPES - 1)
+    private static final int STRIPES = 16;
+
+    private final Path directory;
+    private FileChannel file;
+    // Records appended since the last write to the file, which go at its end
+    private ByteBuffer pending;
+    // Bytes written to the file, and bytes of the records still in use (including the pending ones)
+    private long fileBytes;
+    private long liveBytes;
+
+    private int[] phones;
+    // The offset of the record of every position in the file, and its length
+    private long[] offsets;
+    private int[] lengths;
+    // The cache slot of every position in its stripe, or NONE if it is not cached (guarded by the stripe)
+    private int[] slots;
+
+    // The cache: the maximum estimated bytes of its contacts, and its stripes
+    private final long maxBytes;
+    private final Stripe[] stripes;
+    // Where the hits and misses of the cache are counted
+    private ContactBookStatistics statistics;
+
+    /**
+     * Creates an empty storage, with its file in the given directory.
+     * @pre cacheBytes > 0 && directory != null
+     * @param cacheBytes - the maximum estimated bytes of the cached contacts.
+     * @param directory - the directory of the file of the contacts.
+     * @throws IOException if the file cannot be created.
+     */
+    public TieredStorage(long cacheBytes, Path directory) throws IOException {
+        this.directory = directory;
+        file = newFile();
+        pending = ByteBuffer.allocate(BUFFER_SIZE);
+        fileBytes = 0;
+        liveBytes = 0;
+        phones = new int[0];
+        offsets = new long[0];
+        lengths = new int[0];
+        slots = new int[0];
+        maxBytes = cacheBytes;
+        stripes = new Stripe[STRIPES];
+        for (int i=0; i<STRIPES; i++)
+            stripes[i] = new Stripe(cacheBytes / STRIPES);
+        statistics = new ContactBookStatistics();
+    }
+
+    @Override
+    void attach(ContactBookStatistics statistics) {
+        this.statistics = statistics;
+        statistics.cacheAllocated(maxBytes);
+    }
+
+    @Override
+    int capacity() {
+        return offsets.length;
+    }
+
+    @Override
+    void resize(int capacity) {
+        int old = offsets.length;
+        phones = Arrays.copyOf(phones, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+        Arrays.fill(offsets, old, capacity, FREE);
+        Arrays.fill(slots, old, capacity, NONE);
+    }
+
+    @Override
+    void add(int index, String name, int phone, String email) {
+        phones[index] = phone;
+        append(index, encode(name, email));
+    }
+
+    @Override
+    void delete(int index) {
+        Stripe stripe = stripe(index);
+        synchronized (stripe) {
+            if (slots[index] != NONE)
+                stripe.evict(slots[index]);
+        }
+        liveBytes -= lengths[index];
+        offsets[index] = FREE;
+    }
+
+    @Override
+    boolean isDeleted(int index) {
+        return offsets[index] == FREE;
+    }
+
+    @Override
+    Contact get(int index) {
+        return contact(index);
+    }
+
+    @Override
+    String getName(int index) {
+        return contact(index).getName();
+    }
+
+    @Override
+    int getPhone(int index) {
+        return phones[index];
+    }
+
+    @Override
+    String getEmail(int index) {
+        return contact(index).getEmail();
+    }
+
+    @Override
+    boolean hasName(int index, String name) {
+        return name.equals(contact(index).getName());
+    }
+
+    @Override
+    boolean hasEmail(int index, String email) {
+        return email.equals(contact(index).getEmail());
+    }
+
+    @Override
+    void setPhone(int index, int phone) {
+        phones[index] = phone;
+        Stripe stripe = stripe(index);
+        synchronized (stripe) {
+            if (slots[index] != NONE)
+                stripe.cached[slots[index]].setPhone(phone);
+        }
+    }
+
+    @Override
+    void setEmail(int index, String email) {
+        Stripe stripe = stripe(index);
+        String name = null;
+        synchronized (stripe) {
+            if (slots[index] != NONE)
+                name = stripe.cached[slots[index]].getName();
+        }
+        // A contact that is not cached is not a miss, and is not cached just to be rewritten
+        if (name == null)
+            name = name(read(file, offsets[index], lengths[index]));
+        liveBytes -= lengths[index];
+        append(index, encode(name, email));
+        synchronized (stripe) {
+            if (slots[index] != NONE) {
+                stripe.cached[slots[index]].setEmail(email);
+                stripe.reweigh(slots[index]);
+            }
+        }
+        reclaimIfWasteful();
+    }
+
+    @Override
+    void move(int from, int to) {
+        phones[to] = phones[from];
+        offsets[to] = offsets[from];
+        lengths[to] = lengths[from];
+        offsets[from] = FREE;
+        Contact c = null;
+        Stripe stripe = stripe(from);
+        synchronized (stripe) {
+            if (slots[from] != NONE) {
+                c = stripe.cached[slots[from]];
+                stripe.evict(slots[from]);
+            }
+        }
+        // The position is in another stripe, so its contact starts over in the probation segment there
+        if (c != null) {
+            stripe = stripe(to);
+            synchronized (stripe) {
+                stripe.insert(to, c);
+            }
+        }
+    }
+
+    @Override
+    void release(int from) {
+        reclaimIfWasteful();
+    }
+
+    @Override
+    void load(ContactBookSnapshot snapshot) {
+        for (int i=0; i<snapshot.size(); i++) {
+            phones[i] = snapshot.phone(i);
+            append(i, snapshot.record(i));
+        }
+    }
+
+    /**
+     * Returns the stripe of the cache of the given position.
+     * @param index - the position.
+     * @return the stripe where the contact in the given position is cached.
+     */
+    private Stripe stripe(int index) {
+        return stripes[index & (STRIPES - 1)];
+    }
+
+    /**
+     * Returns the contact in the given position from the cache, reading it from the file if it is
+     * not there, and counts the hit or the miss. Only the stripe of the position is locked, and not
+     * while the file is read.
+     * @param index - the position of the contact.
+     * @return the contact in the given position.
+     */
+    private Contact contact(int index) {
+        Stripe stripe = stripe(index);
+        synchronized (stripe) {
+            int slot = slots[index];
+            if (slot != NONE) {
+                statistics.cacheHit();
+                stripe.touch(slot);
+                return stripe.cached[slot];
+            }
+        }
+        statistics.cacheMissed();
+        ByteBuffer record = read(file, offsets[index], lengths[index]);
+        int nameLength = record.getInt(0);
+        int emailLength = record.getInt(4 + nameLength);
+        String email = new String(record.array(), 8 + nameLength, emailLength, StandardCharsets.UTF_8);
+        Contact c = new Contact(name(record), phones[index], email);
+        synchronized (stripe) {
+            // Another reader may have cached it meanwhile
+            if (slots[index] != NONE)
+                return stripe.cached[slots[index]];
+            stripe.insert(index, c);
+        }
+        return c;
+    }
+
+    /**
+     * Decodes the name of a record.
+     * @param record - the record, from position 0.
+     * @return the contact name in the record.
+     */
+    private static String name(ByteBuffer record) {
+        return new String(record.array(), 4, record.getInt(0), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes the record of a contact.
+     * @param name - the contact name.
+     * @param email - the contact email.
+     * @return a buffer with the record, from position 0 to its limit.
+     */
+    private static ByteBuffer encode(String name, String email) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] emailBytes = email.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(8 + nameBytes.length + emailBytes.length);
+        record.putInt(nameBytes.length).put(nameBytes).putInt(emailBytes.length).put(emailBytes);
+        return record.flip();
+    }
+
+    /**
+     * Appends a record at the end of the file, as the record of the given position. The record goes to
+     * the buffer, which is written to the file when it is full; a record larger than the buffer is
+     * written to the file at once.
+     * @param index - the position of the record.
+     * @param record - the record, from its position to its limit.
+     */
+    private void append(int index, ByteBuffer record) {
+        int length = record.remaining();
+        if (pending.remaining() < length)
+            flush();
+        offsets[index] = fileBytes + pending.position();
+        lengths[index] = length;
+        liveBytes += length;
+        if (length > pending.capacity()) {
+            write(record);
+            fileBytes += length;
+        }
+        else
+            pending.put(record);
+    }
+
+    /**
+     * Writes the buffer to the end of the file and empties it.
+     */
+    private void flush() {
+        write(pending.flip());
+        fileBytes += pending.limit();
+        pending.clear();
+    }
+
+    /**
+     * Writes the given bytes at the end of the file, which has fileBytes bytes.
+     * @param bytes - the bytes, from their position to their limit.
+     */
+    private void write(ByteBuffer bytes) {
+        try {
+            long position = fileBytes;
+            while (bytes.hasRemaining())
+                position += file.write(bytes, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a record from the given file, or from the buffer if it is still there.
+     * @param from - the file.
+     * @param offset - the offset of the record.
+     * @param length - the length of the record.
+     * @return a heap buffer with the record, from position 0.
+     */
+    private ByteBuffer read(FileChannel from, long offset, int length) {
+        ByteBuffer record = ByteBuffer.allocate(length);
+        if (from == file && offset >= fileBytes)
+            return record.put(0, pending, (int) (offset - fileBytes), length);
+        try {
+            while (record.hasRemaining())
+                if (from.read(record, offset + record.position()) < 0)
+                    throw new IOException("Truncated contacts file");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return record.clear();
+    }
+
+    /**
+     * Rewrites the file with only the records in use, in the order of their positions, if it is large
+     * and more than half of it is garbage.
+     */
+    private void reclaimIfWasteful() {
+        long usedBytes = fileBytes + pending.position();
+        if (usedBytes <= MIN_RECLAIM || 2 * liveBytes >= usedBytes)
+            return;
+        flush();
+        FileChannel old = file;
+        try {
+            file = newFile();
+            fileBytes = 0;
+            liveBytes = 0;
+            for (int i=0; i<offsets.length; i++)
+                if (offsets[i] != FREE)
+                    append(i, read(old, offsets[i], lengths[i]));
+            old.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates a new temporary file in the directory of the storage, deleted when it is closed or
+     * when the program ends.
+     * @return the channel of the new file.
+     * @throws IOException if the file cannot be created.
+     */
+    private FileChannel newFile() throws IOException {
+        Path path = Files.createTempFile(directory, "contacts", ".tier");
+        return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Returns the estimated bytes of a cached contact.
+     * @param c - the contact.
+     * @return the estimated bytes of the contact on the heap.
+     */
+    private static int weight(Contact c) {
+        return ENTRY_OVERHEAD + 2 * (c.getName().length() + c.getEmail().length());
+    }
+
+    /**
+     * A stripe of the cache: a segmented LRU of the contacts of some of the positions, in slots of its
+     * own. Every method must be called while holding the lock of the stripe.
+     */
+    private class Stripe {
+        // The maximum estimated bytes of the contacts of the stripe
+        private final long maxBytes;
+        // The contacts in the slots, with the position and the estimated bytes of each one
+        private Contact[] cached;
+        private int[] owners;
+        private int[] weights;
+        // Doubly linked lists of the slots of both segments, most recently used first (free slots are linked by next)
+        private int[] previous;
+        private int[] next;
+        private byte[] segments;
+        private final int[] heads;
+        private final int[] tails;
+        private final long[] segmentBytes;
+        private int freeSlot;
+        private int usedSlots;
+
+        /**
+         * Creates an empty stripe.
+         * @param maxBytes - the maximum estimated bytes of the contacts of the stripe.
+         */
+        Stripe(long maxBytes) {
+            this.maxBytes = maxBytes;
+            cached = new Contact[0];
+            owners = new int[0];
+            weights = new int[0];
+            previous = new int[0];
+            next = new int[0];
+            segments = new byte[0];
+            heads = new int[] {NONE, NONE};
+            tails = new int[] {NONE, NONE};
+            segmentBytes = new long[2];
+            freeSlot = NONE;
+            usedSlots = 0;
+        }
+
+        /**
+         * Caches a contact read from the file, in the probation segment, after evicting the least recently
+         * used contacts until it fits (a contact larger than the whole stripe is cached alone).
+         * @param index - the position of the contact.
+         * @param c - the contact.
+         */
+        void insert(int index, Contact c) {
+            int weight = weight(c);
+            while (usedSlots > 0 && segmentBytes[PROBATION] + segmentBytes[PROTECTED] + weight > maxBytes)
+                evict(tails[PROBATION] != NONE ? tails[PROBATION] : tails[PROTECTED]);
+            if (freeSlot == NONE)
+                growSlots();
+            int slot = freeSlot;
+            freeSlot = next[slot];
+            usedSlots++;
+            cached[slot] = c;
+            owners[slot] = index;
+            weights[slot] = weight;
+            slots[index] = slot;
+            link(slot, PROBATION);
+            statistics.cacheFilled(weight);
+        }
+
+        /**
+         * Marks a cached contact as the most recently used one, moving it to the protected segment if it
+         * is in probation. The least recently used contacts of the protected segment go back to probation
+         * while it is too large.
+         * @param slot - the slot of the contact.
+         */
+        void touch(int slot) {
+            if (heads[PROTECTED] == slot)
+                return;
+            unlink(slot);
+            link(slot, PROTECTED);
+            while (segmentBytes[PROTECTED] > maxBytes / 100 * PROTECTED_PERCENT && tails[PROTECTED] != slot) {
+                int demoted = tails[PROTECTED];
+                unlink(demoted);
+                link(demoted, PROBATION);
+            }
+        }
+
+        /**
+         * Updates the estimated bytes of a cached contact whose email changed.
+         * @param slot - the slot of the contact.
+         */
+        void reweigh(int slot) {
+            int weight = weight(cached[slot]);
+            segmentBytes[segments[slot]] += weight - weights[slot];
+            statistics.cacheFilled(weight - weights[slot]);
+            weights[slot] = weight;
+        }
+
+        /**
+         * Removes a contact from the cache.
+         * @param slot - the slot of the contact.
+         */
+        void evict(int slot) {
+            unlink(slot);
+            statistics.cacheFilled(-weights[slot]);
+            slots[owners[slot]] = NONE;
+            cached[slot] = null;
+            next[slot] = freeSlot;
+            freeSlot = slot;
+            usedSlots--;
+        }
+
+        /**
+         * Doubles the number of slots of the stripe, linking the new ones as free.
+         */
+        private void growSlots() {
+            int old = cached.length;
+            int length = Math.max(16, 2 * old);
+            cached = Arrays.copyOf(cached, length);
+            owners = Arrays.copyOf(owners, length);
+            weights = Arrays.copyOf(weights, length);
+            previous = Arrays.copyOf(previous, length);
+            next = Arrays.copyOf(next, length);
+            segments = Arrays.copyOf(segments, length);
+            for (int slot=length-1; slot>=old; slot--) {
+                next[slot] = freeSlot;
+                freeSlot = slot;
+            }
+        }
+
+        /**
+         * Links a slot as the most recently used one of the given segment.
+         * @param slot - the slot.
+         * @param segment - PROBATION or PROTECTED.
+         */
+        private void link(int slot, int segment) {
+            segments[slot] = (byte) segment;
+            previous[slot] = NONE;
+            next[slot] = heads[segment];
+            if (heads[segment] != NONE)
+                previous[heads[segment]] = slot;
+            else
+                tails[segment] = slot;
+            heads[segment] = slot;
+            segmentBytes[segment] += weights[slot];
+        }
+
+        /**
+         * Unlinks a slot from the list of its segment.
+         * @param slot - the slot.
+         */
+        private void unlink(int slot) {
+            int segment = segments[slot];
+            if (previous[slot] != NONE)
+                next[previous[slot]] = next[slot];
+            else
+                heads[segment] = next[slot];
+            if (next[slot] != NONE)
+                previous[next[slot]] = previous[slot];
+            else
+                tails[segment] = previous[slot];
+            segmentBytes[segment] -= weights[slot];
+        }
+    }
+}
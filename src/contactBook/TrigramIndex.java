@@ -0,0 +1,449 @@
+package contactBook;
+
+import java.util.Arrays;
+
+/**
+ * Index of the contact names by trigram (every three consecutive characters of a name, ignoring case,
+ * padded at both ends), used by the ContactBook to find the names closest to a mistyped one.
+ * A name within edit distance d of another one shares all but at most 3d of its distinct trigrams with
+ * it, so if the searched name has more than 3d distinct trigrams, a search only checks the contacts in
+ * the 3d + 1 shortest lists of its trigrams, however many contacts share its common trigrams. A name
+ * with 3d distinct trigrams or fewer (up to 5 characters, or one with repeated ones, such as "Bo" or
+ * "Aaaaaa") may share none with a name within distance d ("Bo" and "Jo" share none), so the search
+ * checks the contacts whose names are at most d characters longer or shorter instead.
+ * Every trigram maps to the list of the indexes of the contacts that have it, in no particular order,
+ * in an open addressing table, and every name length to the list of the contacts with names of that
+ * length. Every contact keeps the position of its index in the list of every one of its trigrams and
+ * of its length, in arrays indexed by contact index, so removing and moving a contact cost a constant
+ * time per trigram of its name, however long the lists are.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+class TrigramIndex {
+    // Largest edit distance of the names found by a search
+    static final int MAX_DISTANCE = 2;
+    private static final int DEFAULT_TRIGRAMS = 1024;
+    private static final int DEFAULT_LIST = 4;
+    // Keys are 48 bit trigrams, so no trigram is EMPTY
+    private static final long EMPTY = -1;
+    // Padding of the names, so that their first and last characters start and end trigrams
+    private static final char PAD = '\0';
+
+    private final ContactStorage contacts;
+    // Table of the trigrams (power of two size), with the list of every one of them
+    private long[] keys;
+    private int[][] lists;
+    private int[] lengths;
+    private int trigrams;
+    // Position of every contact in the lists of its trigrams, in the order of trigramsOf, by contact index
+    private int[][] positions;
+    // The list of the contacts with names of every length, and the position of every contact in its list
+    private int[][] byLength;
+    private int[] lengthSizes;
+    private int[] lengthPositions;
+
+    /**
+     * Creates an empty index.
+     * @pre capacity > 0 && contacts != null
+     * @param capacity - the initial capacity of the contacts storage.
+     * @param contacts - the storage with the names of the contacts.
+     */
+    TrigramIndex(int capacity, ContactStorage contacts) {
+        this.contacts = contacts;
+        keys = new long[DEFAULT_TRIGRAMS];
+        Arrays.fill(keys, EMPTY);
+        lists = new int[DEFAULT_TRIGRAMS][];
+        lengths = new int[DEFAULT_TRIGRAMS];
+        trigrams = 0;
+        positions = new int[capacity][];
+        byLength = new int[0][];
+        lengthSizes = new int[0];
+        lengthPositions = new int[capacity];
+    }
+
+    /**
+     * Makes room for contact indexes up to capacity - 1.
+     * @param capacity - the new capacity of the contacts storage.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > positions.length) {
+            positions = Arrays.copyOf(positions, capacity);
+            lengthPositions = Arrays.copyOf(lengthPositions, capacity);
+        }
+    }
+
+    /**
+     * Adds the contact at the given index.
+     * @pre the contact at index is in the storage and not in the index
+     * @param index - the index of the contact.
+     */
+    void add(int index) {
+        String name = contacts.getName(index);
+        addLength(index, name.length());
+        long[] grams = trigramsOf(name);
+        int[] at = new int[grams.length];
+        for (int i=0; i<grams.length; i++) {
+            int slot = slotOf(grams[i], true);
+            if (lengths[slot] == lists[slot].length)
+                lists[slot] = Arrays.copyOf(lists[slot], 2*lengths[slot]);
+            at[i] = lengths[slot];
+            lists[slot][lengths[slot]++] = index;
+        }
+        positions[index] = at;
+    }
+
+    /**
+     * Removes the contact at the given index. The last contact of every list it is in takes its place.
+     * @pre the contact at index is in the index, and the storage still has its name
+     * @param index - the index of the contact.
+     */
+    void remove(int index) {
+        String name = contacts.getName(index);
+        removeLength(index, name.length());
+        long[] grams = trigramsOf(name);
+        int[] at = positions[index];
+        for (int i=0; i<grams.length; i++) {
+            int slot = slotOf(grams[i], false);
+            int last = lists[slot][--lengths[slot]];
+            if (last != index) {
+                lists[slot][at[i]] = last;
+                long[] lastGrams = trigramsOf(contacts.getName(last));
+                int j = 0;
+                while (lastGrams[j] != grams[i])
+                    j++;
+                positions[last][j] = at[i];
+            }
+        }
+        positions[index] = null;
+    }
+
+    /**
+     * Moves a contact to another index.
+     * @pre the contact at from is in the index, and the storage already moved it to to
+     * @param from - the current index of the contact.
+     * @param to - the new index of the contact.
+     */
+    void move(int from, int to) {
+        String name = contacts.getName(to);
+        long[] grams = trigramsOf(name);
+        int[] at = positions[from];
+        for (int i=0; i<grams.length; i++)
+            lists[slotOf(grams[i], false)][at[i]] = to;
+        positions[to] = at;
+        positions[from] = null;
+        byLength[name.length()][lengthPositions[from]] = to;
+        lengthPositions[to] = lengthPositions[from];
+    }
+
+    /**
+     * Returns the contacts with the names closest to the given one, up to MAX_DISTANCE edits away, by
+     * edit distance (the number of characters to insert, delete or replace to get one from the other),
+     * and then by name. A name within MAX_DISTANCE edits misses at most 3 * MAX_DISTANCE of the distinct
+     * trigrams of the given one, so if the given name has more, the name is in one of the lists of any
+     * 3 * MAX_DISTANCE + 1 of them: only the contacts in the shortest lists are candidates, and each one
+     * is checked once. Otherwise, the candidates are the contacts with names of about the same length.
+     * @pre name != null && limit >= 0
+     * @param name - the searched name.
+     * @param limit - the maximum number of contacts to return.
+     * @return the indexes of the closest contacts, at most limit of them, the closest first.
+     */
+    int[] search(String name, int limit) {
+        if (limit == 0)
+            return new int[0];
+        Closest closest = new Closest(name, limit);
+        long[] grams = trigramsOf(name);
+        if (grams.length <= 3*MAX_DISTANCE) {
+            int shortest = Math.max(0, name.length() - MAX_DISTANCE);
+            int longest = Math.min(byLength.length - 1, name.length() + MAX_DISTANCE);
+            for (int length=shortest; length<=longest; length++)
+                for (int j=0; j<lengthSizes[length]; j++)
+                    closest.check(byLength[length][j]);
+            return closest.found();
+        }
+        int[] slots = new int[grams.length];
+        int count = 0;
+        // The trigrams no contact has are empty lists, so they count as the shortest ones
+        int absent = 0;
+        for (long gram : grams) {
+            int slot = slotOf(gram, false);
+            if (slot < 0) {
+                absent++;
+                continue;
+            }
+            // Insertion sort by list length, since names have few trigrams
+            int i = count++;
+            while (i > 0 && lengths[slots[i - 1]] > lengths[slot]) {
+                slots[i] = slots[i - 1];
+                i--;
+            }
+            slots[i] = slot;
+        }
+        Candidates seen = new Candidates();
+        for (int l=0; l<Math.min(count, 3*MAX_DISTANCE + 1 - absent); l++)
+            for (int j=0; j<lengths[slots[l]]; j++) {
+                int index = lists[slots[l]][j];
+                if (seen.add(index))
+                    closest.check(index);
+            }
+        return closest.found();
+    }
+
+    /**
+     * Adds a contact to the list of the contacts with names of its length.
+     * @param index - the index of the contact.
+     * @param length - the length of its name.
+     */
+    private void addLength(int index, int length) {
+        if (length >= byLength.length) {
+            int old = byLength.length;
+            byLength = Arrays.copyOf(byLength, Math.max(2*old, length + 1));
+            lengthSizes = Arrays.copyOf(lengthSizes, byLength.length);
+            for (int l=old; l<byLength.length; l++)
+                byLength[l] = new int[DEFAULT_LIST];
+        }
+        if (lengthSizes[length] == byLength[length].length)
+            byLength[length] = Arrays.copyOf(byLength[length], 2*lengthSizes[length]);
+        lengthPositions[index] = lengthSizes[length];
+        byLength[length][lengthSizes[length]++] = index;
+    }
+
+    /**
+     * Removes a contact from the list of the contacts with names of its length. The last contact of the
+     * list takes its place.
+     * @param index - the index of the contact.
+     * @param length - the length of its name.
+     */
+    private void removeLength(int index, int length) {
+        int last = byLength[length][--lengthSizes[length]];
+        byLength[length][lengthPositions[index]] = last;
+        lengthPositions[last] = lengthPositions[index];
+    }
+
+    /**
+     * Tells if a name at some distance comes before a found contact, ordering by distance and then by name.
+     * @param distance - the distance of the name.
+     * @param name - the name.
+     * @param otherDistance - the distance of the found contact.
+     * @param other - the index of the found contact.
+     * @return true if the name comes before the found contact.
+     */
+    private boolean closer(int distance, String name, int otherDistance, int other) {
+        return distance < otherDistance || distance == otherDistance && name.compareTo(contacts.getName(other)) < 0;
+    }
+
+    /**
+     * Returns the edit distance between two strings, or max + 1 if it is larger than max.
+     * @pre a != null && b != null && max >= 0
+     * @param a - a string.
+     * @param b - another string.
+     * @param max - the largest distance of interest.
+     * @return the edit distance between the strings, or max + 1 if it is larger than max.
+     */
+    static int distance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max)
+            return max + 1;
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j=0; j<=b.length(); j++)
+            previous[j] = j;
+        for (int i=1; i<=a.length(); i++) {
+            current[0] = i;
+            int smallest = i;
+            for (int j=1; j<=b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(previous[j - 1] + cost, Math.min(previous[j], current[j - 1]) + 1);
+                smallest = Math.min(smallest, current[j]);
+            }
+            if (smallest > max)
+                return max + 1;
+            int[] row = previous;
+            previous = current;
+            current = row;
+        }
+        return previous[b.length()] > max ? max + 1 : previous[b.length()];
+    }
+
+    /**
+     * Returns the distinct trigrams of a name, in order of first occurrence.
+     * @param name - the name.
+     * @return the trigrams, each one as the three characters in 16 bits each.
+     */
+    private static long[] trigramsOf(String name) {
+        long[] grams = new long[name.length() + 1];
+        int count = 0;
+        char first = PAD;
+        char second = PAD;
+        for (int i=0; i<=name.length(); i++) {
+            char third = i < name.length() ? Character.toLowerCase(name.charAt(i)) : PAD;
+            long gram = (long) first << 32 | (long) second << 16 | third;
+            int j = 0;
+            while (j < count && grams[j] != gram)
+                j++;
+            if (j == count)
+                grams[count++] = gram;
+            first = second;
+            second = third;
+        }
+        return count == grams.length ? grams : Arrays.copyOf(grams, count);
+    }
+
+    /**
+     * Returns the slot of the given trigram, adding it if asked and needed.
+     * @param gram - the trigram.
+     * @param create - whether to add the trigram if it is not in the table.
+     * @return the slot of the trigram, or -1 if it is not in the table and create is false.
+     */
+    private int slotOf(long gram, boolean create) {
+        int mask = keys.length - 1;
+        int slot = hash(gram) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == gram)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        if (!create)
+            return -1;
+        if (2*(trigrams + 1) > keys.length) {
+            rehash();
+            return slotOf(gram, true);
+        }
+        keys[slot] = gram;
+        lists[slot] = new int[DEFAULT_LIST];
+        lengths[slot] = 0;
+        trigrams++;
+        return slot;
+    }
+
+    /**
+     * Doubles the table of the trigrams. The lists keep their contents, so positions stay valid.
+     */
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[][] oldLists = lists;
+        int[] oldLengths = lengths;
+        keys = new long[2*oldKeys.length];
+        Arrays.fill(keys, EMPTY);
+        lists = new int[keys.length][];
+        lengths = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int i=0; i<oldKeys.length; i++)
+            if (oldKeys[i] != EMPTY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                lists[slot] = oldLists[i];
+                lengths[slot] = oldLengths[i];
+            }
+    }
+
+    private static int hash(long gram) {
+        long h = gram * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * The closest contacts found by a search so far, the closest first.
+     */
+    private class Closest {
+        private final String name;
+        private final int[] best;
+        private final int[] distances;
+        private int found;
+
+        /**
+         * Starts a search.
+         * @param name - the searched name.
+         * @param limit - the maximum number of contacts to find, more than 0.
+         */
+        private Closest(String name, int limit) {
+            this.name = name;
+            best = new int[limit];
+            distances = new int[limit];
+            found = 0;
+        }
+
+        /**
+         * Keeps a candidate among the closest contacts, if it is close enough.
+         * @param index - the index of the candidate.
+         */
+        private void check(int index) {
+            String other = contacts.getName(index);
+            int limit = best.length;
+            int max = found == limit ? distances[found - 1] : MAX_DISTANCE;
+            int distance = distance(name, other, max);
+            if (distance > max || found == limit && !closer(distance, other, distances[found - 1], best[found - 1]))
+                return;
+            if (found < limit)
+                found++;
+            int i = found - 1;
+            while (i > 0 && closer(distance, other, distances[i - 1], best[i - 1])) {
+                best[i] = best[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            best[i] = index;
+            distances[i] = distance;
+        }
+
+        /**
+         * Returns the closest contacts found.
+         * @return the indexes of the closest contacts, the closest first.
+         */
+        private int[] found() {
+            return Arrays.copyOf(best, found);
+        }
+    }
+
+    /**
+     * Set of the candidates already checked by a search, in an open addressing table, since the
+     * candidates are usually few compared to the contacts.
+     */
+    private static class Candidates {
+        private static final int DEFAULT_SIZE = 256;
+        private static final int FREE = -1;
+
+        private int[] indexes;
+        private int size;
+
+        private Candidates() {
+            indexes = new int[DEFAULT_SIZE];
+            Arrays.fill(indexes, FREE);
+            size = 0;
+        }
+
+        /**
+         * Adds a candidate, if it is not in the set yet.
+         * @param index - the index of the contact.
+         * @return true if the candidate was added, false if it was already in the set.
+         */
+        private boolean add(int index) {
+            if (2*(size + 1) > indexes.length)
+                grow();
+            int slot = slotOf(indexes, index);
+            if (indexes[slot] == index)
+                return false;
+            indexes[slot] = index;
+            size++;
+            return true;
+        }
+
+        private void grow() {
+            int[] old = indexes;
+            indexes = new int[2*old.length];
+            Arrays.fill(indexes, FREE);
+            for (int index : old)
+                if (index != FREE)
+                    indexes[slotOf(indexes, index)] = index;
+        }
+
+        private static int slotOf(int[] indexes, int index) {
+            int mask = indexes.length - 1;
+            int slot = (index * 0x9E3779B9) & mask;
+            while (indexes[slot] != FREE && indexes[slot] != index)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package contactBook;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary log of the changes made to a ContactBook, so that the book survives a restart.
+ * Registered as a listener of the book, it records every added and deleted contact and every phone
+ * and email change before it is applied. Every record is written to the file as soon as it is made,
+ * so the operating system has it even if the program dies, and is forced to the disk as told by a
+ * SyncPolicy.
+ * At startup, replay applies the whole log to an empty book, or to the book of a snapshot.
+ * Every reset starts a new generation of the log, so a snapshot records the generation whose changes
+ * it already has, and those are not replayed over it if the program stops before the log is reset.
+ * The file starts with a header (magic number, version and generation), followed by the records.
+ * A log of the first version, whose header has no generation, is of generation 0. Every record is
+ * its payload length, the payload (operation code and arguments, with strings as a length and UTF-8
+ * bytes) and the CRC32 of the payload, so a record torn by a crash is detected and discarded.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class WriteAheadLog implements ContactBookListener, Closeable {
+    private static final int MAGIC = 0x4342574C;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    // The first version had no generation in the header
+    private static final int FIRST_VERSION = 1;
+    private static final int FIRST_HEADER_SIZE = 8;
+    /**
+     * Generation of no log, older than all of them, as the one of a snapshot saved without a log.
+     */
+    public static final long NO_GENERATION = -1;
+    // Size of the buffers of the replay and of the record being written (a larger record gets its own)
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // Operation codes of the records
+    private static final byte ADD = 1;
+    private static final byte DELETE = 2;
+    private static final byte SET_PHONE = 3;
+    private static final byte SET_EMAIL = 4;
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final ByteBuffer buffer;
+    private final CRC32 crc;
+    // Generation of the records in the file, and the size of its header, which depends on its version
+    private long generation;
+    private int headerSize;
+    // Operations written since the last time the log was forced to the disk
+    private int unsynced;
+    private ScheduledExecutorService timer;
+
+    /**
+     * Opens the log in the given file, creating it if it does not exist.
+     * @pre file != null && policy != null
+     * @param file - the log file.
+     * @param policy - when to force the records to the disk.
+     * @throws IOException if the file cannot be opened or is not a contact book log.
+     */
+    public WriteAheadLog(Path file, SyncPolicy policy) throws IOException {
+        this.policy = policy;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        crc = new CRC32();
+        unsynced = 0;
+        generation = 0;
+        headerSize = HEADER_SIZE;
+        try {
+            if (channel.size() == 0)
+                writeHeader();
+            else
+                checkHeader();
+            channel.position(channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (policy.getMode() == SyncPolicy.Mode.GROUP && policy.getMaxMillis() > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "wal-group-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleWithFixedDelay(this::syncIfPending, policy.getMaxMillis(), policy.getMaxMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Applies every record of the log to the given book. A torn or corrupted record at the end of the
+     * log (left by a crash) is cut off, together with anything after it.
+     * @pre book != null, and the log is not registered as a listener of book yet
+     * @param book - the book to rebuild, usually empty.
+     * @return the number of records applied.
+     * @throws IOException if the log cannot be read.
+     */
+    public int replay(ContactBook book) throws IOException {
+        return replay(book, NO_GENERATION);
+    }
+
+    /**
+     * Applies every record of the log to the given book, unless the book already has them: the book
+     * was loaded from a snapshot that has all the changes of the given generation of the log. Then
+     * the log is reset instead, to a generation after that one. A torn or corrupted record at the end
+     * of the log (left by a crash) is cut off, together with anything after it.
+     * @pre book != null, and the log is not registered as a listener of book yet
+     * @param book - the book to rebuild, empty or loaded from a snapshot.
+     * @param covered - the generation of the log the book already has, or NO_GENERATION.
+     * @return the number of records applied.
+     * @throws IOException if the log cannot be read or written.
+     */
+    public synchronized int replay(ContactBook book, long covered) throws IOException {
+        if (generation <= covered) {
+            restart(covered + 1);
+            return 0;
+        }
+        channel.position(headerSize);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+        long valid = headerSize;
+        long size = channel.size();
+        int applied = 0;
+        try {
+            while (valid < size) {
+                int length = in.readInt();
+                if (length <= 0 || length > size - valid - 8)
+                    break;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                int checksum = in.readInt();
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum)
+                    break;
+                apply(ByteBuffer.wrap(payload), book);
+                valid += 8 + length;
+                applied++;
+            }
+        } catch (EOFException e) {
+            // A torn record at the end of the log
+        }
+        if (valid < size) {
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        channel.position(valid);
+        return applied;
+    }
+
+    /**
+     * Returns the generation of the log, which the snapshot of the book records before the log is reset.
+     * @return the generation of the log, 0 or more.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Discards every record of the log, once the book they rebuild is saved somewhere else
+     * (in a snapshot, for instance), and starts the next generation.
+     * @throws IOException if the log cannot be written.
+     */
+    public synchronized void reset() throws IOException {
+        restart(generation + 1);
+    }
+
+    /**
+     * Discards every record of the log and starts the given generation. The records are cut off
+     * before the header changes, so a crash in between leaves an empty log of the old generation.
+     * @param next - the new generation.
+     * @throws IOException if the log cannot be written.
+     */
+    private void restart(long next) throws IOException {
+        channel.truncate(headerSize);
+        channel.force(true);
+        generation = next;
+        headerSize = HEADER_SIZE;
+        writeHeader();
+        channel.position(HEADER_SIZE);
+        unsynced = 0;
+    }
+
+    /**
+     * Forces every record written so far to the disk.
+     */
+    public synchronized void sync() {
+        try {
+            channel.force(false);
+            unsynced = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces the log to the disk and closes it.
+     * @throws IOException if the log cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (timer != null)
+            timer.shutdown();
+        if (channel.isOpen()) {
+            if (policy.getMode() != SyncPolicy.Mode.NONE)
+                sync();
+            channel.close();
+        }
+    }
+
+    @Override
+    public void contactAdded(String name, int phone, String email) {
+        append(ADD, name, phone, email);
+    }
+
+    @Override
+    public void contactDeleted(String name) {
+        append(DELETE, name, 0, null);
+    }
+
+    @Override
+    public void phoneChanged(String name, int phone) {
+        append(SET_PHONE, name, phone, null);
+    }
+
+    @Override
+    public void emailChanged(String name, String email) {
+        append(SET_EMAIL, name, 0, email);
+    }
+
+    /**
+     * Writes one record to the file and forces the log if the policy says so.
+     * @param operation - the operation code.
+     * @param name - the contact name.
+     * @param phone - the phone number, only written by ADD and SET_PHONE.
+     * @param email - the email, only written by ADD and SET_EMAIL, otherwise null.
+     */
+    private synchronized void append(byte operation, String name, int phone, String email) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] emailBytes = email != null ? email.getBytes(StandardCharsets.UTF_8) : null;
+        boolean hasPhone = operation == ADD || operation == SET_PHONE;
+        int length = 1 + 4 + nameBytes.length + (hasPhone ? 4 : 0) + (emailBytes != null ? 4 + emailBytes.length : 0);
+        try {
+            ByteBuffer target = length + 8 <= buffer.capacity() ? buffer.clear() : ByteBuffer.allocate(length + 8);
+            target.putInt(length);
+            int start = target.position();
+            target.put(operation);
+            target.putInt(nameBytes.length).put(nameBytes);
+            if (hasPhone)
+                target.putInt(phone);
+            if (emailBytes != null)
+                target.putInt(emailBytes.length).put(emailBytes);
+            crc.reset();
+            crc.update(target.array(), start, length);
+            target.putInt((int) crc.getValue());
+            target.flip();
+            while (target.hasRemaining())
+                channel.write(target);
+            unsynced++;
+            if (unsynced >= policy.getMaxOperations())
+                sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Applies one record to the book.
+     * @param record - the payload of the record.
+     * @param book - the book being rebuilt.
+     * @throws IOException if the operation code is unknown.
+     */
+    private static void apply(ByteBuffer record, ContactBook book) throws IOException {
+        byte operation = record.get();
+        String name = readString(record);
+        switch (operation) {
+            case ADD -> {
+                int phone = record.getInt();
+                String email = readString(record);
+                if (!book.hasContact(name))
+                    book.addContact(name, phone, email);
+            }
+            case DELETE -> {
+                if (book.hasContact(name))
+                    book.deleteContact(name);
+            }
+            case SET_PHONE -> {
+                int phone = record.getInt();
+                if (book.hasContact(name))
+                    book.setPhone(name, phone);
+            }
+            case SET_EMAIL -> {
+                String email = readString(record);
+                if (book.hasContact(name))
+                    book.setEmail(name, email);
+            }
+            default -> throw new IOException("Unknown log operation: " + operation);
+        }
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        String s = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return s;
+    }
+
+    private void syncIfPending() {
+        synchronized (this) {
+            if (unsynced > 0 && channel.isOpen())
+                sync();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(generation).flip();
+        channel.write(header, 0);
+        channel.force(true);
+    }
+
+    private void checkHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < FIRST_HEADER_SIZE || header.getInt() != MAGIC)
+            throw new IOException("Not a contact book log");
+        int version = header.getInt();
+        if (version == FIRST_VERSION)
+            headerSize = FIRST_HEADER_SIZE;
+        else if (version == VERSION && header.remaining() >= 8)
+            generation = header.getLong();
+        else
+            throw new IOException("Not a contact book log");
+    }
+}
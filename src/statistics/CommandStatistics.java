@@ -0,0 +1,85 @@
+package statistics;
+
+/**
+ * Latencies of the commands of the application, with a histogram per command, which any number of
+ * threads may record at the same time without locks and without allocating.
+ * Commands that are not known are all recorded together, as OTHER.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class CommandStatistics {
+    public static final String OTHER = "OTHER";
+
+    // The known commands, then OTHER, and the histogram of every one of them
+    private final String[] commands;
+    private final Histogram[] latencies;
+    private final long start;
+
+    /**
+     * Creates the statistics of the given commands, with no command recorded yet.
+     * @pre commands != null
+     * @param commands - the known commands.
+     */
+    public CommandStatistics(String[] commands) {
+        this.commands = new String[commands.length + 1];
+        System.arraycopy(commands, 0, this.commands, 0, commands.length);
+        this.commands[commands.length] = OTHER;
+        latencies = new Histogram[this.commands.length];
+        for (int i=0; i<latencies.length; i++)
+            latencies[i] = new Histogram();
+        start = System.nanoTime();
+    }
+
+    /**
+     * Records that the given command took the given time.
+     * @pre command != null
+     * @param command - the command, as returned by the CommandReader.
+     * @param nanos - the time it took, in nanoseconds.
+     */
+    public void record(String command, long nanos) {
+        latencies[indexOf(command)].record(nanos);
+    }
+
+    /**
+     * Returns the known commands, followed by OTHER.
+     * @return the names of the recorded commands.
+     */
+    public String[] getCommands() {
+        return commands.clone();
+    }
+
+    /**
+     * Returns the histogram of the latencies of the given command, in nanoseconds.
+     * @pre command != null
+     * @param command - a known command, or OTHER.
+     * @return the histogram of the latencies of the command.
+     */
+    public Histogram getLatencies(String command) {
+        return latencies[indexOf(command)];
+    }
+
+    /**
+     * Returns the time since these statistics were created.
+     * @return the time since these statistics were created, in nanoseconds.
+     */
+    public long getElapsed() {
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the position of the given command. The CommandReader returns the known commands
+     * themselves, so they are compared by reference first, and only then by content.
+     * @param command - the command.
+     * @return the position of the command, or the one of OTHER if it is not known.
+     */
+    private int indexOf(String command) {
+        for (int i=0; i<commands.length; i++)
+            if (commands[i] == command)
+                return i;
+        for (int i=0; i<commands.length - 1; i++)
+            if (commands[i].equals(command))
+                return i;
+        return commands.length - 1;
+    }
+}
@@ -0,0 +1,129 @@
+package statistics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values (such as latencies in nanoseconds, or numbers of probes) that any
+ * number of threads may record at the same time, without locks and without allocating.
+ * Like an HDR histogram, its buckets are log-linear: the values below 2^SUB_BITS have a bucket each,
+ * and every following power of two is split in 2^SUB_BITS equal buckets, so a value is known with an
+ * error below 1/2^SUB_BITS of it, from 0 to Long.MAX_VALUE, with a few hundred buckets.
+ * Every bucket is a LongAdder, so threads recording the same values do not fight for one counter.
+ * Reading the histogram while it is recorded gives approximate (but never negative) results.
+ * @author António Mendes 66891 an.mendes@campus.fct.unl.pt
+ * @author Bernardo Gracioso 65284 b.gracioso@campus.fct.unl.pt
+ * @author João Lima 65491 jav.lima@campus.fct.unl.pt
+ */
+public class Histogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public Histogram() {
+        buckets = new LongAdder[BUCKETS];
+        for (int i=0; i<BUCKETS; i++)
+            buckets[i] = new LongAdder();
+        sum = new LongAdder();
+        max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Records a value; negative values are recorded as 0.
+     * @param value - the value to record.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        buckets[bucketOf(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets)
+            count += bucket.sum();
+        return count;
+    }
+
+    /**
+     * Returns the average of the recorded values, or 0 if there are none.
+     * @return the average of the recorded values.
+     */
+    public double getMean() {
+        long count = getCount();
+        return count > 0 ? (double) sum.sum() / count : 0;
+    }
+
+    /**
+     * Returns the largest recorded value, or 0 if there are none.
+     * @return the largest recorded value.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns a value that at least the given percentage of the recorded values do not exceed:
+     * the largest value of the bucket of the percentile, or the maximum if it is smaller.
+     * @pre 0 <= percentile && percentile <= 100
+     * @param percentile - the percentage, such as 99.9.
+     * @return the value at the given percentile, or 0 if there are no values.
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i=0; i<BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i=0; i<BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highestValueOf(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the bucket of the given value.
+     * @pre value >= 0
+     * @param value - the value.
+     * @return the index of the bucket of the value.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value of the given bucket.
+     * @param bucket - the index of the bucket.
+     * @return the largest value that falls in the bucket.
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long width = 1L << (exponent - SUB_BITS);
+        long lowest = (1L << exponent) + (bucket % SUB_BUCKETS) * width;
+        return lowest + (width - 1);
+    }
+}